@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu;
+
+import org.mariotaku.commons.collection.Pair;
+import org.mariotaku.restfu.annotation.method.GET;
+import org.mariotaku.restfu.annotation.param.Path;
+import org.mariotaku.restfu.annotation.param.Query;
+import org.mariotaku.restfu.http.MultiValueMap;
+import org.mariotaku.restfu.http.mime.UrlSerialization;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link PathTemplate} with the previous implementation, which scanned path format and
+ * searched path arguments on every call. Placed in library package as {@link PathTemplate} is internal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathTemplateBenchmark {
+
+    private static final String FORMAT = "/repos/{owner}/{repo}/issues/{number}/comments?per_page=100&sort=created";
+
+    private final Object[] args = {"mariotaku", "RestFu", 42, "ignored"};
+
+    private Path[] paths;
+    private PathTemplate template;
+    private ArrayList<Pair<Path, Object>> legacyPaths;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        final Method method = Api.class.getMethod("comments", String.class, String.class, int.class, String.class);
+        final Annotation[][] annotations = method.getParameterAnnotations();
+        paths = new Path[annotations.length];
+        legacyPaths = new ArrayList<>();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof Path) {
+                    paths[i] = (Path) annotation;
+                    legacyPaths.add(Pair.create(paths[i], args[i]));
+                }
+            }
+        }
+        template = PathTemplate.compile(FORMAT, paths);
+    }
+
+    @Benchmark
+    public String expand() {
+        return template.expand(args);
+    }
+
+    @Benchmark
+    public MultiValueMap<String> staticQueries() {
+        final MultiValueMap<String> queries = new MultiValueMap<>();
+        template.addQueries(queries);
+        return queries;
+    }
+
+    @Benchmark
+    public String legacyExpand() {
+        return LegacyPath.getPath(FORMAT, legacyPaths);
+    }
+
+    @Benchmark
+    public MultiValueMap<String> legacyStaticQueries() {
+        final MultiValueMap<String> queries = new MultiValueMap<>();
+        final int queryIndex = FORMAT.indexOf('?');
+        if (queryIndex != -1) {
+            RestFuUtils.parseQuery(FORMAT.substring(queryIndex + 1), Charset.defaultCharset().name(), queries);
+        }
+        return queries;
+    }
+
+    public interface Api {
+        @GET(FORMAT)
+        void comments(@Path("owner") String owner, @Path("repo") String repo, @Path("number") int number,
+                @Query("since") String since);
+    }
+
+    /**
+     * Copy of {@code RestMethod.getPath()} before path formats were precompiled
+     */
+    static class LegacyPath {
+
+        static String getPath(String path, ArrayList<Pair<Path, Object>> paths) {
+            final int queryIndex = path.indexOf('?');
+            final StringBuilder sb = new StringBuilder();
+            int start, end, prevEnd = -1;
+            while ((start = path.indexOf('{', prevEnd)) != -1 && (end = path.indexOf('}', start)) != -1) {
+                if (queryIndex != -1 && start >= queryIndex) break;
+                sb.append(path.substring(prevEnd + 1, start));
+                final String key = path.substring(start + 1, end);
+                final String replacement = findPathReplacement(paths, key);
+                if (replacement == null)
+                    throw new IllegalArgumentException("Path key {" + key + "} not bound");
+                sb.append(replacement);
+                prevEnd = end;
+            }
+            if (queryIndex != -1) {
+                sb.append(path.substring(prevEnd + 1, queryIndex));
+            } else {
+                sb.append(path.substring(prevEnd + 1));
+            }
+            return sb.toString();
+        }
+
+        private static String findPathReplacement(ArrayList<Pair<Path, Object>> paths, String key) {
+            final Charset charset = Charset.forName("UTF-8");
+            for (Pair<Path, Object> entry : paths) {
+                if (key.equals(entry.first.value())) {
+                    if (entry.first.encoded()) {
+                        return String.valueOf(entry.second);
+                    } else {
+                        return UrlSerialization.PATH.serialize(String.valueOf(entry.second), charset);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
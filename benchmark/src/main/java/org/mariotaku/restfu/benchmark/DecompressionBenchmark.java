@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.benchmark;
+
+import org.mariotaku.restfu.io.InflaterPool;
+import org.mariotaku.restfu.io.PooledGZIPInputStream;
+import org.mariotaku.restfu.io.StreamingGZIPInputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes a compressed response with and without {@link InflaterPool}. Run with {@code -prof gc} to see
+ * allocation per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecompressionBenchmark {
+
+    @Param({"1024", "65536"})
+    public int responseSize;
+
+    private final byte[] buffer = new byte[8192];
+
+    private byte[] gzip;
+    private byte[] deflate;
+
+    @Setup
+    public void setup() throws IOException {
+        final byte[] data = new byte[responseSize];
+        final Random random = new Random(42);
+        final String json = "{\"id\":1234567890,\"text\":\"Hello world!\",\"user\":{\"name\":\"mariotaku\"}},";
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) json.charAt((i + random.nextInt(3)) % json.length());
+        }
+        final ByteArrayOutputStream gzipOs = new ByteArrayOutputStream();
+        try (GZIPOutputStream os = new GZIPOutputStream(gzipOs)) {
+            os.write(data);
+        }
+        gzip = gzipOs.toByteArray();
+        final ByteArrayOutputStream deflateOs = new ByteArrayOutputStream();
+        try (DeflaterOutputStream os = new DeflaterOutputStream(deflateOs, new Deflater())) {
+            os.write(data);
+        }
+        deflate = deflateOs.toByteArray();
+    }
+
+    @Benchmark
+    public long gzip() throws IOException {
+        return drain(new PooledGZIPInputStream(new ByteArrayInputStream(gzip)));
+    }
+
+    @Benchmark
+    public long legacyGzip() throws IOException {
+        return drain(new StreamingGZIPInputStream(new ByteArrayInputStream(gzip)));
+    }
+
+    @Benchmark
+    public long deflate() throws IOException {
+        final Inflater inflater = InflaterPool.acquire(false);
+        try {
+            return drain(new InflaterInputStream(new ByteArrayInputStream(deflate), inflater));
+        } finally {
+            InflaterPool.release(inflater, false);
+        }
+    }
+
+    @Benchmark
+    public long legacyDeflate() throws IOException {
+        final Inflater inflater = new Inflater();
+        try {
+            return drain(new InflaterInputStream(new ByteArrayInputStream(deflate), inflater));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private long drain(InputStream is) throws IOException {
+        long total = 0;
+        try {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                total += read;
+            }
+        } finally {
+            is.close();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.benchmark;
+
+import org.mariotaku.commons.collection.Pair;
+import org.mariotaku.restfu.http.ContentType;
+import org.mariotaku.restfu.http.mime.Body;
+import org.mariotaku.restfu.http.mime.MultipartBody;
+import org.mariotaku.restfu.http.mime.StringBody;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MultipartBody} with the previous implementation, which encoded part headers again
+ * for {@code length()} and {@code writeTo()}, and generated boundary with {@link UUID}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultipartBodyBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int partsCount;
+
+    private final OutputStream nullStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private List<Pair<String, Body>> parts;
+
+    @Setup
+    public void setup() {
+        parts = new ArrayList<>(partsCount);
+        final Charset charset = Charset.forName("UTF-8");
+        for (int i = 0; i < partsCount; i++) {
+            parts.add(Pair.<String, Body>create("field" + i, new StringBody("value" + i, charset)));
+        }
+    }
+
+    @Benchmark
+    public long lengthAndWrite() throws IOException {
+        final MultipartBody body = new MultipartBody(new ArrayList<>(parts));
+        return body.length() + body.writeTo(nullStream);
+    }
+
+    @Benchmark
+    public long legacyLengthAndWrite() throws IOException {
+        final LegacyMultipartBody body = new LegacyMultipartBody(parts);
+        return body.length() + body.writeTo(nullStream);
+    }
+
+    /**
+     * Copy of {@code MultipartBody} encoding before part headers were cached
+     */
+    static class LegacyMultipartBody {
+        private static final byte[] CRLF = {'\r', '\n'};
+        private static final byte[] DASHDASH = {'-', '-'};
+
+        private final List<Pair<String, Body>> parts;
+        private final byte[] boundaryBytes;
+
+        LegacyMultipartBody(List<Pair<String, Body>> parts) {
+            this.parts = parts;
+            final ContentType contentType = ContentType.parse("multipart/form-data");
+            final String boundary = UUID.randomUUID().toString();
+            contentType.addParameter("boundary", boundary);
+            boundaryBytes = boundary.getBytes();
+        }
+
+        long length() throws IOException {
+            final LengthCountOutputStream os = new LengthCountOutputStream();
+            writeBody(os);
+            return os.noLength ? -1 : os.length;
+        }
+
+        long writeTo(OutputStream os) throws IOException {
+            return writeBody(os);
+        }
+
+        private long writeBody(final OutputStream os) throws IOException {
+            long totalLength = 0;
+            for (Pair<String, Body> part : parts) {
+                totalLength += write(os, DASHDASH);
+                totalLength += write(os, boundaryBytes);
+                totalLength += write(os, CRLF);
+                final ContentType contentDisposition = new ContentType("form-data").parameter("name",
+                        MultipartBody.quoteString(part.first));
+                final ContentType contentType = part.second.contentType();
+                final long contentLength = part.second.length();
+                totalLength += write(os, "Content-Disposition".getBytes());
+                totalLength += write(os, ": ".getBytes());
+                totalLength += write(os, contentDisposition.toHeader().getBytes());
+                totalLength += write(os, CRLF);
+                if (contentType != null) {
+                    totalLength += write(os, "Content-Type".getBytes());
+                    totalLength += write(os, ": ".getBytes());
+                    totalLength += write(os, contentType.toHeader().getBytes());
+                    totalLength += write(os, CRLF);
+                }
+                if (contentLength != -1) {
+                    totalLength += write(os, "Content-Length".getBytes());
+                    totalLength += write(os, ": ".getBytes());
+                    totalLength += write(os, String.valueOf(contentLength).getBytes());
+                    totalLength += write(os, CRLF);
+                }
+                totalLength += write(os, CRLF);
+                if (os instanceof LengthCountOutputStream) {
+                    final LengthCountOutputStream lcos = (LengthCountOutputStream) os;
+                    if (contentLength == -1) {
+                        lcos.noLength = true;
+                    }
+                    lcos.length += contentLength;
+                    totalLength += contentLength;
+                } else {
+                    totalLength += part.second.writeTo(os);
+                }
+                totalLength += write(os, CRLF);
+            }
+            totalLength += write(os, DASHDASH);
+            totalLength += write(os, boundaryBytes);
+            totalLength += write(os, DASHDASH);
+            totalLength += write(os, CRLF);
+            return totalLength;
+        }
+
+        private static long write(final OutputStream os, final byte[] bytes) throws IOException {
+            os.write(bytes);
+            return bytes.length;
+        }
+    }
+
+    static class LengthCountOutputStream extends OutputStream {
+        boolean noLength;
+        long length;
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) {
+            length += count;
+        }
+
+        @Override
+        public void write(int oneByte) {
+            length++;
+        }
+    }
+}
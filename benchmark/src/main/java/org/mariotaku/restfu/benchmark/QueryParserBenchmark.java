@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mariotaku.restfu.benchmark;
+
+import org.mariotaku.restfu.RestFuUtils;
+import org.mariotaku.restfu.http.QueryParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link QueryParser} with the previous {@code RestFuUtils.parseQuery}, which split query
+ * with {@link RestFuUtils#split(String, String)} and decoded every part with {@link URLDecoder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryParserBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] TOKEN_KEYS = {"oauth_token", "oauth_token_secret", "user_id", "screen_name"};
+
+    @Param({"token", "escaped"})
+    public String input;
+
+    private String query;
+
+    private final RestFuUtils.KeyValueConsumer blackhole = new RestFuUtils.KeyValueConsumer() {
+        @Override
+        public void consume(String key, String value) {
+            count += key.length();
+        }
+    };
+
+    private final QueryParser.KeyConsumer keyBlackhole = new QueryParser.KeyConsumer() {
+        @Override
+        public void consume(int keyIndex, String value) {
+            count += keyIndex;
+        }
+    };
+
+    private int count;
+
+    @Setup
+    public void setup() {
+        switch (input) {
+            case "token":
+                // Typical OAuth access token response
+                query = "oauth_token=6253282-eWudHldSbIaelX7swmsiHImEL4KinwaGloHANdrY&oauth_token_secret="
+                        + "2EEfA6BG5ly3sR3XjE0IBSnlQu4ZrUzPiYTmrkVU&user_id=6253282&screen_name=twitterapi";
+                break;
+            case "escaped":
+                query = "status=%E4%BB%8A%E6%97%A5%E3%81%AF%E3%81%84%E3%81%84%E5%A4%A9%E6%B0%97+%F0%9F%8C%B8"
+                        + "&in_reply_to=12345&place=Caf%C3%A9+cr%C3%A8me&lat=35.6&long=139.7";
+                break;
+            default:
+                throw new IllegalArgumentException(input);
+        }
+    }
+
+    @Benchmark
+    public int parse() {
+        QueryParser.parse(query, UTF_8, blackhole);
+        return count;
+    }
+
+    @Benchmark
+    public int parseKeys() {
+        QueryParser.parse(query, UTF_8, TOKEN_KEYS, keyBlackhole);
+        return count;
+    }
+
+    @Benchmark
+    public int legacyParse() throws UnsupportedEncodingException {
+        for (final String part : RestFuUtils.split(query, "&")) {
+            final String[] split = RestFuUtils.split(part, "=");
+            final String key = URLDecoder.decode(split[0], "UTF-8");
+            if (split.length == 2) {
+                blackhole.consume(key, URLDecoder.decode(split[1], "UTF-8"));
+            } else {
+                blackhole.consume(key, null);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mariotaku.restfu.benchmark;
+
+import org.mariotaku.restfu.http.mime.UrlSerialization;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link UrlSerialization#QUERY} with the previous implementation, which looked up a
+ * {@link BitSet} and encoded every escaped code point with {@link Charset#encode(CharBuffer)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlSerializationBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"ascii", "latin1", "cjk"})
+    public String input;
+
+    private final StringBuilder target = new StringBuilder(1024);
+
+    private String text;
+
+    @Setup
+    public void setup() {
+        switch (input) {
+            case "ascii":
+                text = "Just setting up my twttr, see https://example.com/status?id=20 #hello";
+                break;
+            case "latin1":
+                text = "Très bien, à bientôt! Über straße, señor café crème brûlée";
+                break;
+            case "cjk":
+                text = "今日はいい天気ですね。一緒に散歩に行きませんか？🌸 天気晴朗，适合出门。";
+                break;
+            default:
+                throw new IllegalArgumentException(input);
+        }
+    }
+
+    @Benchmark
+    public int serialize() {
+        target.setLength(0);
+        UrlSerialization.QUERY.serialize(text, UTF_8, target);
+        return target.length();
+    }
+
+    @Benchmark
+    public int legacySerialize() {
+        target.setLength(0);
+        LegacyQuerySerialization.serialize(text, UTF_8, target);
+        return target.length();
+    }
+
+    static class LegacyQuerySerialization {
+        static final char[] HEX_CHAR_TABLE = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+                'A', 'B', 'C', 'D', 'E', 'F'};
+        static final BitSet allowedSet;
+
+        static {
+            allowedSet = new BitSet(0xFF);
+            allowedSet.set('-', true);
+            allowedSet.set('.', true);
+            allowedSet.set('_', true);
+            for (int i = '0'; i <= '9'; i++) {
+                allowedSet.set(i, true);
+            }
+            for (int i = 'A'; i <= 'Z'; i++) {
+                allowedSet.set(i, true);
+            }
+            for (int i = 'a'; i <= 'z'; i++) {
+                allowedSet.set(i, true);
+            }
+        }
+
+        static void serialize(String str, Charset charset, StringBuilder target) {
+            final int length = str.length();
+            for (int offset = 0; offset < length; ) {
+                final int codePoint = str.codePointAt(offset);
+                if (codePoint == 0x20) {
+                    target.append('+');
+                } else if (codePoint <= 0xFF && allowedSet.get(codePoint)) {
+                    target.appendCodePoint(codePoint);
+                } else {
+                    CharBuffer cb = CharBuffer.wrap(Character.toChars(codePoint));
+                    ByteBuffer encoded = charset.encode(cb);
+                    for (int i = 0, j = encoded.limit(); i < j; i++) {
+                        target.append('%');
+                        byte v = encoded.get(i);
+                        target.append(HEX_CHAR_TABLE[(v & 0xF0) >>> 4]);
+                        target.append(HEX_CHAR_TABLE[v & 0xF]);
+                    }
+                }
+                offset += Character.charCount(codePoint);
+            }
+        }
+    }
+}
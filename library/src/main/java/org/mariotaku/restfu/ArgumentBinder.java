@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mariotaku.restfu.annotation.param.BooleanEncoding;
+import org.mariotaku.restfu.annotation.param.Header;
+import org.mariotaku.restfu.annotation.param.Param;
+import org.mariotaku.restfu.annotation.param.Query;
+import org.mariotaku.restfu.http.HeaderValue;
+import org.mariotaku.restfu.http.MultiValueMap;
+import org.mariotaku.restfu.http.ValueMap;
+import org.mariotaku.restfu.http.mime.Body;
+import org.mariotaku.restfu.http.mime.StringBody;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+
+/**
+ * Binds one method argument to headers, queries or params. Binders are built once per parameter
+ * with everything from annotation resolved, so binding a call is a flat loop over arguments.
+ */
+abstract class ArgumentBinder<T> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    final int index;
+    @NotNull
+    final String[] names;
+    final char arrayDelimiter;
+    final boolean ignoreOnNull;
+    final int booleanEncoding;
+
+    ArgumentBinder(int index, @NotNull String[] names, char arrayDelimiter, boolean ignoreOnNull,
+            int booleanEncoding) {
+        this.index = index;
+        this.names = names;
+        this.arrayDelimiter = arrayDelimiter;
+        this.ignoreOnNull = ignoreOnNull;
+        this.booleanEncoding = booleanEncoding;
+    }
+
+    abstract <E extends Exception> void bind(@NotNull Object[] args, @NotNull MultiValueMap<T> target,
+            @Nullable RestConverter.Factory<E> factory) throws RestConverter.ConvertException, IOException, E;
+
+    static void bindHeader(@NotNull MultiValueMap<String> target, @Nullable Object value, @NotNull String[] names,
+            char arrayDelimiter, boolean ignoreOnNull) {
+        if (value == null) {
+            if (!ignoreOnNull) addNulls(target, names);
+        } else if (value instanceof ValueMap) {
+            final ValueMap valueMap = (ValueMap) value;
+            for (String key : names.length > 0 ? names : valueMap.keys()) {
+                final String name = RestFuUtils.sanitizeHeader(key);
+                if (valueMap.has(name)) {
+                    addHeader(target, name, valueMap.get(key), arrayDelimiter);
+                }
+            }
+        } else for (String name : names) {
+            addHeader(target, name, value, arrayDelimiter);
+        }
+    }
+
+    static void bindQuery(@NotNull MultiValueMap<String> target, @Nullable Object value, @NotNull String[] names,
+            char arrayDelimiter, boolean ignoreOnNull, int booleanEncoding) {
+        if (value == null) {
+            if (!ignoreOnNull) addNulls(target, names);
+        } else if (value instanceof ValueMap) {
+            final ValueMap valueMap = (ValueMap) value;
+            for (String key : names.length > 0 ? names : valueMap.keys()) {
+                if (valueMap.has(key)) {
+                    addQuery(target, key, valueMap.get(key), arrayDelimiter, booleanEncoding);
+                }
+            }
+        } else for (String name : names) {
+            addQuery(target, name, value, arrayDelimiter, booleanEncoding);
+        }
+    }
+
+    static <E extends Exception> void bindParam(@NotNull MultiValueMap<Body> target, @Nullable Object value,
+            @NotNull String[] names, char arrayDelimiter, boolean ignoreOnNull,
+            @NotNull RestConverter.Factory<E> factory) throws RestConverter.ConvertException, IOException, E {
+        if (value == null) {
+            if (!ignoreOnNull) addNulls(target, names);
+        } else if (value instanceof ValueMap) {
+            final ValueMap valueMap = (ValueMap) value;
+            for (String key : names.length > 0 ? names : valueMap.keys()) {
+                if (valueMap.has(key)) {
+                    addParam(target, key, valueMap.get(key), arrayDelimiter, factory);
+                }
+            }
+        } else for (String name : names) {
+            addParam(target, name, value, arrayDelimiter, factory);
+        }
+    }
+
+    private static <T> void addNulls(@NotNull MultiValueMap<T> target, @NotNull String[] names) {
+        for (String name : names) {
+            target.add(name, null);
+        }
+    }
+
+    static void addHeader(@NotNull MultiValueMap<String> target, @NotNull String name, @Nullable Object value,
+            char arrayDelimiter) {
+        if (value == null) {
+            target.add(name, null);
+        } else if (value instanceof HeaderValue) {
+            target.add(name, RestFuUtils.sanitizeHeader(((HeaderValue) value).toHeaderValue()));
+        } else if (value.getClass().isArray()) {
+            if (arrayDelimiter == '\0') {
+                for (int i = 0, j = Array.getLength(value); i < j; i++) {
+                    final Object item = Array.get(value, i);
+                    target.add(name, item != null ? RestFuUtils.sanitizeHeader(item.toString()) : null);
+                }
+            } else {
+                target.add(name, RestFuUtils.sanitizeHeader(RestFuUtils.toString(value, arrayDelimiter)));
+            }
+        } else {
+            target.add(name, RestFuUtils.sanitizeHeader(value.toString()));
+        }
+    }
+
+    static void addQuery(@NotNull MultiValueMap<String> target, @NotNull String name, @Nullable Object value,
+            char arrayDelimiter, int booleanEncoding) {
+        if (value == null) {
+            target.add(name, null);
+        } else if (arrayDelimiter == '\0' && value.getClass().isArray()) {
+            for (int i = 0, j = Array.getLength(value); i < j; i++) {
+                final Object item = Array.get(value, i);
+                target.add(name, item != null ? item.toString() : null);
+            }
+        } else if (value instanceof Boolean && booleanEncoding != BooleanEncoding.TRUE_FALSE) {
+            final boolean bool = (Boolean) value;
+            switch (booleanEncoding) {
+                case BooleanEncoding.ONE_ZERO:
+                    target.add(name, bool ? "1" : "0");
+                    break;
+                case BooleanEncoding.KEY_IF_TRUE:
+                    if (bool) target.add(name, null);
+                    break;
+                case BooleanEncoding.IGNORE_IF_FALSE:
+                    if (bool) target.add(name, "true");
+                    break;
+                case BooleanEncoding.IGNORE_IF_TRUE:
+                    if (!bool) target.add(name, "false");
+                    break;
+                default:
+                    target.add(name, value.toString());
+                    break;
+            }
+        } else {
+            target.add(name, RestFuUtils.toString(value, arrayDelimiter));
+        }
+    }
+
+    static <E extends Exception> void addParam(@NotNull MultiValueMap<Body> target, @NotNull String name,
+            @Nullable Object value, char arrayDelimiter, @NotNull RestConverter.Factory<E> factory)
+            throws RestConverter.ConvertException, IOException, E {
+        if (value == null) {
+            target.add(name, null);
+        } else if (value.getClass().isArray()) {
+            if (arrayDelimiter != '\0') {
+                // If delimiter specified, all array elements should be treated as string
+                target.add(name, new StringBody(RestFuUtils.toString(value, arrayDelimiter), UTF_8));
+            } else for (int i = 0, j = Array.getLength(value); i < j; i++) {
+                target.add(name, RestFuUtils.toBody(Array.get(value, i), factory));
+            }
+        } else {
+            target.add(name, RestFuUtils.toBody(value, factory));
+        }
+    }
+
+    static final class HeaderBinder extends ArgumentBinder<String> {
+
+        HeaderBinder(int index, @NotNull Header header) {
+            super(index, sanitizeNames(header.value()), header.arrayDelimiter(), header.ignoreOnNull(),
+                    header.booleanEncoding());
+        }
+
+        @Override
+        <E extends Exception> void bind(@NotNull Object[] args, @NotNull MultiValueMap<String> target,
+                @Nullable RestConverter.Factory<E> factory) {
+            bindHeader(target, args[index], names, arrayDelimiter, ignoreOnNull);
+        }
+
+        private static String[] sanitizeNames(String[] names) {
+            final String[] sanitized = new String[names.length];
+            for (int i = 0, j = names.length; i < j; i++) {
+                sanitized[i] = RestFuUtils.sanitizeHeader(names[i]);
+            }
+            return sanitized;
+        }
+    }
+
+    static final class QueryBinder extends ArgumentBinder<String> {
+
+        QueryBinder(int index, @NotNull Query query) {
+            super(index, query.value(), query.arrayDelimiter(), query.ignoreOnNull(), query.booleanEncoding());
+        }
+
+        /**
+         * Params of methods without body are sent as queries
+         */
+        QueryBinder(int index, @NotNull Param param) {
+            super(index, param.value(), param.arrayDelimiter(), param.ignoreOnNull(), param.booleanEncoding());
+        }
+
+        @Override
+        <E extends Exception> void bind(@NotNull Object[] args, @NotNull MultiValueMap<String> target,
+                @Nullable RestConverter.Factory<E> factory) {
+            bindQuery(target, args[index], names, arrayDelimiter, ignoreOnNull, booleanEncoding);
+        }
+    }
+
+    static final class ParamBinder extends ArgumentBinder<Body> {
+
+        ParamBinder(int index, @NotNull Param param) {
+            super(index, param.value(), param.arrayDelimiter(), param.ignoreOnNull(), param.booleanEncoding());
+        }
+
+        @Override
+        <E extends Exception> void bind(@NotNull Object[] args, @NotNull MultiValueMap<Body> target,
+                @Nullable RestConverter.Factory<E> factory) throws RestConverter.ConvertException, IOException, E {
+            //noinspection ConstantConditions
+            bindParam(target, args[index], names, arrayDelimiter, ignoreOnNull, factory);
+        }
+    }
+}
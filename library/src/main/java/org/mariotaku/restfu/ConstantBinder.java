@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mariotaku.restfu.annotation.param.BooleanEncoding;
+import org.mariotaku.restfu.annotation.param.KeyValue;
+import org.mariotaku.restfu.http.MultiValueMap;
+import org.mariotaku.restfu.http.ValueMap;
+import org.mariotaku.restfu.http.mime.Body;
+
+import java.io.IOException;
+
+/**
+ * Constant from {@code @Headers}, {@code @Queries} or {@code @Params}. Literal values are converted
+ * to their final form once, only constants referencing constant pool by
+ * {@link KeyValue#valueKey()} are evaluated per call.
+ */
+final class ConstantBinder {
+
+    static final ConstantBinder[] EMPTY = new ConstantBinder[0];
+
+    @NotNull
+    final String name;
+    /**
+     * Converted literal value, null if {@link #valueKey} is set
+     */
+    @Nullable
+    final String value;
+    @Nullable
+    final String valueKey;
+    final char arrayDelimiter;
+
+    private ConstantBinder(@NotNull String name, @Nullable String value, @Nullable String valueKey,
+            char arrayDelimiter) {
+        this.name = name;
+        this.value = value;
+        this.valueKey = valueKey;
+        this.arrayDelimiter = arrayDelimiter;
+    }
+
+    @NotNull
+    static ConstantBinder[] headers(@Nullable KeyValue[] items) {
+        if (items == null || items.length == 0) return EMPTY;
+        final ConstantBinder[] constants = new ConstantBinder[items.length];
+        for (int i = 0, j = items.length; i < j; i++) {
+            final KeyValue item = items[i];
+            final String name = RestFuUtils.sanitizeHeader(item.key());
+            if (item.valueKey().length() > 0) {
+                constants[i] = new ConstantBinder(name, null, item.valueKey(), item.arrayDelimiter());
+            } else {
+                constants[i] = new ConstantBinder(name, RestFuUtils.sanitizeHeader(item.value()), null,
+                        item.arrayDelimiter());
+            }
+        }
+        return constants;
+    }
+
+    /**
+     * Used by both {@code @Queries} and {@code @Params}, literal values are plain strings for both
+     */
+    @NotNull
+    static ConstantBinder[] values(@Nullable KeyValue[] items) {
+        if (items == null || items.length == 0) return EMPTY;
+        final ConstantBinder[] constants = new ConstantBinder[items.length];
+        for (int i = 0, j = items.length; i < j; i++) {
+            final KeyValue item = items[i];
+            if (item.valueKey().length() > 0) {
+                constants[i] = new ConstantBinder(item.key(), null, item.valueKey(), item.arrayDelimiter());
+            } else {
+                constants[i] = new ConstantBinder(item.key(), item.value(), null, item.arrayDelimiter());
+            }
+        }
+        return constants;
+    }
+
+    static void bindHeaders(@NotNull ConstantBinder[] constants, @Nullable ValueMap valuesPool,
+            @NotNull MultiValueMap<String> target) {
+        for (ConstantBinder constant : constants) {
+            if (constant.valueKey == null) {
+                target.add(constant.name, constant.value);
+            } else if (valuesPool != null && valuesPool.has(constant.valueKey)) {
+                ArgumentBinder.addHeader(target, constant.name, valuesPool.get(constant.valueKey),
+                        constant.arrayDelimiter);
+            }
+        }
+    }
+
+    static void bindQueries(@NotNull ConstantBinder[] constants, @Nullable ValueMap valuesPool,
+            @NotNull MultiValueMap<String> target) {
+        for (ConstantBinder constant : constants) {
+            if (constant.valueKey == null) {
+                target.add(constant.name, constant.value);
+            } else if (valuesPool != null && valuesPool.has(constant.valueKey)) {
+                ArgumentBinder.addQuery(target, constant.name, valuesPool.get(constant.valueKey),
+                        constant.arrayDelimiter, BooleanEncoding.TRUE_FALSE);
+            }
+        }
+    }
+
+    static <E extends Exception> void bindParams(@NotNull ConstantBinder[] constants, @Nullable ValueMap valuesPool,
+            @NotNull MultiValueMap<Body> target, @NotNull RestConverter.Factory<E> factory)
+            throws RestConverter.ConvertException, IOException, E {
+        for (ConstantBinder constant : constants) {
+            if (constant.valueKey == null) {
+                // Body depends on converter factory, so it can't be created ahead of time
+                target.add(constant.name, RestFuUtils.toBody(constant.value, factory));
+            } else if (valuesPool != null && valuesPool.has(constant.valueKey)) {
+                ArgumentBinder.addParam(target, constant.name, valuesPool.get(constant.valueKey),
+                        constant.arrayDelimiter, factory);
+            }
+        }
+    }
+}
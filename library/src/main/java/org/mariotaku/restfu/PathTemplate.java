@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mariotaku.restfu.annotation.param.Path;
+import org.mariotaku.restfu.http.MultiValueMap;
+import org.mariotaku.restfu.http.QueryParser;
+import org.mariotaku.restfu.http.mime.UrlSerialization;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Path format like {@code /repos/{owner}/{repo}?per_page=100} compiled into literal chunks and
+ * placeholder slots, with placeholders already resolved to argument indexes and the static query
+ * part parsed.
+ */
+final class PathTemplate {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Literal chunks, {@code literals[i]} goes before {@code slots[i]}, the last one is the tail
+     */
+    private final String[] literals;
+    private final int[] slots;
+    private final boolean[] encoded;
+    private final int literalsLength;
+
+    private final String[] queryKeys;
+    private final String[] queryValues;
+
+    private PathTemplate(String[] literals, int[] slots, boolean[] encoded, String[] queryKeys,
+            String[] queryValues) {
+        this.literals = literals;
+        this.slots = slots;
+        this.encoded = encoded;
+        this.queryKeys = queryKeys;
+        this.queryValues = queryValues;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalsLength = length;
+    }
+
+    /**
+     * @param format Path format
+     * @param paths  {@link Path} annotations indexed by argument position, null if argument isn't a path
+     */
+    @NotNull
+    static PathTemplate compile(@NotNull String format, @NotNull Path[] paths) {
+        final int queryIndex = format.indexOf('?');
+        final List<String> literals = new ArrayList<>();
+        final List<Integer> slots = new ArrayList<>();
+        final List<Boolean> encoded = new ArrayList<>();
+        int start, end, prevEnd = -1;
+        while ((start = format.indexOf('{', prevEnd)) != -1 && (end = format.indexOf('}', start)) != -1) {
+            if (queryIndex != -1 && start >= queryIndex) break;
+            literals.add(format.substring(prevEnd + 1, start));
+            final String key = format.substring(start + 1, end);
+            final int index = findPathIndex(paths, key);
+            if (index == -1) throw new IllegalArgumentException("Path key {" + key + "} not bound");
+            slots.add(index);
+            encoded.add(paths[index].encoded());
+            prevEnd = end;
+        }
+        if (queryIndex != -1) {
+            literals.add(format.substring(prevEnd + 1, queryIndex));
+        } else {
+            literals.add(format.substring(prevEnd + 1));
+        }
+        final int[] slotsArray = new int[slots.size()];
+        final boolean[] encodedArray = new boolean[slots.size()];
+        for (int i = 0, j = slotsArray.length; i < j; i++) {
+            slotsArray[i] = slots.get(i);
+            encodedArray[i] = encoded.get(i);
+        }
+        final String[] queryKeys, queryValues;
+        if (queryIndex != -1) {
+            final List<String> keys = new ArrayList<>(), values = new ArrayList<>();
+            QueryParser.parse(format.substring(queryIndex + 1), Charset.defaultCharset(),
+                    new RestFuUtils.KeyValueConsumer() {
+                        @Override
+                        public void consume(String key, String value) {
+                            keys.add(key);
+                            values.add(value);
+                        }
+                    });
+            queryKeys = keys.toArray(new String[keys.size()]);
+            queryValues = values.toArray(new String[values.size()]);
+        } else {
+            queryKeys = queryValues = new String[0];
+        }
+        return new PathTemplate(literals.toArray(new String[literals.size()]), slotsArray, encodedArray,
+                queryKeys, queryValues);
+    }
+
+    /**
+     * @param args Arguments of method call
+     * @return Path with placeholders replaced, without static query part
+     */
+    @NotNull
+    String expand(@Nullable Object[] args) {
+        final int slotsCount = slots.length;
+        if (slotsCount == 0) return literals[0];
+        final StringBuilder sb = new StringBuilder(literalsLength + slotsCount * 16);
+        for (int i = 0; i < slotsCount; i++) {
+            sb.append(literals[i]);
+            final String value = String.valueOf(args[slots[i]]);
+            if (encoded[i]) {
+                sb.append(value);
+            } else {
+                UrlSerialization.PATH.serialize(value, UTF_8, sb);
+            }
+        }
+        sb.append(literals[slotsCount]);
+        return sb.toString();
+    }
+
+    /**
+     * Adds static queries after {@code ?} to target map
+     */
+    void addQueries(@NotNull MultiValueMap<String> target) {
+        for (int i = 0, j = queryKeys.length; i < j; i++) {
+            target.add(queryKeys[i], queryValues[i]);
+        }
+    }
+
+    private static int findPathIndex(Path[] paths, String key) {
+        for (int i = 0, j = paths.length; i < j; i++) {
+            if (paths[i] != null && key.equals(paths[i].value())) return i;
+        }
+        return -1;
+    }
+}
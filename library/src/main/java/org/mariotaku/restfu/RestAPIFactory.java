@@ -18,15 +18,25 @@ package org.mariotaku.restfu;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.mariotaku.restfu.callback.Callback;
-import org.mariotaku.restfu.callback.RawCallback;
 import org.mariotaku.restfu.http.*;
+import org.mariotaku.restfu.http.mime.CompressedBody;
 
-import java.io.IOException;
-import java.lang.reflect.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class RestAPIFactory<E extends Exception> {
 
+    /**
+     * Suffix of implementation class names generated by RestFu annotation processor
+     */
+    public static final String GENERATED_SUFFIX = "$$RestFu";
+
     private Endpoint endpoint;
     private Authorization authorization;
     private ValueMap constantPool;
@@ -38,6 +48,9 @@ public class RestAPIFactory<E extends Exception> {
     private RestConverter.Factory<E> restConverterFactory;
     private ExceptionFactory<E> exceptionFactory;
     private ResultDispatcher<E> resultDispatcher = new ResultDispatcher.Default<>();
+    private Executor converterExecutor;
+    private String requestCompression;
+    private long requestCompressionThreshold;
 
     public RestAPIFactory() {
 
@@ -73,6 +86,10 @@ public class RestAPIFactory<E extends Exception> {
         this.exceptionFactory = factory;
     }
 
+    /**
+     * Factory is asked for converters on every call. If its converters are stateless and thread-safe,
+     * pass {@code RestConverter.CachingFactory.wrap(factory)} to resolve them once per type instead.
+     */
     @SuppressWarnings("unused")
     public void setRestConverterFactory(@NotNull RestConverter.Factory<E> restConverterFactory) {
         this.restConverterFactory = restConverterFactory;
@@ -88,17 +105,48 @@ public class RestAPIFactory<E extends Exception> {
         this.resultDispatcher = resultDispatcher;
     }
 
+    /**
+     * Executor converting responses of methods returning {@link RestFuture}. Defaults to a shared pool
+     * with a daemon thread per processor.
+     */
+    @SuppressWarnings("unused")
+    public void setConverterExecutor(@NotNull Executor converterExecutor) {
+        this.converterExecutor = converterExecutor;
+    }
+
+    /**
+     * Compresses request bodies of all methods, unless overridden by {@link Compress}
+     *
+     * @param encoding  {@link CompressedBody#GZIP}, {@link CompressedBody#DEFLATE}, or null to disable
+     * @param threshold Bodies shorter than this are sent as is
+     */
+    @SuppressWarnings("unused")
+    public void setRequestCompression(@Nullable String encoding, long threshold) {
+        if (encoding != null && !CompressedBody.isSupported(encoding)) {
+            throw new IllegalArgumentException("Unsupported compression " + encoding);
+        }
+        this.requestCompression = encoding;
+        this.requestCompressionThreshold = threshold;
+    }
+
     @SuppressWarnings("unused")
     public static RestClient getRestClient(Object obj) {
+        if (!Proxy.isProxyClass(obj.getClass())) {
+            // Implementation generated by annotation processor
+            if (!(obj instanceof RestClient)) throw new IllegalArgumentException();
+            return (RestClient) obj;
+        }
         final InvocationHandler handler = Proxy.getInvocationHandler(obj);
         if (!(handler instanceof RestClient)) throw new IllegalArgumentException();
         return (RestClient) handler;
     }
 
+    /**
+     * Creates implementation of API interface. Implementation generated by RestFu annotation processor
+     * ({@code <Interface>$$RestFu}) will be used if present, otherwise a {@link Proxy} will be created.
+     */
     @SuppressWarnings({"unchecked", "unused"})
     public <T> T build(Class<T> cls) {
-        final ClassLoader classLoader = cls.getClassLoader();
-        final Class[] interfaces = new Class[]{cls};
         checkNotNull(endpoint, "Endpoint");
         checkNotNull(httpClient, "HttpClient");
         checkNotNull(restConverterFactory, "RestConverter.Factory");
@@ -106,9 +154,55 @@ public class RestAPIFactory<E extends Exception> {
         checkNotNull(httpRequestFactory, "HttpRequest.Factory");
         checkNotNull(exceptionFactory, "ExceptionFactory");
         checkNotNull(resultDispatcher, "ResultDispatcher");
-        return (T) Proxy.newProxyInstance(classLoader, interfaces, new RestInvocationHandler(endpoint,
-                authorization, httpClient, restConverterFactory, restRequestFactory, httpRequestFactory,
-                exceptionFactory, constantPool, resultDispatcher));
+        final RestInvoker<E> invoker = new RestInvoker<>(endpoint, authorization, httpClient,
+                restConverterFactory, restRequestFactory, httpRequestFactory, exceptionFactory, constantPool,
+                resultDispatcher, converterExecutor, requestCompression, requestCompressionThreshold);
+        final T generated = newGeneratedInstance(cls, invoker);
+        if (generated != null) return generated;
+        final ClassLoader classLoader = cls.getClassLoader();
+        final Class[] interfaces = new Class[]{cls};
+        return (T) Proxy.newProxyInstance(classLoader, interfaces, new RestInvocationHandler<>(invoker));
+    }
+
+    /**
+     * Parses and validates all methods of API interface, and resolves their converters ahead of time,
+     * so the cost is paid here rather than on first calls. Resolved converters are only kept if converter
+     * factory is a {@link RestConverter.CachingFactory}.
+     *
+     * @return Nanoseconds spent on each method, in declaration order
+     * @throws IllegalArgumentException       If a method is not properly annotated
+     * @throws RestConverter.ConvertException If converter for a method can't be resolved
+     */
+    @NotNull
+    public Map<Method, Long> warmUp(@NotNull Class<?> cls) throws RestConverter.ConvertException {
+        checkNotNull(restConverterFactory, "RestConverter.Factory");
+        final Map<Method, Long> timings = new LinkedHashMap<>();
+        for (Method method : cls.getMethods()) {
+            final Class<?> declaringClass = method.getDeclaringClass();
+            if (declaringClass == Object.class || declaringClass == RestClient.class) continue;
+            if (Modifier.isStatic(method.getModifiers())) continue;
+            final long start = System.nanoTime();
+            RestMethodTemplate.get(method).resolveConverters(restConverterFactory);
+            timings.put(method, System.nanoTime() - start);
+        }
+        return timings;
+    }
+
+    @Nullable
+    private static <T> T newGeneratedInstance(Class<T> cls, RestInvoker<?> invoker) {
+        final Class<?> generatedCls;
+        try {
+            generatedCls = Class.forName(cls.getName() + GENERATED_SUFFIX, true, cls.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        try {
+            return cls.cast(generatedCls.getConstructor(RestInvoker.class).newInstance(invoker));
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     private static void checkNotNull(Object object, String name) {
@@ -116,48 +210,25 @@ public class RestAPIFactory<E extends Exception> {
     }
 
     private static class RestInvocationHandler<E extends Exception> implements InvocationHandler, RestClient {
-        private final Endpoint endpoint;
-        private final Authorization authorization;
-
-        private final RestConverter.Factory<E> converterFactory;
-        private final RestRequest.Factory<E> requestInfoFactory;
-        private final HttpRequest.Factory<E> requestFactory;
-        private final ExceptionFactory<E> exceptionFactory;
-        private final ResultDispatcher<E> resultDispatcher;
-        private final RestHttpClient restClient;
-        private final ValueMap constantPoll;
-
-        RestInvocationHandler(Endpoint endpoint, Authorization authorization,
-                RestHttpClient restClient,
-                RestConverter.Factory<E> converterFactory,
-                RestRequest.Factory<E> restRequestFactory,
-                HttpRequest.Factory<E> httpRequestFactory,
-                ExceptionFactory<E> exceptionFactory,
-                ValueMap constantPoll, ResultDispatcher<E> resultDispatcher) {
-            this.endpoint = endpoint;
-            this.authorization = authorization;
-            this.restClient = restClient;
-            this.converterFactory = converterFactory;
-            this.requestInfoFactory = restRequestFactory;
-            this.requestFactory = httpRequestFactory;
-            this.exceptionFactory = exceptionFactory;
-            this.constantPoll = constantPoll;
-            this.resultDispatcher = resultDispatcher;
+        private final RestInvoker<E> invoker;
+
+        RestInvocationHandler(RestInvoker<E> invoker) {
+            this.invoker = invoker;
         }
 
         @Override
         public Endpoint getEndpoint() {
-            return endpoint;
+            return invoker.getEndpoint();
         }
 
         @Override
         public RestHttpClient getRestClient() {
-            return restClient;
+            return invoker.getRestClient();
         }
 
         @Override
         public Authorization getAuthorization() {
-            return authorization;
+            return invoker.getAuthorization();
         }
 
         @SuppressWarnings({"TryWithIdenticalCatches"})
@@ -174,79 +245,7 @@ public class RestAPIFactory<E extends Exception> {
             } catch (IllegalAccessException e) {
                 throw new RuntimeException(e);
             }
-            final RestMethod<E> restMethod = RestMethod.get(method, args);
-            final Callback<?, E> callback = findCallback(args);
-            RestRequest restRequest;
-            HttpCall httpCall = null;
-            HttpRequest httpRequest = null;
-            HttpResponse httpResponse = null;
-            try {
-                // Get converter before network requests, https://github.com/TwidereProject/Twidere-Android/issues/378
-                // We can throw exceptions before network requests sent
-                final Type returnType = method.getGenericReturnType();
-                restRequest = requestInfoFactory.create(restMethod, converterFactory, constantPoll);
-                httpRequest = requestFactory.create(endpoint, restRequest, authorization, converterFactory);
-                httpCall = restClient.newCall(httpRequest);
-                httpResponse = httpCall.execute();
-                if (!httpResponse.isSuccessful()) {
-                    return onError(null, httpRequest, httpResponse, callback);
-                }
-                return onResult(returnType, httpResponse, callback);
-            } catch (IOException e) {
-                return onError(e, httpRequest, httpResponse, callback);
-            } catch (RestConverter.ConvertException e) {
-                return onError(e, httpRequest, httpResponse, callback);
-            } finally {
-                RestFuUtils.closeSilently(httpResponse);
-                RestFuUtils.closeSilently(httpCall);
-            }
-        }
-
-        private <T> Object onResult(@NotNull Type returnType, @NotNull HttpResponse httpResponse,
-                @Nullable final Callback<?, E> callback)
-                throws RestConverter.ConvertException, E, IOException {
-            if (callback == null) {
-                //noinspection unchecked
-                final RestConverter<HttpResponse, T, E> converter = (RestConverter<HttpResponse, T, E>)
-                        converterFactory.forResponse(returnType);
-                return converter.convert(httpResponse);
-            }
-            if (callback instanceof RawCallback) {
-                //noinspection unchecked
-                RawCallback<E> rawCallback = (RawCallback<E>) callback;
-                resultDispatcher.dispatchResult(rawCallback, httpResponse);
-            } else {
-                //noinspection unchecked
-                Callback<T, E> typedCallback = (Callback<T, E>) callback;
-                //noinspection unchecked
-                final RestConverter<HttpResponse, T, E> converter = (RestConverter<HttpResponse, T, E>)
-                        converterFactory.forResponse(returnType);
-                resultDispatcher.dispatchResult(typedCallback, converter.convert(httpResponse));
-            }
-            return null;
-        }
-
-
-        private Object onError(@Nullable final Throwable cause, @Nullable final HttpRequest httpRequest,
-                @Nullable final HttpResponse response, @Nullable final Callback<?, E> callback) throws E {
-            final E exception = exceptionFactory.newException(cause, httpRequest, response);
-            if (callback == null) {
-                throw exception;
-            }
-            resultDispatcher.dispatchException(callback, exception);
-            return null;
-        }
-
-        @Nullable
-        private <T> Callback<T, E> findCallback(@Nullable Object[] args) {
-            if (args == null) return null;
-            for (Object arg : args) {
-                if (arg instanceof Callback) {
-                    //noinspection unchecked
-                    return (Callback<T, E>) arg;
-                }
-            }
-            return null;
+            return invoker.invoke(RestMethodTemplate.get(method), args);
         }
 
     }
@@ -23,6 +23,8 @@ import org.mariotaku.restfu.http.mime.SimpleBody;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Created by mariotaku on 15/2/6.
@@ -64,6 +66,59 @@ public interface RestConverter<F, T, E extends Exception> {
         }
     }
 
+    /**
+     * Resolves converters from delegate factory once per type. Converters must be stateless and
+     * thread-safe to be cached, which is the case for converters of built-in factories. Not applied by
+     * {@link RestAPIFactory}, wrap factories explicitly to opt in.
+     */
+    final class CachingFactory<E extends Exception> implements Factory<E> {
+        private final Factory<E> delegate;
+        private final ConcurrentMap<Type, RestConverter<HttpResponse, ?, E>> responseConverters =
+                new ConcurrentHashMap<>();
+        private final ConcurrentMap<Type, RestConverter<?, Body, E>> requestConverters = new ConcurrentHashMap<>();
+
+        private CachingFactory(@NotNull Factory<E> delegate) {
+            this.delegate = delegate;
+        }
+
+        @NotNull
+        public static <E extends Exception> CachingFactory<E> wrap(@NotNull Factory<E> factory) {
+            if (factory instanceof CachingFactory) return (CachingFactory<E>) factory;
+            return new CachingFactory<>(factory);
+        }
+
+        @NotNull
+        public Factory<E> getDelegate() {
+            return delegate;
+        }
+
+        @NotNull
+        @Override
+        public RestConverter<HttpResponse, ?, E> forResponse(@NotNull Type toType) throws ConvertException {
+            RestConverter<HttpResponse, ?, E> converter = responseConverters.get(toType);
+            if (converter != null) return converter;
+            converter = delegate.forResponse(toType);
+            //noinspection ConstantConditions
+            if (converter != null) {
+                responseConverters.putIfAbsent(toType, converter);
+            }
+            return converter;
+        }
+
+        @NotNull
+        @Override
+        public RestConverter<?, Body, E> forRequest(@NotNull Type fromType) throws ConvertException {
+            RestConverter<?, Body, E> converter = requestConverters.get(fromType);
+            if (converter != null) return converter;
+            converter = delegate.forRequest(fromType);
+            //noinspection ConstantConditions
+            if (converter != null) {
+                requestConverters.putIfAbsent(fromType, converter);
+            }
+            return converter;
+        }
+    }
+
     class ConvertException extends Exception {
         public ConvertException() {
             super();
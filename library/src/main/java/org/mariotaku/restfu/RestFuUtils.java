@@ -18,18 +18,23 @@ package org.mariotaku.restfu;
 
 import org.mariotaku.commons.collection.Pair;
 import org.mariotaku.restfu.http.MultiValueMap;
+import org.mariotaku.restfu.http.QueryParser;
 import org.mariotaku.restfu.http.mime.Body;
 import org.mariotaku.restfu.http.mime.StringBody;
 import org.mariotaku.restfu.http.mime.UrlSerialization;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Array;
-import java.net.URLDecoder;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Created by mariotaku on 15/2/4.
@@ -69,20 +74,7 @@ public class RestFuUtils {
     }
 
     public static void parseQuery(final String queryString, final String encoding, final KeyValueConsumer consumer) {
-        final String[] queryStrings = split(queryString, "&");
-        try {
-            for (final String query : queryStrings) {
-                final String[] split = split(query, "=");
-                final String key = URLDecoder.decode(split[0], encoding);
-                if (split.length == 2) {
-                    consumer.consume(key, URLDecoder.decode(split[1], encoding));
-                } else {
-                    consumer.consume(key, null);
-                }
-            }
-        } catch (final UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
+        QueryParser.parse(queryString, Charset.forName(encoding), consumer);
     }
 
     public static void parseQuery(final String queryString, final String encoding, final MultiValueMap<String> params) {
@@ -209,8 +201,15 @@ public class RestFuUtils {
 
     public static String sanitizeHeader(String header) {
         if (header == null) return null;
+        int start = 0;
+        final int length = header.length();
+        while (start < length && isAsciiPrintable(header.charAt(start))) {
+            start++;
+        }
+        // Most headers are already printable, avoid copying them
+        if (start == length) return header;
         final char[] chars = header.toCharArray();
-        for (int i = 0, j = chars.length; i < j; i++) {
+        for (int i = start; i < length; i++) {
             if (!isAsciiPrintable(chars[i])) {
                 chars[i] = '.';
             }
@@ -222,7 +221,151 @@ public class RestFuUtils {
         return ch >= 0x20 && ch < 0x7f;
     }
 
+    /**
+     * Used by implementations generated by RestFu annotation processor to describe generic return
+     * types without reflection. Equal to types returned by {@link java.lang.reflect.Method#getGenericReturnType()}.
+     */
+    public static ParameterizedType parameterizedType(Type ownerType, Class<?> rawType, Type... typeArguments) {
+        return new ParameterizedTypeImpl(ownerType, rawType, typeArguments);
+    }
+
+    public static GenericArrayType genericArrayType(Type componentType) {
+        return new GenericArrayTypeImpl(componentType);
+    }
+
+    /**
+     * @param lowerBound Lower bound, or null for {@code ? extends upperBound}
+     */
+    public static WildcardType wildcardType(Type upperBound, Type lowerBound) {
+        final Type[] lowerBounds = lowerBound != null ? new Type[]{lowerBound} : new Type[0];
+        return new WildcardTypeImpl(new Type[]{upperBound}, lowerBounds);
+    }
+
     public interface KeyValueConsumer {
         void consume(String key, String value);
     }
+
+    private static String typeToString(Type type) {
+        return type instanceof Class ? ((Class<?>) type).getName() : type.toString();
+    }
+
+    private static final class ParameterizedTypeImpl implements ParameterizedType {
+        private final Type ownerType;
+        private final Class<?> rawType;
+        private final Type[] typeArguments;
+
+        ParameterizedTypeImpl(Type ownerType, Class<?> rawType, Type[] typeArguments) {
+            this.ownerType = ownerType;
+            this.rawType = rawType;
+            this.typeArguments = typeArguments;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return typeArguments.clone();
+        }
+
+        @Override
+        public Type getRawType() {
+            return rawType;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return ownerType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ParameterizedType)) return false;
+            final ParameterizedType that = (ParameterizedType) o;
+            return rawType.equals(that.getRawType()) && Objects.equals(ownerType, that.getOwnerType())
+                    && Arrays.equals(typeArguments, that.getActualTypeArguments());
+        }
+
+        @Override
+        public int hashCode() {
+            // Same as JDK implementation, so both can be used as keys of one map
+            return Arrays.hashCode(typeArguments) ^ Objects.hashCode(ownerType) ^ rawType.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder(rawType.getName()).append('<');
+            for (int i = 0; i < typeArguments.length; i++) {
+                if (i != 0) sb.append(", ");
+                sb.append(typeToString(typeArguments[i]));
+            }
+            return sb.append('>').toString();
+        }
+    }
+
+    private static final class GenericArrayTypeImpl implements GenericArrayType {
+        private final Type componentType;
+
+        GenericArrayTypeImpl(Type componentType) {
+            this.componentType = componentType;
+        }
+
+        @Override
+        public Type getGenericComponentType() {
+            return componentType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GenericArrayType
+                    && componentType.equals(((GenericArrayType) o).getGenericComponentType());
+        }
+
+        @Override
+        public int hashCode() {
+            return componentType.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return typeToString(componentType) + "[]";
+        }
+    }
+
+    private static final class WildcardTypeImpl implements WildcardType {
+        private final Type[] upperBounds;
+        private final Type[] lowerBounds;
+
+        WildcardTypeImpl(Type[] upperBounds, Type[] lowerBounds) {
+            this.upperBounds = upperBounds;
+            this.lowerBounds = lowerBounds;
+        }
+
+        @Override
+        public Type[] getUpperBounds() {
+            return upperBounds.clone();
+        }
+
+        @Override
+        public Type[] getLowerBounds() {
+            return lowerBounds.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WildcardType)) return false;
+            final WildcardType that = (WildcardType) o;
+            return Arrays.equals(upperBounds, that.getUpperBounds())
+                    && Arrays.equals(lowerBounds, that.getLowerBounds());
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(upperBounds) ^ Arrays.hashCode(lowerBounds);
+        }
+
+        @Override
+        public String toString() {
+            if (lowerBounds.length > 0) return "? super " + typeToString(lowerBounds[0]);
+            if (upperBounds[0] == Object.class) return "?";
+            return "? extends " + typeToString(upperBounds[0]);
+        }
+    }
 }
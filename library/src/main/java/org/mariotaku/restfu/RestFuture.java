@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Result of API methods declared to return {@link Future} or {@code RestFuture}. Requests of these
+ * methods are sent with {@link org.mariotaku.restfu.http.RestHttpClient#enqueue}, and responses are
+ * converted on converter executor of {@link RestAPIFactory}, so no thread waits for them.
+ * <p>
+ * {@link #get()} throws {@link java.util.concurrent.ExecutionException} with exception created by
+ * {@link ExceptionFactory} as its cause. Cancelling cancels underlying HTTP call.
+ */
+public interface RestFuture<T> extends Future<T> {
+
+    /**
+     * Runs listener on executor once this future is done, whether succeeded, failed or cancelled.
+     * If it's already done, listener will be scheduled immediately.
+     */
+    void addListener(@NotNull Runnable listener, @NotNull Executor executor);
+}
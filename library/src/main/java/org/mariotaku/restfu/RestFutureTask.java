@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mariotaku.restfu.http.HttpCall;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * {@link RestFuture} completed by {@link RestInvoker}
+ */
+final class RestFutureTask<T> implements RestFuture<T> {
+
+    private static final int RUNNING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private int state = RUNNING;
+    private T result;
+    private Throwable exception;
+    @Nullable
+    private HttpCall call;
+    @Nullable
+    private List<Runnable> listeners;
+
+    /**
+     * Call will be cancelled if this future is cancelled
+     */
+    void setCall(@NotNull HttpCall call) {
+        synchronized (this) {
+            if (state != CANCELLED) {
+                this.call = call;
+                return;
+            }
+        }
+        call.cancel();
+    }
+
+    boolean set(@Nullable T result) {
+        return complete(SUCCEEDED, result, null);
+    }
+
+    boolean setException(@NotNull Throwable exception) {
+        return complete(FAILED, null, exception);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        final HttpCall call;
+        synchronized (this) {
+            call = this.call;
+        }
+        if (!complete(CANCELLED, null, null)) return false;
+        if (call != null) {
+            call.cancel();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != RUNNING;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (state == RUNNING) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, @NotNull TimeUnit unit) throws InterruptedException,
+            ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (state == RUNNING) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    @Override
+    public void addListener(@NotNull Runnable listener, @NotNull Executor executor) {
+        final Runnable scheduled = new ScheduledListener(listener, executor);
+        synchronized (this) {
+            if (state == RUNNING) {
+                if (listeners == null) {
+                    listeners = new ArrayList<>(1);
+                }
+                listeners.add(scheduled);
+                return;
+            }
+        }
+        scheduled.run();
+    }
+
+    private T report() throws ExecutionException {
+        switch (state) {
+            case SUCCEEDED:
+                return result;
+            case CANCELLED:
+                throw new CancellationException();
+            default:
+                throw new ExecutionException(exception);
+        }
+    }
+
+    private boolean complete(int state, T result, Throwable exception) {
+        final List<Runnable> listeners;
+        synchronized (this) {
+            if (this.state != RUNNING) return false;
+            this.state = state;
+            this.result = result;
+            this.exception = exception;
+            this.call = null;
+            listeners = this.listeners;
+            this.listeners = null;
+            notifyAll();
+        }
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+        return true;
+    }
+
+    private static class ScheduledListener implements Runnable {
+        private final Runnable listener;
+        private final Executor executor;
+
+        ScheduledListener(Runnable listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            executor.execute(listener);
+        }
+    }
+}
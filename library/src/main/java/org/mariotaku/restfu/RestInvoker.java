@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mariotaku.restfu.callback.Callback;
+import org.mariotaku.restfu.callback.RawCallback;
+import org.mariotaku.restfu.http.*;
+import org.mariotaku.restfu.http.mime.Body;
+import org.mariotaku.restfu.http.mime.CompressedBody;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes calls of API methods. Shared by {@link java.lang.reflect.Proxy} based implementations and
+ * implementations generated by RestFu annotation processor.
+ */
+public final class RestInvoker<E extends Exception> implements RestClient {
+    private final Endpoint endpoint;
+    private final Authorization authorization;
+
+    private final RestConverter.Factory<E> converterFactory;
+    private final RestRequest.Factory<E> requestInfoFactory;
+    private final HttpRequest.Factory<E> requestFactory;
+    private final ExceptionFactory<E> exceptionFactory;
+    private final ResultDispatcher<E> resultDispatcher;
+    private final RestHttpClient restClient;
+    private final ValueMap constantPoll;
+    @Nullable
+    private final Executor converterExecutor;
+    @Nullable
+    private final String requestCompression;
+    private final long requestCompressionThreshold;
+
+    RestInvoker(Endpoint endpoint, Authorization authorization,
+            RestHttpClient restClient,
+            RestConverter.Factory<E> converterFactory,
+            RestRequest.Factory<E> restRequestFactory,
+            HttpRequest.Factory<E> httpRequestFactory,
+            ExceptionFactory<E> exceptionFactory,
+            ValueMap constantPoll, ResultDispatcher<E> resultDispatcher,
+            @Nullable Executor converterExecutor, @Nullable String requestCompression,
+            long requestCompressionThreshold) {
+        this.endpoint = endpoint;
+        this.authorization = authorization;
+        this.restClient = restClient;
+        this.converterFactory = converterFactory;
+        this.requestInfoFactory = restRequestFactory;
+        this.requestFactory = httpRequestFactory;
+        this.exceptionFactory = exceptionFactory;
+        this.constantPoll = constantPoll;
+        this.resultDispatcher = resultDispatcher;
+        this.converterExecutor = converterExecutor;
+        this.requestCompression = requestCompression;
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    @Override
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public RestHttpClient getRestClient() {
+        return restClient;
+    }
+
+    @Override
+    public Authorization getAuthorization() {
+        return authorization;
+    }
+
+    /**
+     * Calls of {@link java.lang.reflect.Proxy} based implementations
+     */
+    Object invoke(@NotNull final RestMethodTemplate template, @Nullable final Object[] args) throws E {
+        return execute(template.<E>bind(args));
+    }
+
+    /**
+     * Executes a call with arguments already bound, used by implementations generated by RestFu
+     * annotation processor
+     *
+     * @return Converted response, {@link RestFuture} if method returns a future, or null if result is
+     * dispatched to callback
+     */
+    @SuppressWarnings({"TryWithIdenticalCatches"})
+    public Object execute(@NotNull final RestMethod<E> restMethod) throws E {
+        final RestMethod.Info info = restMethod.info;
+        if (info.async) return enqueue(restMethod);
+        final Callback<?, E> callback = restMethod.getCallback();
+        RestRequest restRequest;
+        HttpCall httpCall = null;
+        HttpRequest httpRequest = null;
+        HttpResponse httpResponse = null;
+        try {
+            // Get converter before network requests, https://github.com/TwidereProject/Twidere-Android/issues/378
+            // We can throw exceptions before network requests sent
+            final Type returnType = info.returnType;
+            restRequest = requestInfoFactory.create(restMethod, converterFactory, constantPoll);
+            httpRequest = compress(info, requestFactory.create(endpoint, restRequest, authorization,
+                    converterFactory));
+            httpCall = restClient.newCall(httpRequest);
+            httpResponse = httpCall.execute();
+            if (!httpResponse.isSuccessful()) {
+                return onError(null, httpRequest, httpResponse, callback);
+            }
+            return onResult(returnType, httpResponse, callback);
+        } catch (IOException e) {
+            return onError(e, httpRequest, httpResponse, callback);
+        } catch (RestConverter.ConvertException e) {
+            return onError(e, httpRequest, httpResponse, callback);
+        } finally {
+            RestFuUtils.closeSilently(httpResponse);
+            RestFuUtils.closeSilently(httpCall);
+        }
+    }
+
+    /**
+     * Sends request with {@link RestHttpClient#enqueue(HttpCall, HttpCallback)}, response will be
+     * converted on converter executor
+     */
+    @SuppressWarnings({"TryWithIdenticalCatches"})
+    private <T> RestFuture<T> enqueue(@NotNull final RestMethod<E> restMethod) {
+        final RestFutureTask<T> future = new RestFutureTask<>();
+        HttpRequest httpRequest = null;
+        final HttpCall httpCall;
+        try {
+            final RestRequest restRequest = requestInfoFactory.create(restMethod, converterFactory, constantPoll);
+            httpRequest = compress(restMethod.info, requestFactory.create(endpoint, restRequest, authorization,
+                    converterFactory));
+            httpCall = restClient.newCall(httpRequest);
+        } catch (Exception e) {
+            future.setException(wrapException(e, httpRequest, null));
+            return future;
+        }
+        future.setCall(httpCall);
+        restClient.enqueue(httpCall, new FutureHttpCallback<>(future, restMethod.info.resultType, httpRequest, httpCall));
+        return future;
+    }
+
+    /**
+     * Wraps request body with {@link CompressedBody} if enabled by {@link Compress} or
+     * {@link RestAPIFactory#setRequestCompression(String, long)}
+     */
+    @NotNull
+    private HttpRequest compress(@NotNull RestMethod.Info info, @NotNull HttpRequest request)
+            throws IOException {
+        final Body body = request.getBody();
+        if (body == null || body.contentEncoding() != null) return request;
+        final String encoding;
+        final long threshold;
+        if (info.compress != null) {
+            encoding = info.compress.value();
+            threshold = info.compress.threshold();
+        } else {
+            encoding = requestCompression;
+            threshold = requestCompressionThreshold;
+        }
+        if (encoding == null || Compress.IDENTITY.equals(encoding)) return request;
+        final long length = body.length();
+        if (length >= 0 && length < threshold) return request;
+        return new HttpRequest(request.getMethod(), request.getUrl(), request.getHeaders(),
+                new CompressedBody(body, encoding), request.getTag());
+    }
+
+    private Throwable wrapException(@NotNull Throwable t, @Nullable HttpRequest httpRequest,
+            @Nullable HttpResponse httpResponse) {
+        if (t instanceof IOException || t instanceof RestConverter.ConvertException) {
+            return exceptionFactory.newException(t, httpRequest, httpResponse);
+        }
+        return t;
+    }
+
+    private <T> Object onResult(@NotNull Type returnType, @NotNull HttpResponse httpResponse,
+            @Nullable final Callback<?, E> callback)
+            throws RestConverter.ConvertException, E, IOException {
+        if (callback == null) {
+            //noinspection unchecked
+            final RestConverter<HttpResponse, T, E> converter = (RestConverter<HttpResponse, T, E>)
+                    converterFactory.forResponse(returnType);
+            return converter.convert(httpResponse);
+        }
+        if (callback instanceof RawCallback) {
+            //noinspection unchecked
+            RawCallback<E> rawCallback = (RawCallback<E>) callback;
+            resultDispatcher.dispatchResult(rawCallback, httpResponse);
+        } else {
+            //noinspection unchecked
+            Callback<T, E> typedCallback = (Callback<T, E>) callback;
+            //noinspection unchecked
+            final RestConverter<HttpResponse, T, E> converter = (RestConverter<HttpResponse, T, E>)
+                    converterFactory.forResponse(returnType);
+            resultDispatcher.dispatchResult(typedCallback, converter.convert(httpResponse));
+        }
+        return null;
+    }
+
+
+    private Object onError(@Nullable final Throwable cause, @Nullable final HttpRequest httpRequest,
+            @Nullable final HttpResponse response, @Nullable final Callback<?, E> callback) throws E {
+        final E exception = exceptionFactory.newException(cause, httpRequest, response);
+        if (callback == null) {
+            throw exception;
+        }
+        resultDispatcher.dispatchException(callback, exception);
+        return null;
+    }
+
+    @NotNull
+    private Executor getConverterExecutor() {
+        if (converterExecutor != null) return converterExecutor;
+        return DefaultConverterExecutor.INSTANCE;
+    }
+
+    private static class DefaultConverterExecutor {
+        // Holder class, so the pool is created on first use
+        static final Executor INSTANCE = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(@NotNull Runnable r) {
+                        final Thread thread = new Thread(r, "RestFu converter #" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    private class FutureHttpCallback<T> implements HttpCallback {
+        private final RestFutureTask<T> future;
+        private final Type resultType;
+        private final HttpRequest httpRequest;
+        private final HttpCall httpCall;
+
+        FutureHttpCallback(RestFutureTask<T> future, Type resultType, HttpRequest httpRequest, HttpCall httpCall) {
+            this.future = future;
+            this.resultType = resultType;
+            this.httpRequest = httpRequest;
+            this.httpCall = httpCall;
+        }
+
+        @Override
+        public void response(@NotNull final HttpResponse response) {
+            // Don't block I/O thread with conversion
+            try {
+                getConverterExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        convert(response);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.setException(e);
+                RestFuUtils.closeSilently(response);
+                RestFuUtils.closeSilently(httpCall);
+            }
+        }
+
+        @Override
+        public void failure(@NotNull IOException ioe) {
+            future.setException(exceptionFactory.newException(ioe, httpRequest, null));
+            RestFuUtils.closeSilently(httpCall);
+        }
+
+        @Override
+        public void cancelled() {
+            future.cancel(false);
+            RestFuUtils.closeSilently(httpCall);
+        }
+
+        private void convert(HttpResponse response) {
+            try {
+                if (future.isDone()) return;
+                if (!response.isSuccessful()) {
+                    future.setException(exceptionFactory.newException(null, httpRequest, response));
+                    return;
+                }
+                //noinspection unchecked
+                final RestConverter<HttpResponse, T, E> converter = (RestConverter<HttpResponse, T, E>)
+                        converterFactory.forResponse(resultType);
+                future.set(converter.convert(response));
+            } catch (Throwable t) {
+                future.setException(wrapException(t, httpRequest, response));
+                if (t instanceof Error) throw (Error) t;
+            } finally {
+                RestFuUtils.closeSilently(response);
+                RestFuUtils.closeSilently(httpCall);
+            }
+        }
+    }
+
+}
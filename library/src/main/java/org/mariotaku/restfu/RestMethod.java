@@ -14,50 +14,36 @@
  * limitations under the License.
  */
 
+
 package org.mariotaku.restfu;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.mariotaku.commons.collection.Pair;
 import org.mariotaku.restfu.annotation.HttpMethod;
-import org.mariotaku.restfu.annotation.param.*;
+import org.mariotaku.restfu.annotation.param.BooleanEncoding;
+import org.mariotaku.restfu.callback.Callback;
 import org.mariotaku.restfu.http.*;
 import org.mariotaku.restfu.http.mime.Body;
-import org.mariotaku.restfu.http.mime.UrlSerialization;
+import org.mariotaku.restfu.http.mime.CompressedBody;
 
 import java.io.IOException;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
 
+/**
+ * One call of an API method with its arguments. Arguments are bound by subclasses, either from
+ * parsed annotations of {@link java.lang.reflect.Method}, or by implementations generated by RestFu
+ * annotation processor, which bind arguments with straight-line code through the protected methods.
+ */
 @SuppressWarnings("WeakerAccess")
-public final class RestMethod<E extends Exception> {
+public abstract class RestMethod<E extends Exception> {
 
     @NotNull
-    private final HttpMethod method;
-    @NotNull
-    private final String path;
+    final Info info;
     @Nullable
-    private final BodyType bodyType;
-
-    @NotNull
-    private final ArrayList<Pair<Path, Object>> paths;
-    @NotNull
-    private final ArrayList<Pair<Header, Object>> headers;
-    @NotNull
-    private final ArrayList<Pair<Query, Object>> queries;
-    @NotNull
-    private final ArrayList<Pair<Param, Object>> params;
-    @NotNull
-    private final ArrayList<Pair<Extra, Object>> extras;
-
-    private final Headers headerConstants;
-    private final Queries queryConstants;
-    private final Params paramConstants;
-
     private final RawValue rawValue;
 
     private MultiValueMap<String> headersCache;
@@ -65,229 +51,70 @@ public final class RestMethod<E extends Exception> {
     private MultiValueMap<Body> paramsCache;
     private Map<String, Object> extrasCache;
 
-    private RestMethod(@NotNull HttpMethod method, @NotNull String path, @Nullable BodyType bodyType,
-            @NotNull ArrayList<Pair<Path, Object>> paths, @NotNull ArrayList<Pair<Header, Object>> headers,
-            @NotNull ArrayList<Pair<Query, Object>> queries, @NotNull ArrayList<Pair<Param, Object>> params,
-            @NotNull ArrayList<Pair<Extra, Object>> extras, Headers headerConstants, Queries queryConstants,
-            Params paramConstants, RawValue rawValue) {
-        this.method = method;
-        this.path = path;
-        this.bodyType = bodyType;
-        this.paths = paths;
-        this.headers = headers;
-        this.queries = queries;
-        this.params = params;
-        this.extras = extras;
-        this.headerConstants = headerConstants;
-        this.queryConstants = queryConstants;
-        this.paramConstants = paramConstants;
+    protected RestMethod(@NotNull Info info, @Nullable RawValue rawValue) {
+        this.info = info;
         this.rawValue = rawValue;
     }
 
-    static <E extends Exception> RestMethod<E> get(Method method, Object[] args) {
-        HttpMethod httpMethod = null;
-        String pathFormat = null;
-        for (Annotation annotation : method.getAnnotations()) {
-            final Class<?> annotationType = annotation.annotationType();
-            httpMethod = annotationType.getAnnotation(HttpMethod.class);
-            if (httpMethod != null) {
-                try {
-                    pathFormat = (String) annotationType.getMethod("value").invoke(annotation);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-                break;
-            }
-        }
-        if (httpMethod == null) {
-            throw new IllegalArgumentException("Must be annotated with @HttpMethod or @GET, @POST...");
-        }
-        final BodyType bodyType = method.getAnnotation(BodyType.class);
-        final ArrayList<Pair<Path, Object>> paths = new ArrayList<>();
-        final ArrayList<Pair<Query, Object>> queries = new ArrayList<>();
-        final ArrayList<Pair<Header, Object>> headers = new ArrayList<>();
-        final ArrayList<Pair<Param, Object>> params = new ArrayList<>();
-        final ArrayList<Pair<Extra, Object>> extras = new ArrayList<>();
-        RawValue rawValue = null;
-        final Annotation[][] annotations = method.getParameterAnnotations();
-        for (int i = 0, j = annotations.length; i < j; i++) {
-            final Path path = getAnnotation(annotations[i], Path.class);
-            if (path != null) {
-                paths.add(Pair.create(path, args[i]));
-            }
-            final Query query = getAnnotation(annotations[i], Query.class);
-            if (query != null) {
-                queries.add(Pair.create(query, args[i]));
-            }
-            final Header header = getAnnotation(annotations[i], Header.class);
-            if (header != null) {
-                headers.add(Pair.create(header, args[i]));
-            }
-            final Param param = getAnnotation(annotations[i], Param.class);
-            if (param != null) {
-                params.add(Pair.create(param, args[i]));
-            }
-            final Raw paramRaw = getAnnotation(annotations[i], Raw.class);
-            if (paramRaw != null) {
-                if (rawValue == null) {
-                    rawValue = new RawValue(paramRaw, args[i]);
-                } else {
-                    throw new IllegalArgumentException();
-                }
-            }
-            final Extra extra = getAnnotation(annotations[i], Extra.class);
-            if (extra != null) {
-                extras.add(Pair.create(extra, args[i]));
-            }
-        }
-        final Headers headerConstants = getAnnotation(method, Headers.class);
-        final Queries queryConstants = getAnnotation(method, Queries.class);
-        final Params paramConstants = getAnnotation(method, Params.class);
-        return new RestMethod<>(httpMethod, pathFormat, bodyType, paths, headers, queries, params, extras,
-                headerConstants, queryConstants, paramConstants, rawValue);
-    }
-
     @NotNull
-    public HttpMethod getMethod() {
-        return method;
+    public final HttpMethod getMethod() {
+        return info.method;
     }
 
     @NotNull
-    public String getPath() {
-        final int queryIndex = path.indexOf('?');
-        final StringBuilder sb = new StringBuilder();
-        int start, end, prevEnd = -1;
-        while ((start = path.indexOf('{', prevEnd)) != -1 && (end = path.indexOf('}', start)) != -1) {
-            if (queryIndex != -1 && start >= queryIndex) break;
-            sb.append(path.substring(prevEnd + 1, start));
-            final String key = path.substring(start + 1, end);
-            final String replacement = findPathReplacement(key);
-            if (replacement == null)
-                throw new IllegalArgumentException("Path key {" + key + "} not bound");
-            sb.append(replacement);
-            prevEnd = end;
-        }
-        if (queryIndex != -1) {
-            sb.append(path.substring(prevEnd + 1, queryIndex));
-        } else {
-            sb.append(path.substring(prevEnd + 1));
-        }
-        return sb.toString();
+    public final String getPath() {
+        return expandPath();
     }
 
     @NotNull
-    public MultiValueMap<String> getHeaders(@Nullable final ValueMap valuesPool) throws RestConverter.ConvertException,
-            IOException, E {
+    public final MultiValueMap<String> getHeaders(@Nullable final ValueMap valuesPool)
+            throws RestConverter.ConvertException, IOException, E {
         if (headersCache != null) return headersCache;
-        final MultiValueMap<String> map = new MultiValueMap<>(true);
-        final Converter<String, E> converter = new Converter<String, E>() {
-            @Override
-            public String[] convert(Object from, char arrayDelimiter, int booleanEncoding) throws RestConverter.ConvertException, IOException {
-                final String header;
-                if (from == null) {
-                    header = null;
-                } else if (from instanceof HeaderValue) {
-                    header = ((HeaderValue) from).toHeaderValue();
-                } else if (from.getClass().isArray()) {
-                    if (arrayDelimiter == '\0') {
-                        return RestFuUtils.toStringArray(from);
-                    }
-                    header = RestFuUtils.toString(from, arrayDelimiter);
-                } else {
-                    header = from.toString();
-                }
-                return new String[]{header};
-            }
-        };
-        final HeaderSanitizer sanitizer = new HeaderSanitizer();
-        addArgumentsToMap(headers, map, converter, sanitizer);
-        addConstants(headerConstants, valuesPool, converter, map, sanitizer);
+        final MultiValueMap<String> map = new HeaderMap();
+        bindHeaders(map, valuesPool);
         return headersCache = map;
     }
 
     @NotNull
-    public MultiValueMap<String> getQueries(@Nullable final ValueMap valuesPool) throws RestConverter.ConvertException,
-            IOException, E {
+    public final MultiValueMap<String> getQueries(@Nullable final ValueMap valuesPool)
+            throws RestConverter.ConvertException, IOException, E {
         if (queriesCache != null) return queriesCache;
         final MultiValueMap<String> list = new MultiValueMap<>();
-        final int queryIndex = path.indexOf('?');
-        if (queryIndex != -1) {
-            RestFuUtils.parseQuery(path.substring(queryIndex + 1), Charset.defaultCharset().name(), list);
-        }
-        final Converter<String, E> converter = new Converter<String, E>() {
-            @Override
-            public String[] convert(Object from, char arrayDelimiter, int booleanEncoding) throws RestConverter.ConvertException, IOException {
-                if (from == null) return new String[]{null};
-                if (arrayDelimiter == '\0' && from.getClass().isArray()) {
-                    return RestFuUtils.toStringArray(from);
-                }
-                return RestMethod.toString(from, arrayDelimiter, booleanEncoding);
-            }
-        };
-        final SimpleSanitizer<String> sanitizer = new SimpleSanitizer<>();
-        addArgumentsToMap(queries, list, converter, sanitizer);
-        addConstants(queryConstants, valuesPool, converter, list, sanitizer);
-        if (!method.allowBody()) {
-            addArgumentsToMap(params, list, converter, sanitizer);
-            addConstants(paramConstants, valuesPool, converter, list, sanitizer);
-        }
+        bindQueries(list, valuesPool);
         return queriesCache = list;
     }
 
     @Nullable
-    public MultiValueMap<Body> getParams(final RestConverter.Factory<E> factory, @Nullable final ValueMap valuesPool)
-            throws RestConverter.ConvertException, IOException, E {
-        if (!method.allowBody()) return null;
+    public final MultiValueMap<Body> getParams(final RestConverter.Factory<E> factory,
+            @Nullable final ValueMap valuesPool) throws RestConverter.ConvertException, IOException, E {
+        if (!info.method.allowBody()) return null;
         if (paramsCache != null) return paramsCache;
         final MultiValueMap<Body> map = new MultiValueMap<>();
-        final Converter<Body, E> converter = new Converter<Body, E>() {
-            @Override
-            public Body[] convert(Object argument, char arrayDelimiter, int booleanEncoding) throws IOException, RestConverter.ConvertException, E {
-                return RestFuUtils.toBodies(argument, factory, arrayDelimiter);
-            }
-        };
-        final SimpleSanitizer<Body> sanitizer = new SimpleSanitizer<>();
-        addArgumentsToMap(params, map, converter, sanitizer);
-        addConstants(paramConstants, valuesPool, converter, map, sanitizer);
+        bindParams(map, factory, valuesPool);
         return paramsCache = map;
     }
 
     @Nullable
-    public RawValue getRawValue() {
+    public final RawValue getRawValue() {
         return rawValue;
     }
 
     @Nullable
-    public BodyType getBodyType() {
-        return bodyType;
+    public final BodyType getBodyType() {
+        return info.bodyType;
     }
 
     @NotNull
-    public Map<String, Object> getExtras() {
+    public final Map<String, Object> getExtras() {
         if (extrasCache != null) return extrasCache;
         final Map<String, Object> map = new HashMap<>();
-        for (Pair<Extra, Object> entry : extras) {
-            final Extra extra = entry.first;
-            final Object value = entry.second;
-            if (value instanceof ValueMap) {
-                final ValueMap valueMap = (ValueMap) value;
-                for (String key : getValueMapKeys(extra.value(), valueMap)) {
-                    if (valueMap.has(key)) {
-                        map.put(key, valueMap.get(key));
-                    }
-                }
-            } else if (value != null) {
-                for (String key : extra.value()) {
-                    map.put(key, value);
-                }
-            }
-        }
+        bindExtras(map);
         return extrasCache = map;
     }
 
     @NotNull
-    public RestRequest toRestRequest(@NotNull RestConverter.Factory<E> factory, @Nullable final ValueMap valuesPool)
-            throws RestConverter.ConvertException, IOException, E {
+    public final RestRequest toRestRequest(@NotNull RestConverter.Factory<E> factory,
+            @Nullable final ValueMap valuesPool) throws RestConverter.ConvertException, IOException, E {
         final HttpMethod method = getMethod();
         final MultiValueMap<Body> params = getParams(factory, valuesPool);
         final RawValue fileValue = getRawValue();
@@ -296,243 +123,155 @@ public final class RestMethod<E extends Exception> {
                 getQueries(valuesPool), params, fileValue, getBodyType(), getExtras());
     }
 
-    private String findPathReplacement(String key) {
-        final Charset charset = Charset.forName("UTF-8");
-        for (Pair<Path, Object> entry : paths) {
-            if (key.equals(entry.first.value())) {
-                if (entry.first.encoded()) {
-                    return String.valueOf(entry.second);
-                } else {
-                    return UrlSerialization.PATH.serialize(String.valueOf(entry.second), charset);
-                }
-            }
-        }
-        return null;
-    }
-
-    private static String[] getValueMapKeys(String[] annotationValue, ValueMap valueMap) {
-        return annotationValue != null && annotationValue.length > 0 ? annotationValue : valueMap.keys();
-    }
+    /**
+     * @return Path with placeholders replaced, without static query part
+     */
+    @NotNull
+    protected abstract String expandPath();
 
-    private static void checkMethod(HttpMethod httpMethod, RawValue fileValue) {
-        final boolean hasBody = fileValue != null;
-        if (!httpMethod.allowBody() && hasBody) {
-            throw new IllegalArgumentException(httpMethod.value() + " does not allow body");
-        }
+    /**
+     * Adds headers from arguments and {@code @Headers}
+     */
+    protected void bindHeaders(@NotNull MultiValueMap<String> target, @Nullable ValueMap valuesPool)
+            throws RestConverter.ConvertException, IOException, E {
     }
 
-    private static <A extends Annotation, T, E extends Exception> void addConstants(final A annotation,
-            @Nullable  final ValueMap valuesPool, final Converter<T, E> converter,
-            final MultiValueMap<T> target, final Sanitizer<T> sanitizer) throws RestConverter.ConvertException,
-            IOException, E {
-        consumeConstants(annotation, new ConstantIterateConsumer<E>() {
-            @Override
-            public void consume(KeyValue item) throws RestConverter.ConvertException, IOException, E {
-                final String key = item.key(), value = item.value(), valueKey = item.valueKey();
-                if (valueKey.length() > 0) {
-                    if (valuesPool != null && valuesPool.has(valueKey)) {
-                        final String sanitizedKey = sanitizer.sanitizeKey(key);
-                        final T[] keyValue = converter.convert(valuesPool.get(valueKey), item.arrayDelimiter(),
-                                BooleanEncoding.TRUE_FALSE);
-                        target.addAll(sanitizedKey, sanitizer.sanitizeValue(keyValue));
-                    }
-                } else {
-                    final String sanitizedKey = sanitizer.sanitizeKey(key);
-                    final T[] convertedValue = converter.convert(value, item.arrayDelimiter(),
-                            BooleanEncoding.TRUE_FALSE);
-                    target.addAll(sanitizedKey, sanitizer.sanitizeValue(convertedValue));
-                }
-            }
-        });
+    /**
+     * Adds queries from static query part of path, arguments and {@code @Queries}, params are added
+     * here as well if method doesn't allow body
+     */
+    protected void bindQueries(@NotNull MultiValueMap<String> target, @Nullable ValueMap valuesPool)
+            throws RestConverter.ConvertException, IOException, E {
     }
 
-    private static <T extends Annotation, E extends Exception> void consumeArguments(final ArrayList<Pair<T, Object>> list,
-            final ArgumentIterateConsumer<E> consumer) throws RestConverter.ConvertException, IOException, E {
-        if (list == null) return;
-        for (Pair<?, Object> pair : list) {
-            if (pair.first instanceof Header) {
-                final Header h = (Header) pair.first;
-                consumer.consume(h.value(), h.arrayDelimiter(), h.ignoreOnNull(), h.booleanEncoding(), pair.second);
-            } else if (pair.first instanceof Param) {
-                final Param p = (Param) pair.first;
-                consumer.consume(p.value(), p.arrayDelimiter(), p.ignoreOnNull(), p.booleanEncoding(), pair.second);
-            } else if (pair.first instanceof Query) {
-                final Query q = (Query) pair.first;
-                consumer.consume(q.value(), q.arrayDelimiter(), q.ignoreOnNull(), q.booleanEncoding(), pair.second);
-            }
-        }
-
+    /**
+     * Adds params from arguments and {@code @Params}, only called if method allows body
+     */
+    protected void bindParams(@NotNull MultiValueMap<Body> target, @NotNull RestConverter.Factory<E> factory,
+            @Nullable ValueMap valuesPool) throws RestConverter.ConvertException, IOException, E {
     }
 
-    private static <T extends Annotation, E extends Exception> void consumeConstants(T annotation,
-            ConstantIterateConsumer<E> consumer) throws RestConverter.ConvertException, IOException, E {
-        if (annotation == null) return;
-        KeyValue[] items;
-        if (annotation instanceof Headers) {
-            Headers h = (Headers) annotation;
-            if (h.template() != void.class) {
-                h = h.template().getAnnotation(Headers.class);
-                if (h == null) {
-                    throw new UnsupportedOperationException("Template class must be annotated");
-                } else if (h.template() != void.class) {
-                    throw new UnsupportedOperationException("Template class can't use template reference");
-                }
-            }
-            items = h.value();
-        } else if (annotation instanceof Queries) {
-            Queries q = (Queries) annotation;
-            if (q.template() != void.class) {
-                q = q.template().getAnnotation(Queries.class);
-                if (q == null) {
-                    throw new UnsupportedOperationException("Template class must be annotated");
-                } else if (q.template() != void.class) {
-                    throw new UnsupportedOperationException("Template class can't use template reference");
-                }
-            }
-            items = q.value();
-        } else if (annotation instanceof Params) {
-            Params p = (Params) annotation;
-            if (p.template() != void.class) {
-                p = p.template().getAnnotation(Params.class);
-                if (p == null) {
-                    throw new UnsupportedOperationException("Template class must be annotated");
-                } else if (p.template() != void.class) {
-                    throw new UnsupportedOperationException("Template class can't use template reference");
-                }
-            }
-            items = p.value();
-        } else {
-            throw new UnsupportedOperationException(annotation.getClass().toString());
-        }
-        for (KeyValue item : items) {
-            consumer.consume(item);
-        }
+    protected void bindExtras(@NotNull Map<String, Object> target) {
     }
 
-    private static <A extends Annotation, O, E extends Exception> void addArgumentsToMap(ArrayList<Pair<A, Object>> list,
-            @NotNull final MultiValueMap<O> map, final Converter<O, E> converter, final Sanitizer<O> sanitizer)
-            throws RestConverter.ConvertException, IOException, E {
-        consumeArguments(list, new ArgumentIterateConsumer<E>() {
-            @Override
-            public void consume(@NotNull String[] names, char arrayDelimiter, boolean ignoreOnNull, int booleanEncoding,
-                    @Nullable Object object) throws RestConverter.ConvertException, IOException, E {
-                if (ignoreOnNull && object == null) return;
-                addToMap(names, object, map, arrayDelimiter, booleanEncoding, converter, sanitizer);
-            }
-        });
+    /**
+     * @return Callback passed as argument, result will be dispatched to it instead of returned
+     */
+    @Nullable
+    protected Callback<?, E> getCallback() {
+        return null;
     }
 
-    private static <T, E extends Exception> void addToMap(@NotNull final String[] names, @Nullable final Object object,
-            final MultiValueMap<T> map, final char arrayDelimiter, final int booleanEncoding,
-            final Converter<T, E> converter, final Sanitizer<T> sanitizer)
-            throws RestConverter.ConvertException, IOException, E {
-        if (object == null) {
-            for (String name : names) {
-                map.addAll(sanitizer.sanitizeKey(name), sanitizer.sanitizeValue(null));
-            }
-        } else if (object instanceof ValueMap) {
-            final ValueMap valueMap = (ValueMap) object;
-            for (String key : getValueMapKeys(names, valueMap)) {
-                final String sanitized = sanitizer.sanitizeKey(key);
-                if (valueMap.has(sanitized)) {
-                    final Object value = valueMap.get(key);
-                    if (value == null) {
-                        map.addAll(sanitized, sanitizer.sanitizeValue(null));
-                    } else {
-                        map.addAll(sanitized, sanitizer.sanitizeValue(converter.convert(value, arrayDelimiter,
-                                booleanEncoding)));
-                    }
-                }
-            }
-        } else for (String name : names) {
-            map.addAll(sanitizer.sanitizeKey(name), sanitizer.sanitizeValue(converter.convert(object, arrayDelimiter,
-                    booleanEncoding)));
-        }
+    protected static void bindHeader(@NotNull MultiValueMap<String> target, @Nullable Object value,
+            @NotNull String[] names, char arrayDelimiter, boolean ignoreOnNull) {
+        ArgumentBinder.bindHeader(target, value, names, arrayDelimiter, ignoreOnNull);
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T extends Annotation> T getAnnotation(Annotation[] annotations, Class<T> annotationClass) {
-        for (Annotation annotation : annotations) {
-            if (annotationClass.isAssignableFrom(annotation.annotationType())) {
-                return (T) annotation;
-            }
-        }
-        return null;
+    protected static void bindQuery(@NotNull MultiValueMap<String> target, @Nullable Object value,
+            @NotNull String[] names, char arrayDelimiter, boolean ignoreOnNull, int booleanEncoding) {
+        ArgumentBinder.bindQuery(target, value, names, arrayDelimiter, ignoreOnNull, booleanEncoding);
     }
 
-    private static <T extends Annotation> T getAnnotation(Method method, Class<T> annotationClass) {
-        T annotation = method.getAnnotation(annotationClass);
-        if (annotation == null) {
-            annotation = method.getDeclaringClass().getAnnotation(annotationClass);
-        }
-        return annotation;
+    protected static <E extends Exception> void bindParam(@NotNull MultiValueMap<Body> target, @Nullable Object value,
+            @NotNull String[] names, char arrayDelimiter, boolean ignoreOnNull,
+            @NotNull RestConverter.Factory<E> factory) throws RestConverter.ConvertException, IOException, E {
+        ArgumentBinder.bindParam(target, value, names, arrayDelimiter, ignoreOnNull, factory);
     }
 
-    private static String[] toString(Object value, char delimiter, int booleanEncoding) {
-        if (value instanceof Boolean) {
-            switch (booleanEncoding) {
-                case BooleanEncoding.ONE_ZERO:
-                    return new String[]{value == Boolean.TRUE ? "1" : "0"};
-                case BooleanEncoding.KEY_IF_TRUE:
-                    return value == Boolean.TRUE ? new String[]{null} : new String[0];
-                case BooleanEncoding.IGNORE_IF_FALSE:
-                    return value == Boolean.TRUE ? new String[]{"true"} : new String[0];
-                case BooleanEncoding.IGNORE_IF_TRUE:
-                    return value == Boolean.FALSE ? new String[]{"false"} : new String[0];
+    protected static void bindExtra(@NotNull Map<String, Object> target, @Nullable Object value,
+            @NotNull String[] keys) {
+        if (value instanceof ValueMap) {
+            final ValueMap valueMap = (ValueMap) value;
+            for (String key : keys.length > 0 ? keys : valueMap.keys()) {
+                if (valueMap.has(key)) {
+                    target.put(key, valueMap.get(key));
+                }
+            }
+        } else if (value != null) {
+            for (String key : keys) {
+                target.put(key, value);
             }
         }
-        return new String[]{RestFuUtils.toString(value, delimiter)};
-    }
-
-    interface Converter<T, E extends Exception> {
-        T[] convert(Object object, char arrayDelimiter, int booleanEncoding) throws RestConverter.ConvertException, IOException, E;
     }
 
-    interface ArgumentIterateConsumer<E extends Exception> {
-        void consume(@NotNull String[] names, char arrayDelimiter, boolean ignoreOnNull, int booleanEncoding,
-                @Nullable Object object) throws RestConverter.ConvertException, IOException, E;
+    /**
+     * Adds header constant referencing constant pool by {@code valueKey}
+     */
+    protected static void bindHeaderConstant(@NotNull MultiValueMap<String> target, @Nullable ValueMap valuesPool,
+            @NotNull String name, @NotNull String valueKey, char arrayDelimiter) {
+        if (valuesPool == null || !valuesPool.has(valueKey)) return;
+        ArgumentBinder.addHeader(target, name, valuesPool.get(valueKey), arrayDelimiter);
     }
 
-    interface ConstantIterateConsumer<E extends Exception> {
-        void consume(KeyValue item) throws RestConverter.ConvertException, IOException, E;
+    /**
+     * Adds query constant referencing constant pool by {@code valueKey}
+     */
+    protected static void bindQueryConstant(@NotNull MultiValueMap<String> target, @Nullable ValueMap valuesPool,
+            @NotNull String name, @NotNull String valueKey, char arrayDelimiter) {
+        if (valuesPool == null || !valuesPool.has(valueKey)) return;
+        ArgumentBinder.addQuery(target, name, valuesPool.get(valueKey), arrayDelimiter, BooleanEncoding.TRUE_FALSE);
     }
 
-    interface Sanitizer<E> {
-        String sanitizeKey(String in);
-
-        E[] sanitizeValue(E[] in);
+    /**
+     * Adds param constant referencing constant pool by {@code valueKey}
+     */
+    protected static <E extends Exception> void bindParamConstant(@NotNull MultiValueMap<Body> target,
+            @Nullable ValueMap valuesPool, @NotNull String name, @NotNull String valueKey, char arrayDelimiter,
+            @NotNull RestConverter.Factory<E> factory) throws RestConverter.ConvertException, IOException, E {
+        if (valuesPool == null || !valuesPool.has(valueKey)) return;
+        ArgumentBinder.addParam(target, name, valuesPool.get(valueKey), arrayDelimiter, factory);
     }
 
-    static class SimpleSanitizer<E> implements Sanitizer<E> {
-
-        @Override
-        public String sanitizeKey(String in) {
-            return in;
-        }
-
-        @Override
-        public E[] sanitizeValue(E[] in) {
-            return in;
+    private static void checkMethod(HttpMethod httpMethod, RawValue fileValue) {
+        final boolean hasBody = fileValue != null;
+        if (!httpMethod.allowBody() && hasBody) {
+            throw new IllegalArgumentException(httpMethod.value() + " does not allow body");
         }
     }
 
-    static class HeaderSanitizer implements Sanitizer<String> {
-        @Override
-        public String sanitizeKey(String in) {
-            return RestFuUtils.sanitizeHeader(in);
-        }
-
-        @Override
-        public String[] sanitizeValue(String[] in) {
-            if (in == null) return null;
-            final String[] out = new String[in.length];
-            for (int i = 0, j = in.length; i < j; i++) {
-                out[i] = RestFuUtils.sanitizeHeader(in[i]);
+    /**
+     * Parts of an API method shared by all calls
+     */
+    public static final class Info {
+        @NotNull
+        final HttpMethod method;
+        @Nullable
+        final BodyType bodyType;
+        @Nullable
+        final Compress compress;
+        @NotNull
+        final Type returnType;
+        /**
+         * Type response converted to, type argument of {@link Future} if method returns a future
+         */
+        @NotNull
+        final Type resultType;
+        final boolean async;
+
+        /**
+         * @throws IllegalArgumentException If compression is not supported, or future return type is
+         *                                  not parameterized
+         */
+        public Info(@NotNull HttpMethod method, @Nullable BodyType bodyType, @Nullable Compress compress,
+                @NotNull Type returnType) {
+            if (compress != null && !Compress.IDENTITY.equals(compress.value())
+                    && !CompressedBody.isSupported(compress.value())) {
+                throw new IllegalArgumentException("Unsupported compression " + compress.value());
+            }
+            this.method = method;
+            this.bodyType = bodyType;
+            this.compress = compress;
+            this.returnType = returnType;
+            final Class<?> returnClass = RestMethodTemplate.getRawType(returnType);
+            this.async = returnClass == Future.class || returnClass == RestFuture.class;
+            if (async) {
+                if (!(returnType instanceof ParameterizedType)) {
+                    throw new IllegalArgumentException("Future return type must be parameterized");
+                }
+                this.resultType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+            } else {
+                this.resultType = returnType;
             }
-            return out;
         }
-
     }
-
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mariotaku.restfu.annotation.HttpMethod;
+import org.mariotaku.restfu.annotation.param.*;
+import org.mariotaku.restfu.callback.Callback;
+import org.mariotaku.restfu.callback.RawCallback;
+import org.mariotaku.restfu.http.BodyType;
+import org.mariotaku.restfu.http.Compress;
+import org.mariotaku.restfu.http.MultiValueMap;
+import org.mariotaku.restfu.http.RawValue;
+import org.mariotaku.restfu.http.ValueMap;
+import org.mariotaku.restfu.http.mime.Body;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable, per-{@link Method} result of annotation parsing. Templates are built once and cached,
+ * each call only binds its arguments with {@link #bind(Object[])}.
+ */
+final class RestMethodTemplate {
+
+    private static final ConcurrentMap<Method, RestMethodTemplate> CACHE = new ConcurrentHashMap<>();
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    @NotNull
+    final RestMethod.Info info;
+    @NotNull
+    final PathTemplate path;
+
+    // Constants with template references resolved and literal values converted
+    @NotNull
+    final ConstantBinder[] headerConstants;
+    @NotNull
+    final ConstantBinder[] queryConstants;
+    @NotNull
+    final ConstantBinder[] paramConstants;
+
+    @NotNull
+    private final Type[] parameterTypes;
+
+    // Binders in parameter order, params are bound to queries if method doesn't allow body
+    @NotNull
+    final ArgumentBinder<String>[] headerBinders;
+    @NotNull
+    final ArgumentBinder<String>[] queryBinders;
+    @NotNull
+    final ArgumentBinder<String>[] paramQueryBinders;
+    @NotNull
+    final ArgumentBinder<Body>[] paramBinders;
+    // Indexed by parameter position, null if parameter isn't an extra
+    @NotNull
+    final Extra[] extras;
+
+    private final int rawIndex;
+    private final Raw raw;
+
+    private RestMethodTemplate(@NotNull RestMethod.Info info, @NotNull PathTemplate path,
+            ConstantBinder[] headerConstants, ConstantBinder[] queryConstants, ConstantBinder[] paramConstants,
+            @NotNull Type[] parameterTypes, ArgumentBinder<String>[] headerBinders,
+            ArgumentBinder<String>[] queryBinders, ArgumentBinder<String>[] paramQueryBinders,
+            ArgumentBinder<Body>[] paramBinders, Extra[] extras, int rawIndex, Raw raw) {
+        this.info = info;
+        this.path = path;
+        this.headerConstants = headerConstants;
+        this.queryConstants = queryConstants;
+        this.paramConstants = paramConstants;
+        this.parameterTypes = parameterTypes;
+        this.headerBinders = headerBinders;
+        this.queryBinders = queryBinders;
+        this.paramQueryBinders = paramQueryBinders;
+        this.paramBinders = paramBinders;
+        this.extras = extras;
+        this.rawIndex = rawIndex;
+        this.raw = raw;
+    }
+
+    @NotNull
+    static RestMethodTemplate get(@NotNull Method method) {
+        final RestMethodTemplate cached = CACHE.get(method);
+        if (cached != null) return cached;
+        final RestMethodTemplate parsed = parse(method);
+        final RestMethodTemplate previous = CACHE.putIfAbsent(method, parsed);
+        return previous != null ? previous : parsed;
+    }
+
+    @NotNull
+    <E extends Exception> RestMethod<E> bind(@Nullable Object[] args) {
+        final RawValue rawValue = rawIndex != -1 ? new RawValue(raw, args[rawIndex]) : null;
+        return new Bound<>(this, args != null ? args : EMPTY_ARGS, rawValue);
+    }
+
+    @NotNull
+    private static RestMethodTemplate parse(@NotNull Method method) {
+        HttpMethod httpMethod = null;
+        String pathFormat = null;
+        for (Annotation annotation : method.getAnnotations()) {
+            final Class<?> annotationType = annotation.annotationType();
+            httpMethod = annotationType.getAnnotation(HttpMethod.class);
+            if (httpMethod != null) {
+                try {
+                    pathFormat = (String) annotationType.getMethod("value").invoke(annotation);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                break;
+            }
+        }
+        if (httpMethod == null) {
+            throw new IllegalArgumentException("Must be annotated with @HttpMethod or @GET, @POST...");
+        }
+        final RestMethod.Info info = new RestMethod.Info(httpMethod, method.getAnnotation(BodyType.class),
+                method.getAnnotation(Compress.class), method.getGenericReturnType());
+        final Annotation[][] annotations = method.getParameterAnnotations();
+        final int count = annotations.length;
+        final Path[] paths = new Path[count];
+        final List<ArgumentBinder<String>> headers = new ArrayList<>();
+        final List<ArgumentBinder<String>> queries = new ArrayList<>();
+        final List<ArgumentBinder<String>> paramQueries = new ArrayList<>();
+        final List<ArgumentBinder<Body>> params = new ArrayList<>();
+        final Extra[] extras = new Extra[count];
+        int rawIndex = -1;
+        Raw raw = null;
+        for (int i = 0; i < count; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof Path) {
+                    paths[i] = (Path) annotation;
+                } else if (annotation instanceof Query) {
+                    queries.add(new ArgumentBinder.QueryBinder(i, (Query) annotation));
+                } else if (annotation instanceof Header) {
+                    headers.add(new ArgumentBinder.HeaderBinder(i, (Header) annotation));
+                } else if (annotation instanceof Param) {
+                    if (httpMethod.allowBody()) {
+                        params.add(new ArgumentBinder.ParamBinder(i, (Param) annotation));
+                    } else {
+                        paramQueries.add(new ArgumentBinder.QueryBinder(i, (Param) annotation));
+                    }
+                } else if (annotation instanceof Extra) {
+                    extras[i] = (Extra) annotation;
+                } else if (annotation instanceof Raw) {
+                    if (raw != null) throw new IllegalArgumentException();
+                    raw = (Raw) annotation;
+                    rawIndex = i;
+                }
+            }
+        }
+        if (info.async) {
+            for (Class<?> parameterType : method.getParameterTypes()) {
+                if (Callback.class.isAssignableFrom(parameterType)) {
+                    throw new IllegalArgumentException("Method returning future can't have callback");
+                }
+            }
+        }
+        final ConstantBinder[] headerConstants = ConstantBinder.headers(
+                resolveHeaders(getAnnotation(method, Headers.class)));
+        final ConstantBinder[] queryConstants = ConstantBinder.values(
+                resolveQueries(getAnnotation(method, Queries.class)));
+        final ConstantBinder[] paramConstants = ConstantBinder.values(
+                resolveParams(getAnnotation(method, Params.class)));
+        return new RestMethodTemplate(info, PathTemplate.compile(pathFormat, paths), headerConstants,
+                queryConstants, paramConstants,
+                method.getGenericParameterTypes(), toArray(headers), toArray(queries), toArray(paramQueries),
+                toArray(params), extras, rawIndex, raw);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ArgumentBinder<T>[] toArray(List<ArgumentBinder<T>> binders) {
+        return binders.toArray(new ArgumentBinder[binders.size()]);
+    }
+
+    /**
+     * Resolves converters this method will use. Request converters are looked up by argument class
+     * at runtime, so only arguments with a final declared type can be resolved here.
+     */
+    <E extends Exception> void resolveConverters(@NotNull RestConverter.Factory<E> factory)
+            throws RestConverter.ConvertException {
+        Class<?> callbackType = null;
+        for (Type type : parameterTypes) {
+            final Class<?> cls = getRawType(type);
+            if (cls != null && Callback.class.isAssignableFrom(cls)) {
+                callbackType = cls;
+                break;
+            }
+        }
+        if (callbackType == null || !RawCallback.class.isAssignableFrom(callbackType)) {
+            factory.forResponse(info.resultType);
+        }
+        for (ArgumentBinder<Body> binder : paramBinders) {
+            Class<?> cls = getRawType(parameterTypes[binder.index]);
+            if (cls != null && cls.isArray()) {
+                // Arrays with delimiter are joined into string
+                if (binder.arrayDelimiter != '\0') continue;
+                cls = cls.getComponentType();
+            }
+            resolveRequestConverter(factory, cls);
+        }
+        if (raw != null) {
+            resolveRequestConverter(factory, getRawType(parameterTypes[rawIndex]));
+        }
+    }
+
+    private static void resolveRequestConverter(RestConverter.Factory<?> factory, Class<?> cls)
+            throws RestConverter.ConvertException {
+        if (cls == null) return;
+        if (cls.isPrimitive()) {
+            cls = boxedType(cls);
+        } else if (!Modifier.isFinal(cls.getModifiers())) {
+            return;
+        }
+        factory.forRequest(cls);
+    }
+
+    @Nullable
+    static Class<?> getRawType(Type type) {
+        if (type instanceof Class) return (Class<?>) type;
+        if (type instanceof ParameterizedType) return getRawType(((ParameterizedType) type).getRawType());
+        return null;
+    }
+
+    private static Class<?> boxedType(Class<?> cls) {
+        if (cls == int.class) return Integer.class;
+        if (cls == long.class) return Long.class;
+        if (cls == boolean.class) return Boolean.class;
+        if (cls == double.class) return Double.class;
+        if (cls == float.class) return Float.class;
+        if (cls == short.class) return Short.class;
+        if (cls == byte.class) return Byte.class;
+        if (cls == char.class) return Character.class;
+        return Void.class;
+    }
+
+    @Nullable
+    private static KeyValue[] resolveHeaders(@Nullable Headers annotation) {
+        if (annotation == null) return null;
+        if (annotation.template() == void.class) return annotation.value();
+        final Headers template = annotation.template().getAnnotation(Headers.class);
+        if (template == null) {
+            throw new UnsupportedOperationException("Template class must be annotated");
+        } else if (template.template() != void.class) {
+            throw new UnsupportedOperationException("Template class can't use template reference");
+        }
+        return template.value();
+    }
+
+    @Nullable
+    private static KeyValue[] resolveQueries(@Nullable Queries annotation) {
+        if (annotation == null) return null;
+        if (annotation.template() == void.class) return annotation.value();
+        final Queries template = annotation.template().getAnnotation(Queries.class);
+        if (template == null) {
+            throw new UnsupportedOperationException("Template class must be annotated");
+        } else if (template.template() != void.class) {
+            throw new UnsupportedOperationException("Template class can't use template reference");
+        }
+        return template.value();
+    }
+
+    @Nullable
+    private static KeyValue[] resolveParams(@Nullable Params annotation) {
+        if (annotation == null) return null;
+        if (annotation.template() == void.class) return annotation.value();
+        final Params template = annotation.template().getAnnotation(Params.class);
+        if (template == null) {
+            throw new UnsupportedOperationException("Template class must be annotated");
+        } else if (template.template() != void.class) {
+            throw new UnsupportedOperationException("Template class can't use template reference");
+        }
+        return template.value();
+    }
+
+    private static <T extends Annotation> T getAnnotation(Method method, Class<T> annotationClass) {
+        T annotation = method.getAnnotation(annotationClass);
+        if (annotation == null) {
+            annotation = method.getDeclaringClass().getAnnotation(annotationClass);
+        }
+        return annotation;
+    }
+
+    /**
+     * Call bound with arguments array of {@link java.lang.reflect.Proxy}
+     */
+    private static final class Bound<E extends Exception> extends RestMethod<E> {
+
+        @NotNull
+        private final RestMethodTemplate template;
+        @NotNull
+        private final Object[] args;
+
+        Bound(@NotNull RestMethodTemplate template, @NotNull Object[] args, @Nullable RawValue rawValue) {
+            super(template.info, rawValue);
+            this.template = template;
+            this.args = args;
+        }
+
+        @NotNull
+        @Override
+        protected String expandPath() {
+            return template.path.expand(args);
+        }
+
+        @Override
+        protected void bindHeaders(@NotNull MultiValueMap<String> target, @Nullable ValueMap valuesPool)
+                throws RestConverter.ConvertException, IOException, E {
+            for (ArgumentBinder<String> binder : template.headerBinders) {
+                binder.<E>bind(args, target, null);
+            }
+            ConstantBinder.bindHeaders(template.headerConstants, valuesPool, target);
+        }
+
+        @Override
+        protected void bindQueries(@NotNull MultiValueMap<String> target, @Nullable ValueMap valuesPool)
+                throws RestConverter.ConvertException, IOException, E {
+            template.path.addQueries(target);
+            for (ArgumentBinder<String> binder : template.queryBinders) {
+                binder.<E>bind(args, target, null);
+            }
+            ConstantBinder.bindQueries(template.queryConstants, valuesPool, target);
+            if (!info.method.allowBody()) {
+                for (ArgumentBinder<String> binder : template.paramQueryBinders) {
+                    binder.<E>bind(args, target, null);
+                }
+                ConstantBinder.bindQueries(template.paramConstants, valuesPool, target);
+            }
+        }
+
+        @Override
+        protected void bindParams(@NotNull MultiValueMap<Body> target, @NotNull RestConverter.Factory<E> factory,
+                @Nullable ValueMap valuesPool) throws RestConverter.ConvertException, IOException, E {
+            for (ArgumentBinder<Body> binder : template.paramBinders) {
+                binder.bind(args, target, factory);
+            }
+            ConstantBinder.bindParams(template.paramConstants, valuesPool, target, factory);
+        }
+
+        @Override
+        protected void bindExtras(@NotNull Map<String, Object> target) {
+            final Extra[] extras = template.extras;
+            for (int i = 0, j = extras.length; i < j; i++) {
+                if (extras[i] == null) continue;
+                bindExtra(target, args[i], extras[i].value());
+            }
+        }
+
+        @Nullable
+        @Override
+        protected Callback<?, E> getCallback() {
+            for (Object arg : args) {
+                if (arg instanceof Callback) {
+                    //noinspection unchecked
+                    return (Callback<?, E>) arg;
+                }
+            }
+            return null;
+        }
+    }
+}
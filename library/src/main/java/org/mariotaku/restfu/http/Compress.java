@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.http;
+
+import org.mariotaku.restfu.http.mime.CompressedBody;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Compresses request body with {@link CompressedBody}, overrides compression set with
+ * {@link org.mariotaku.restfu.RestAPIFactory#setRequestCompression(String, long)}. Server must accept
+ * {@code Content-Encoding} of requests.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Compress {
+    /**
+     * @return {@link CompressedBody#GZIP}, {@link CompressedBody#DEFLATE} or {@link #IDENTITY} to disable
+     */
+    String value() default CompressedBody.GZIP;
+
+    /**
+     * @return Bodies shorter than this are sent as is, bodies with unknown length are always compressed
+     */
+    long threshold() default 0;
+
+    String IDENTITY = "identity";
+}
@@ -18,11 +18,8 @@ package org.mariotaku.restfu.http;
 
 
 import org.jetbrains.annotations.NotNull;
-import org.mariotaku.restfu.RestFuUtils;
 import org.mariotaku.restfu.RestRequest;
 
-import java.nio.charset.Charset;
-
 /**
  * Created by mariotaku on 15/2/6.
  */
@@ -44,6 +41,13 @@ public class Endpoint {
         return constructUrl(endpoint, restRequest.getPath(), restRequest.getQueries());
     }
 
+    /**
+     * @return URL of request without queries, e.g. base string URI of OAuth signature
+     */
+    public static String constructBaseUrl(@NotNull String endpoint, @NotNull RestRequest restRequest) {
+        return UrlBuilder.obtain().base(endpoint, restRequest.getPath()).build();
+    }
+
     public String construct(String path, MultiValueMap<String> queries) {
         return constructUrl(url, path, queries);
     }
@@ -62,20 +66,9 @@ public class Endpoint {
     }
 
     public static String constructUrl(String endpoint, String path, MultiValueMap<String> queries) {
-        if (endpoint == null) throw new NullPointerException("Endpoint is null");
-        final StringBuilder urlBuilder = new StringBuilder();
-        if (endpoint.charAt(endpoint.length() - 1) == '/') {
-            urlBuilder.append(endpoint.substring(0, endpoint.length() - 1));
-        } else {
-            urlBuilder.append(endpoint);
-        }
-        if (path != null) {
-            if (path.charAt(0) != '/') {
-                urlBuilder.append('/');
-            }
-            urlBuilder.append(path);
-        }
-        return constructUrl(urlBuilder.toString(), queries);
+        final UrlBuilder builder = UrlBuilder.obtain().base(endpoint, path);
+        builder.queries(queries);
+        return builder.build();
     }
 
     public static String constructUrl(String url, String[]... queries) {
@@ -89,11 +82,9 @@ public class Endpoint {
 
     public static String constructUrl(String url, MultiValueMap<String> queries) {
         if (queries == null || queries.isEmpty()) return url;
-        final StringBuilder urlBuilder = new StringBuilder(url);
-        urlBuilder.append('?');
-        int numAdded = RestFuUtils.append(urlBuilder, queries, Charset.forName("UTF-8"));
-        if (numAdded == 0) return url;
-        return urlBuilder.toString();
+        final UrlBuilder builder = UrlBuilder.obtain().base(url);
+        if (builder.queries(queries) == 0) return url;
+        return builder.build();
     }
 
 }
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mariotaku.restfu.http;
+
+import org.mariotaku.commons.collection.Pair;
+
+import java.util.*;
+
+/**
+ * Case-insensitive multimap for HTTP headers. Names and values are kept in parallel arrays in insertion
+ * order, and first occurrence of each name is indexed by ASCII case-folded hash, so {@link #getFirst(String)}
+ * doesn't scan through all headers. Arrays are allocated on first {@link #add(String, String)}.
+ * <br>
+ * Methods of {@link org.mariotaku.commons.collection.MultiMap} not overridden here work on a map view
+ * which writes through to the arrays, so removing or replacing headers through them keeps the index
+ * consistent.
+ */
+public class HeaderMap extends MultiValueMap<String> {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private String[] names;
+    private String[] values;
+    private int[] hashes;
+    // Next entry with same name, and last entry with same name for the first one (-1 for others)
+    private int[] nextSame;
+    private int[] lastSame;
+    // Hash index of first entries of names, chained by nextInBucket
+    private int[] buckets;
+    private int[] nextInBucket;
+    private int size;
+    private int initialCapacity;
+
+    public HeaderMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Expected number of headers
+     */
+    public HeaderMap(int capacity) {
+        this(new MapView(), capacity);
+    }
+
+    private HeaderMap(MapView view, int capacity) {
+        super(view, true);
+        if (capacity < 0) throw new IllegalArgumentException("capacity < 0: " + capacity);
+        view.headers = this;
+        initialCapacity = capacity;
+    }
+
+    @Override
+    public void add(String name, String value) {
+        if (names == null) {
+            ensureCapacity(initialCapacity);
+        } else if (size == names.length) {
+            allocate(size * 2);
+        }
+        final int index = size++;
+        names[index] = name;
+        values[index] = value;
+        hashes[index] = hash(name);
+        link(index);
+    }
+
+    @Override
+    public String getFirst(String name) {
+        final int index = indexOf(name, hash(name));
+        if (index == -1) return null;
+        return values[index];
+    }
+
+    @Override
+    public List<String> get(String name) {
+        final int first = indexOf(name, hash(name));
+        if (first == -1) return Collections.emptyList();
+        final List<String> result = new ArrayList<>(2);
+        for (int i = first; i != -1; i = nextSame[i]) {
+            result.add(values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Same lookup as {@code getMap().containsKey(name)}, but without going through map view
+     */
+    public boolean containsKey(String name) {
+        return indexOf(name, hash(name)) != -1;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return Number of headers, counting every value. Unlike {@code getMap().size()}, which counts
+     * distinct names
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getName(int index) {
+        checkIndex(index);
+        return names[index];
+    }
+
+    public String getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    @Override
+    public List<Pair<String, String>> toList() {
+        final List<Pair<String, String>> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(Pair.create(names[i], values[i]));
+        }
+        return list;
+    }
+
+    /**
+     * @return Distinct names in insertion order, with case of their first occurrence
+     */
+    public Set<String> names() {
+        final Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            if (isFirst(i)) {
+                result.add(names[i]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(names[i]).append(": ").append(values[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Number of values of {@code name}, without copying them
+     */
+    int countValues(String name) {
+        int count = 0;
+        for (int i = indexOf(name, hash(name)); i != -1; i = nextSame[i]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return {@code n}th value of {@code name}, or null if there are not that many
+     */
+    String nthValue(String name, int n) {
+        final int first = indexOf(name, hash(name));
+        if (first == -1 || n < 0) return null;
+        final int index = nthSame(first, n);
+        if (index == -1) return null;
+        return values[index];
+    }
+
+    /**
+     * @return Number of distinct names
+     */
+    int countNames() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (isFirst(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Called before headers are removed or replaced through map view
+     */
+    void beforeModify() {
+        // No-op
+    }
+
+    private List<String> deleteName(String name) {
+        beforeModify();
+        final int hash = hash(name);
+        if (indexOf(name, hash) == -1) return null;
+        final List<String> removed = new ArrayList<>(2);
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] == hash && equalsIgnoreCase(names[i], name)) {
+                removed.add(values[i]);
+                continue;
+            }
+            names[kept] = names[i];
+            values[kept] = values[i];
+            hashes[kept] = hashes[i];
+            kept++;
+        }
+        truncate(kept);
+        return removed;
+    }
+
+    private String deleteAt(int index) {
+        beforeModify();
+        checkIndex(index);
+        final String removed = values[index];
+        final int moved = size - index - 1;
+        System.arraycopy(names, index + 1, names, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        System.arraycopy(hashes, index + 1, hashes, index, moved);
+        truncate(size - 1);
+        return removed;
+    }
+
+    private String replaceAt(int index, String value) {
+        beforeModify();
+        checkIndex(index);
+        final String previous = values[index];
+        values[index] = value;
+        return previous;
+    }
+
+    private void deleteAll() {
+        beforeModify();
+        truncate(0);
+    }
+
+    /**
+     * Drops entries from {@code newSize} on, and rebuilds index of remaining ones
+     */
+    private void truncate(int newSize) {
+        if (names == null) return;
+        Arrays.fill(names, newSize, size, null);
+        Arrays.fill(values, newSize, size, null);
+        size = newSize;
+        Arrays.fill(buckets, -1);
+        for (int i = 0; i < size; i++) {
+            link(i);
+        }
+    }
+
+    /**
+     * Links entry at {@code index} to earlier entries with same name, or to hash index if it's first
+     */
+    private void link(int index) {
+        final int hash = hashes[index];
+        nextSame[index] = -1;
+        final int first = indexOf(names[index], hash);
+        if (first != -1) {
+            nextSame[lastSame[first]] = index;
+            lastSame[first] = index;
+            lastSame[index] = -1;
+            return;
+        }
+        lastSame[index] = index;
+        final int bucket = hash & (buckets.length - 1);
+        nextInBucket[index] = buckets[bucket];
+        buckets[bucket] = index;
+    }
+
+    /**
+     * @return Index of {@code n}th entry with same name as entry at {@code first}, or -1
+     */
+    private int nthSame(int first, int n) {
+        int i = first;
+        for (int k = 0; k < n && i != -1; k++) {
+            i = nextSame[i];
+        }
+        return i;
+    }
+
+    private boolean isFirst(int index) {
+        return lastSame[index] != -1;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (names != null && names.length >= capacity) return;
+        // Index size needs to be power of 2
+        allocate(Math.max(Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1), 2));
+    }
+
+    private int indexOf(String name, int hash) {
+        if (buckets == null) return -1;
+        for (int i = buckets[hash & (buckets.length - 1)]; i != -1; i = nextInBucket[i]) {
+            if (hashes[i] == hash && equalsIgnoreCase(names[i], name)) return i;
+        }
+        return -1;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index=" + index + "; size=" + size);
+        }
+    }
+
+    private void allocate(int capacity) {
+        names = names == null ? new String[capacity] : Arrays.copyOf(names, capacity);
+        values = values == null ? new String[capacity] : Arrays.copyOf(values, capacity);
+        hashes = hashes == null ? new int[capacity] : Arrays.copyOf(hashes, capacity);
+        nextSame = nextSame == null ? new int[capacity] : Arrays.copyOf(nextSame, capacity);
+        lastSame = lastSame == null ? new int[capacity] : Arrays.copyOf(lastSame, capacity);
+        nextInBucket = nextInBucket == null ? new int[capacity] : Arrays.copyOf(nextInBucket, capacity);
+        // Load factor is at most 1, entries with same name are not indexed
+        buckets = new int[capacity];
+        Arrays.fill(buckets, -1);
+        for (int i = 0; i < size; i++) {
+            if (!isFirst(i)) continue;
+            final int bucket = hashes[i] & (capacity - 1);
+            nextInBucket[i] = buckets[bucket];
+            buckets[bucket] = i;
+        }
+    }
+
+    private static int hash(String name) {
+        if (name == null) return 0;
+        int hash = 0;
+        for (int i = 0, j = name.length(); i < j; i++) {
+            char ch = name.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                ch += 'a' - 'A';
+            } else if (ch >= 0x80) {
+                // Same folding as String.equalsIgnoreCase
+                ch = Character.toLowerCase(Character.toUpperCase(ch));
+            }
+            hash = 31 * hash + ch;
+        }
+        // Spread higher bits, index only uses lower ones
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equalsIgnoreCase(String s1, String s2) {
+        //noinspection StringEquality
+        if (s1 == s2) return true;
+        return s1 != null && s1.equalsIgnoreCase(s2);
+    }
+
+    /**
+     * Backing map seen by {@link org.mariotaku.commons.collection.MultiMap}. Value lists are live views,
+     * all changes are written to arrays of {@link HeaderMap}
+     */
+    private static class MapView extends AbstractMap<String, List<String>> {
+        HeaderMap headers;
+
+        @Override
+        public List<String> get(Object key) {
+            if (key != null && !(key instanceof String)) return null;
+            final String name = (String) key;
+            if (!headers.containsKey(name)) return null;
+            return new Values(headers, name);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return (key == null || key instanceof String) && headers.containsKey((String) key);
+        }
+
+        @Override
+        public List<String> put(String key, List<String> value) {
+            final List<String> previous = headers.deleteName(key);
+            for (String item : value) {
+                headers.add(key, item);
+            }
+            return previous;
+        }
+
+        @Override
+        public List<String> remove(Object key) {
+            if (key != null && !(key instanceof String)) return null;
+            final String name = (String) key;
+            if (!headers.containsKey(name)) return null;
+            return headers.deleteName(name);
+        }
+
+        @Override
+        public void clear() {
+            headers.deleteAll();
+        }
+
+        @Override
+        public Set<Entry<String, List<String>>> entrySet() {
+            return new AbstractSet<Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Entry<String, List<String>>> iterator() {
+                    final Iterator<String> names = headers.names().iterator();
+                    return new Iterator<Entry<String, List<String>>>() {
+                        private String current;
+
+                        @Override
+                        public boolean hasNext() {
+                            return names.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, List<String>> next() {
+                            current = names.next();
+                            return new SimpleImmutableEntry<String, List<String>>(current,
+                                    new Values(headers, current));
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (current == null) throw new IllegalStateException();
+                            headers.deleteName(current);
+                            current = null;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return headers.countNames();
+                }
+            };
+        }
+    }
+
+    /**
+     * Values of one header name, in insertion order
+     */
+    private static class Values extends AbstractList<String> {
+        private final HeaderMap headers;
+        private final String name;
+
+        Values(HeaderMap headers, String name) {
+            this.headers = headers;
+            this.name = name;
+        }
+
+        @Override
+        public String get(int index) {
+            final String value = headers.nthValue(name, index);
+            if (value == null && (index < 0 || index >= size())) {
+                throw new IndexOutOfBoundsException("index=" + index + "; name=" + name);
+            }
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return headers.countValues(name);
+        }
+
+        @Override
+        public void add(int index, String value) {
+            if (index != size()) throw new UnsupportedOperationException("Values can only be appended");
+            headers.add(name, value);
+        }
+
+        @Override
+        public String set(int index, String value) {
+            return headers.replaceAt(indexOf(index), value);
+        }
+
+        @Override
+        public String remove(int index) {
+            return headers.deleteAt(indexOf(index));
+        }
+
+        private int indexOf(int index) {
+            // Only called before modification, materializes lazy headers so indices refer to arrays
+            headers.beforeModify();
+            final int first = headers.indexOf(name, hash(name));
+            final int result = index < 0 || first == -1 ? -1 : headers.nthSame(first, index);
+            if (result == -1) throw new IndexOutOfBoundsException("index=" + index + "; name=" + name);
+            return result;
+        }
+    }
+}
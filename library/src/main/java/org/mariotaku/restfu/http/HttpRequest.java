@@ -127,7 +127,7 @@ public final class HttpRequest {
             final String url = Endpoint.constructUrl(endpoint.getUrl(), requestInfo);
             MultiValueMap<String> headers = requestInfo.getHeaders();
             if (headers == null) {
-                headers = new MultiValueMap<>();
+                headers = new HeaderMap();
             }
             if (authorization != null && authorization.hasAuthorization()) {
                 headers.add("Authorization", authorization.getHeader(endpoint, requestInfo));
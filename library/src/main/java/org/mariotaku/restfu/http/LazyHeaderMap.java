@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mariotaku.restfu.http;
+
+import org.mariotaku.commons.collection.Pair;
+
+import java.util.*;
+
+/**
+ * {@link HeaderMap} reading headers held by HTTP backend without copying them. Lookups go to source headers,
+ * backends override {@link #sourceFirst(String)}, {@link #sourceValues(String)} and
+ * {@link #sourceContains(String)} if they have their own lookup by name.
+ * <br>
+ * Headers are copied into {@link HeaderMap} only when modified, either by {@link #add(String, String)} or
+ * through {@link #getMap()}, which writes through like the one of {@link HeaderMap}. Backend headers are
+ * never changed.
+ */
+public abstract class LazyHeaderMap extends HeaderMap {
+
+    private boolean materialized;
+
+    public LazyHeaderMap() {
+        super(0);
+    }
+
+    /**
+     * @return Number of headers in source, counting every value
+     */
+    protected abstract int sourceSize();
+
+    protected abstract String sourceName(int index);
+
+    protected abstract String sourceValue(int index);
+
+    /**
+     * @return First value of {@code name} in source, scans source headers by default
+     */
+    protected String sourceFirst(String name) {
+        for (int i = 0, j = sourceSize(); i < j; i++) {
+            if (equalsName(sourceName(i), name)) return sourceValue(i);
+        }
+        return null;
+    }
+
+    /**
+     * @return All values of {@code name} in source in order, scans source headers by default
+     */
+    protected List<String> sourceValues(String name) {
+        List<String> result = null;
+        for (int i = 0, j = sourceSize(); i < j; i++) {
+            if (!equalsName(sourceName(i), name)) continue;
+            if (result == null) {
+                result = new ArrayList<>(2);
+            }
+            result.add(sourceValue(i));
+        }
+        if (result == null) return Collections.emptyList();
+        return result;
+    }
+
+    protected boolean sourceContains(String name) {
+        for (int i = 0, j = sourceSize(); i < j; i++) {
+            if (equalsName(sourceName(i), name)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void add(String name, String value) {
+        materialize(1);
+        super.add(name, value);
+    }
+
+    @Override
+    void beforeModify() {
+        materialize(0);
+    }
+
+    @Override
+    public String getFirst(String name) {
+        if (materialized) return super.getFirst(name);
+        return sourceFirst(name);
+    }
+
+    @Override
+    public List<String> get(String name) {
+        if (materialized) return super.get(name);
+        return sourceValues(name);
+    }
+
+    @Override
+    public boolean containsKey(String name) {
+        if (materialized) return super.containsKey(name);
+        return sourceContains(name);
+    }
+
+    @Override
+    int countValues(String name) {
+        if (materialized) return super.countValues(name);
+        int count = 0;
+        for (int i = 0, j = sourceSize(); i < j; i++) {
+            if (equalsName(sourceName(i), name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    String nthValue(String name, int n) {
+        if (materialized) return super.nthValue(name, n);
+        if (n < 0) return null;
+        for (int i = 0, j = sourceSize(), found = 0; i < j; i++) {
+            if (equalsName(sourceName(i), name) && found++ == n) return sourceValue(i);
+        }
+        return null;
+    }
+
+    @Override
+    int countNames() {
+        if (materialized) return super.countNames();
+        return names().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (materialized) return super.isEmpty();
+        return sourceSize() == 0;
+    }
+
+    @Override
+    public int size() {
+        if (materialized) return super.size();
+        return sourceSize();
+    }
+
+    @Override
+    public String getName(int index) {
+        if (materialized) return super.getName(index);
+        checkSourceIndex(index);
+        return sourceName(index);
+    }
+
+    @Override
+    public String getValue(int index) {
+        if (materialized) return super.getValue(index);
+        checkSourceIndex(index);
+        return sourceValue(index);
+    }
+
+    @Override
+    public List<Pair<String, String>> toList() {
+        if (materialized) return super.toList();
+        final int size = sourceSize();
+        final List<Pair<String, String>> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(Pair.create(sourceName(i), sourceValue(i)));
+        }
+        return list;
+    }
+
+    @Override
+    public Set<String> names() {
+        if (materialized) return super.names();
+        final Set<String> result = new LinkedHashSet<>();
+        for (int i = 0, j = sourceSize(); i < j; i++) {
+            final String name = sourceName(i);
+            if (!containsName(result, name)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (materialized) return super.toString();
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0, j = sourceSize(); i < j; i++) {
+            sb.append(sourceName(i)).append(": ").append(sourceValue(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void materialize(int extra) {
+        if (materialized) return;
+        final int size = sourceSize();
+        ensureCapacity(size + extra);
+        for (int i = 0; i < size; i++) {
+            super.add(sourceName(i), sourceValue(i));
+        }
+        materialized = true;
+    }
+
+    private void checkSourceIndex(int index) {
+        final int size = sourceSize();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index=" + index + "; size=" + size);
+        }
+    }
+
+    private static boolean containsName(Set<String> names, String name) {
+        for (String item : names) {
+            if (equalsName(item, name)) return true;
+        }
+        return false;
+    }
+
+    private static boolean equalsName(String s1, String s2) {
+        //noinspection StringEquality
+        if (s1 == s2) return true;
+        return s1 != null && s1.equalsIgnoreCase(s2);
+    }
+}
@@ -9,7 +9,7 @@ import java.util.Map;
 /**
  * Created by mariotaku on 16/1/17.
  */
-public final class MultiValueMap<V> extends MultiMap<String, V> {
+public class MultiValueMap<V> extends MultiMap<String, V> {
 
     public MultiValueMap() {
         this(new HashMap<String, List<V>>(), false);
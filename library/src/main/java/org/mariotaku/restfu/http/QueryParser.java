@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mariotaku.restfu.http;
+
+import org.mariotaku.restfu.RestFuUtils;
+
+import java.nio.charset.Charset;
+
+/**
+ * Parses {@code application/x-www-form-urlencoded} query strings by scanning indices of the source
+ * string. Parts without escapes are taken as substrings, escaped parts are decoded into a scratch
+ * buffer, so only resulting keys and values are allocated.
+ * <br>
+ * Empty parts are skipped, and a key followed by {@code '='} without value has {@code null} value.
+ */
+public final class QueryParser {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String query;
+    private final Charset charset;
+    private final boolean utf8;
+
+    private char[] chars;
+    private byte[] bytes;
+
+    private QueryParser(String query, Charset charset) {
+        this.query = query;
+        this.charset = charset;
+        this.utf8 = UTF_8.equals(charset);
+    }
+
+    public static void parse(String query, Charset charset, RestFuUtils.KeyValueConsumer consumer) {
+        new QueryParser(query, charset).parse(null, consumer, null);
+    }
+
+    /**
+     * Only values of {@code keys} are decoded, other parts are skipped without allocation
+     *
+     * @param keys Decoded keys to look for
+     */
+    public static void parse(String query, Charset charset, String[] keys, KeyConsumer consumer) {
+        new QueryParser(query, charset).parse(keys, null, consumer);
+    }
+
+    private void parse(String[] keys, RestFuUtils.KeyValueConsumer keyValueConsumer, KeyConsumer keyConsumer) {
+        final String query = this.query;
+        final int length = query.length();
+        int start = 0;
+        while (start < length) {
+            int end = start, separator = -1;
+            for (char ch; end < length && (ch = query.charAt(end)) != '&'; end++) {
+                if (ch == '=' && separator == -1) {
+                    separator = end;
+                }
+            }
+            if (end > start) {
+                final int keyEnd = separator != -1 ? separator : end;
+                final boolean hasValue = separator != -1 && separator + 1 < end;
+                if (keys == null) {
+                    keyValueConsumer.consume(decode(start, keyEnd), hasValue ? decode(separator + 1, end) : null);
+                } else {
+                    final int index = indexOfKey(keys, start, keyEnd);
+                    if (index != -1) {
+                        keyConsumer.consume(index, hasValue ? decode(separator + 1, end) : null);
+                    }
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    private String decode(int start, int end) {
+        if (!isEscaped(start, end)) return query.substring(start, end);
+        final int length = decodeChars(start, end);
+        return new String(chars, 0, length);
+    }
+
+    private int indexOfKey(String[] keys, int start, int end) {
+        if (!isEscaped(start, end)) {
+            final int length = end - start;
+            for (int i = 0; i < keys.length; i++) {
+                final String key = keys[i];
+                if (key.length() == length && query.regionMatches(start, key, 0, length)) return i;
+            }
+            return -1;
+        }
+        final int length = decodeChars(start, end);
+        for (int i = 0; i < keys.length; i++) {
+            final String key = keys[i];
+            if (key.length() != length) continue;
+            int j = 0;
+            while (j < length && key.charAt(j) == chars[j]) {
+                j++;
+            }
+            if (j == length) return i;
+        }
+        return -1;
+    }
+
+    private boolean isEscaped(int start, int end) {
+        for (int i = start; i < end; i++) {
+            final char ch = query.charAt(i);
+            if (ch == '%' || ch == '+') return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decodes part into {@link #chars}, with the same result as {@link java.net.URLDecoder}
+     *
+     * @return Number of decoded chars
+     */
+    private int decodeChars(int start, int end) {
+        final String query = this.query;
+        // Decoded part is never longer than encoded one, except for charsets mapping a byte to a surrogate pair
+        ensureChars(end - start);
+        int count = 0;
+        for (int i = start; i < end; ) {
+            final char ch = query.charAt(i);
+            if (ch == '+') {
+                chars[count++] = ' ';
+                i++;
+            } else if (ch == '%') {
+                int byteCount = 0;
+                ensureBytes((end - i) / 3);
+                while (i < end && query.charAt(i) == '%') {
+                    if (i + 2 >= end) {
+                        throw new IllegalArgumentException("Incomplete trailing escape (%) pattern");
+                    }
+                    final int hi = Character.digit(query.charAt(i + 1), 16);
+                    final int lo = Character.digit(query.charAt(i + 2), 16);
+                    if (hi < 0 || lo < 0) {
+                        throw new IllegalArgumentException("Illegal hex characters in escape (%) pattern");
+                    }
+                    bytes[byteCount++] = (byte) ((hi << 4) | lo);
+                    i += 3;
+                }
+                final int decoded = utf8 ? decodeUtf8(byteCount, count) : -1;
+                if (decoded != -1) {
+                    count = decoded;
+                } else {
+                    final String str = new String(bytes, 0, byteCount, charset);
+                    ensureChars(count + str.length() + (end - i));
+                    str.getChars(0, str.length(), chars, count);
+                    count += str.length();
+                }
+            } else {
+                chars[count++] = ch;
+                i++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decodes well-formed UTF-8 in {@link #bytes} into {@link #chars}
+     *
+     * @return New char count, or -1 if bytes are malformed and should be decoded by {@link Charset}
+     */
+    private int decodeUtf8(int byteCount, int count) {
+        final byte[] bytes = this.bytes;
+        final char[] chars = this.chars;
+        for (int i = 0; i < byteCount; ) {
+            final int b0 = bytes[i] & 0xFF;
+            if (b0 < 0x80) {
+                chars[count++] = (char) b0;
+                i++;
+            } else if (b0 >= 0xC2 && b0 <= 0xDF) {
+                if (i + 1 >= byteCount || !isContinuation(bytes[i + 1])) return -1;
+                chars[count++] = (char) (((b0 & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+                i += 2;
+            } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+                if (i + 2 >= byteCount || !isContinuation(bytes[i + 1]) || !isContinuation(bytes[i + 2])) {
+                    return -1;
+                }
+                final int b1 = bytes[i + 1] & 0xFF;
+                // Overlong encodings and surrogates
+                if ((b0 == 0xE0 && b1 < 0xA0) || (b0 == 0xED && b1 >= 0xA0)) return -1;
+                chars[count++] = (char) (((b0 & 0x0F) << 12) | ((b1 & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+                i += 3;
+            } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+                if (i + 3 >= byteCount || !isContinuation(bytes[i + 1]) || !isContinuation(bytes[i + 2])
+                        || !isContinuation(bytes[i + 3])) {
+                    return -1;
+                }
+                final int b1 = bytes[i + 1] & 0xFF;
+                // Overlong encodings and code points above U+10FFFF
+                if ((b0 == 0xF0 && b1 < 0x90) || (b0 == 0xF4 && b1 >= 0x90)) return -1;
+                final int codePoint = ((b0 & 0x07) << 18) | ((b1 & 0x3F) << 12)
+                        | ((bytes[i + 2] & 0x3F) << 6) | (bytes[i + 3] & 0x3F);
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+                i += 4;
+            } else {
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private void ensureChars(int capacity) {
+        if (chars == null) {
+            chars = new char[Math.max(capacity, 32)];
+        } else if (chars.length < capacity) {
+            final char[] newChars = new char[Math.max(capacity, chars.length * 2)];
+            System.arraycopy(chars, 0, newChars, 0, chars.length);
+            chars = newChars;
+        }
+    }
+
+    private void ensureBytes(int capacity) {
+        if (bytes == null || bytes.length < capacity) {
+            bytes = new byte[Math.max(capacity, 32)];
+        }
+    }
+
+    public interface KeyConsumer {
+        /**
+         * @param keyIndex Index of key in keys passed to parser
+         * @param value    Decoded value, or {@code null} if absent
+         */
+        void consume(int keyIndex, String value);
+    }
+}
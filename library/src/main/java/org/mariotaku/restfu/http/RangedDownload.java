@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mariotaku.commons.collection.Pair;
+import org.mariotaku.restfu.RestFuUtils;
+import org.mariotaku.restfu.http.mime.Body;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads a URL into a file with concurrent {@code Range} requests, each segment is written to its
+ * position of preallocated file. Progress is saved to a state file next to target, so an interrupted
+ * download resumes from where segments stopped. Resuming requires an {@code ETag} or {@code Last-Modified}
+ * validator, which is saved with the state and sent as {@code If-Range}, so segments of a changed file are
+ * never spliced into old ones. Falls back to a single request if server doesn't report length or range
+ * support.
+ */
+public final class RangedDownload {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Total length, validator (modified UTF-8, empty if none) and segment count, followed by start, end and
+    // position of each segment
+    private static final int STATE_SEGMENT_SIZE = 24;
+
+    private final RestHttpClient client;
+    private final String url;
+    private final File target;
+    private MultiValueMap<String> headers;
+    private int connections = 4;
+    private long minSegmentSize = 1024 * 1024;
+    private Executor executor;
+    private ProgressListener progressListener;
+
+    public RangedDownload(@NotNull RestHttpClient client, @NotNull String url, @NotNull File target) {
+        this.client = client;
+        this.url = url;
+        this.target = target;
+    }
+
+    /**
+     * Headers sent with every request, e.g. {@code Authorization}
+     */
+    public void setHeaders(@Nullable MultiValueMap<String> headers) {
+        this.headers = headers;
+    }
+
+    /**
+     * Max number of concurrent range requests, defaults to 4
+     */
+    public void setConnections(int connections) {
+        if (connections < 1) throw new IllegalArgumentException("connections must be at least 1");
+        this.connections = connections;
+    }
+
+    /**
+     * Files smaller than {@code connections * minSegmentSize} are split into fewer segments,
+     * defaults to 1MB
+     */
+    public void setMinSegmentSize(long minSegmentSize) {
+        if (minSegmentSize < 1) throw new IllegalArgumentException("minSegmentSize must be positive");
+        this.minSegmentSize = minSegmentSize;
+    }
+
+    /**
+     * Executor running segment requests, a pool of {@link #setConnections(int)} threads is created
+     * for each download if not set
+     */
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+    public void setProgressListener(@Nullable ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    @NotNull
+    public File getStateFile() {
+        return new File(target.getPath() + ".download");
+    }
+
+    /**
+     * Blocks until download finishes. State file is kept if download fails, and is used by next call
+     * to resume.
+     *
+     * @return Length of downloaded file
+     */
+    public long download() throws IOException, InterruptedException {
+        final Remote remote = probe();
+        if (remote == null) return downloadWhole();
+        final long length = remote.length;
+        final File stateFile = getStateFile();
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw");
+             RandomAccessFile state = new RandomAccessFile(stateFile, "rw")) {
+            Segment[] segments = readState(state, remote);
+            if (segments == null || file.length() != length) {
+                // Without validator we can't tell whether saved segments are of same file, start over
+                segments = split(length);
+                file.setLength(length);
+                writeState(state, remote, segments);
+            }
+            downloadSegments(file.getChannel(), state.getChannel(), segments, remote, state.getFilePointer());
+        }
+        if (!stateFile.delete()) throw new IOException("Unable to delete " + stateFile);
+        return length;
+    }
+
+    /**
+     * @return Length and validator of remote file, or null if range requests not supported
+     */
+    @Nullable
+    private Remote probe() throws IOException {
+        final HttpCall call = client.newCall(new HttpRequest("HEAD", url, newHeaders(), null, null));
+        HttpResponse response = null;
+        try {
+            response = call.execute();
+            if (!response.isSuccessful()) return null;
+            if (!"bytes".equalsIgnoreCase(response.getHeader("Accept-Ranges"))) return null;
+            final String contentLength = response.getHeader("Content-Length");
+            if (contentLength == null) return null;
+            final long length;
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (length < 0) return null;
+            // If-Range only accepts strong entity tags
+            String validator = response.getHeader("ETag");
+            if (validator == null || validator.startsWith("W/")) {
+                validator = response.getHeader("Last-Modified");
+            }
+            return new Remote(length, validator);
+        } finally {
+            RestFuUtils.closeSilently(response);
+            RestFuUtils.closeSilently(call);
+        }
+    }
+
+    private long downloadWhole() throws IOException {
+        final HttpCall call = client.newCall(new HttpRequest("GET", url, newHeaders(), null, null));
+        HttpResponse response = null;
+        try {
+            response = call.execute();
+            if (!response.isSuccessful()) throw new IOException("HTTP " + response.getStatus());
+            final Body body = response.getBody();
+            try (OutputStream os = new FileOutputStream(target)) {
+                final long length = body.writeTo(os);
+                if (progressListener != null) {
+                    progressListener.onProgress(length, length);
+                }
+                return length;
+            }
+        } finally {
+            RestFuUtils.closeSilently(response);
+            RestFuUtils.closeSilently(call);
+        }
+    }
+
+    private void downloadSegments(FileChannel file, FileChannel state, Segment[] segments, Remote remote,
+                                  long segmentsOffset) throws IOException, InterruptedException {
+        final long length = remote.length;
+        long downloaded = 0;
+        for (Segment segment : segments) {
+            downloaded += segment.position - segment.start;
+        }
+        final AtomicLong progress = new AtomicLong(downloaded);
+        final List<SegmentTask> tasks = new ArrayList<>(segments.length);
+        for (Segment segment : segments) {
+            if (segment.position <= segment.end) {
+                tasks.add(new SegmentTask(segment, file, state, segmentsOffset, progress, remote));
+            }
+        }
+        final ExecutorService ownExecutor = executor == null ? newExecutor(connections) : null;
+        final CompletionService<Void> completion = new ExecutorCompletionService<>(
+                ownExecutor != null ? ownExecutor : executor);
+        final List<Future<Void>> submitted = new ArrayList<>(tasks.size());
+        try {
+            for (SegmentTask task : tasks) {
+                submitted.add(completion.submit(task));
+            }
+            for (int i = 0, j = tasks.size(); i < j; i++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException) throw (IOException) cause;
+                    if (cause instanceof Error) throw (Error) cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            for (SegmentTask task : tasks) {
+                task.cancel();
+            }
+            for (Future<Void> future : submitted) {
+                future.cancel(true);
+            }
+            if (ownExecutor != null) {
+                ownExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private Segment[] split(long length) {
+        final long maxCount = Math.max(1, (length + minSegmentSize - 1) / minSegmentSize);
+        final int count = (int) Math.min(connections, maxCount);
+        final Segment[] segments = new Segment[count];
+        final long segmentSize = length / count;
+        for (int i = 0; i < count; i++) {
+            final long start = i * segmentSize;
+            final long end = i == count - 1 ? length - 1 : start + segmentSize - 1;
+            segments[i] = new Segment(i, start, end, start);
+        }
+        return segments;
+    }
+
+    /**
+     * @return Saved segments, or null if there is no usable state. File pointer is at first segment after
+     * reading
+     */
+    @Nullable
+    private static Segment[] readState(RandomAccessFile state, Remote remote) throws IOException {
+        if (remote.validator == null) return null;
+        final long length = remote.length;
+        final String validator;
+        final int count;
+        try {
+            state.seek(0);
+            if (state.readLong() != length) return null;
+            validator = state.readUTF();
+            count = state.readInt();
+        } catch (EOFException e) {
+            return null;
+        } catch (UTFDataFormatException e) {
+            return null;
+        }
+        if (!remote.validator.equals(validator)) return null;
+        final long segmentsOffset = state.getFilePointer();
+        if (count < 1 || state.length() != segmentsOffset + (long) count * STATE_SEGMENT_SIZE) return null;
+        final Segment[] segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            final long start = state.readLong(), end = state.readLong(), position = state.readLong();
+            if (start > end || position < start || position > end + 1 || end >= length) return null;
+            segments[i] = new Segment(i, start, end, position);
+        }
+        state.seek(segmentsOffset);
+        return segments;
+    }
+
+    /**
+     * File pointer is at first segment after writing
+     */
+    private static void writeState(RandomAccessFile state, Remote remote, Segment[] segments) throws IOException {
+        state.setLength(0);
+        state.writeLong(remote.length);
+        state.writeUTF(remote.validator != null ? remote.validator : "");
+        state.writeInt(segments.length);
+        final long segmentsOffset = state.getFilePointer();
+        for (Segment segment : segments) {
+            state.writeLong(segment.start);
+            state.writeLong(segment.end);
+            state.writeLong(segment.position);
+        }
+        state.seek(segmentsOffset);
+    }
+
+    private MultiValueMap<String> newHeaders() {
+        final MultiValueMap<String> result = new HeaderMap();
+        if (headers != null) {
+            for (Pair<String, String> header : headers.toList()) {
+                if ("Accept-Encoding".equalsIgnoreCase(header.first)) continue;
+                result.add(header.first, header.second);
+            }
+        }
+        // Ranges and Content-Length must refer to file bytes, not to compressed representation
+        result.add("Accept-Encoding", "identity");
+        return result;
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                final Thread thread = new Thread(r, "RestFu download #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called after each buffer written, may be called from multiple threads
+         */
+        void onProgress(long downloaded, long total);
+    }
+
+    private static class Remote {
+        final long length;
+        // ETag or Last-Modified, null if server sent neither
+        final String validator;
+
+        Remote(long length, String validator) {
+            this.length = length;
+            this.validator = validator;
+        }
+    }
+
+    private static class Segment {
+        final int index;
+        final long start;
+        // Inclusive
+        final long end;
+        // Next byte to write
+        long position;
+
+        Segment(int index, long start, long end, long position) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.position = position;
+        }
+    }
+
+    private class SegmentTask implements Callable<Void> {
+        private final Segment segment;
+        private final FileChannel file;
+        private final FileChannel state;
+        private final long segmentsOffset;
+        private final AtomicLong progress;
+        private final Remote remote;
+        private volatile HttpCall call;
+        private volatile boolean canceled;
+
+        SegmentTask(Segment segment, FileChannel file, FileChannel state, long segmentsOffset, AtomicLong progress,
+                    Remote remote) {
+            this.segment = segment;
+            this.file = file;
+            this.state = state;
+            this.segmentsOffset = segmentsOffset;
+            this.progress = progress;
+            this.remote = remote;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            final MultiValueMap<String> requestHeaders = newHeaders();
+            requestHeaders.add("Range", "bytes=" + segment.position + "-" + segment.end);
+            if (remote.validator != null) {
+                // Server sends whole changed file with 200 instead of mismatched range
+                requestHeaders.add("If-Range", remote.validator);
+            }
+            final HttpCall call = client.newCall(new HttpRequest("GET", url, requestHeaders, null, null));
+            this.call = call;
+            HttpResponse response = null;
+            try {
+                if (canceled) throw new InterruptedIOException();
+                response = call.execute();
+                if (response.getStatus() != 206) {
+                    throw new IOException("Expected HTTP 206 for range request, got " + response.getStatus());
+                }
+                checkContentRange(response.getHeader("Content-Range"));
+                final InputStream is = response.getBody().stream();
+                final byte[] bytes = new byte[BUFFER_SIZE];
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                final ByteBuffer positionBuffer = ByteBuffer.allocate(8);
+                final long positionOffset = segmentsOffset + (long) segment.index * STATE_SEGMENT_SIZE + 16;
+                while (segment.position <= segment.end) {
+                    if (canceled) throw new InterruptedIOException();
+                    final int read = is.read(bytes, 0, (int) Math.min(bytes.length,
+                            segment.end - segment.position + 1));
+                    if (read == -1) {
+                        throw new EOFException("Segment ended at " + segment.position + ", expected " + segment.end);
+                    }
+                    buffer.clear();
+                    buffer.limit(read);
+                    while (buffer.hasRemaining()) {
+                        file.write(buffer, segment.position + buffer.position());
+                    }
+                    segment.position += read;
+                    positionBuffer.clear();
+                    positionBuffer.putLong(segment.position);
+                    positionBuffer.flip();
+                    while (positionBuffer.hasRemaining()) {
+                        state.write(positionBuffer, positionOffset + positionBuffer.position());
+                    }
+                    final long downloaded = progress.addAndGet(read);
+                    if (progressListener != null) {
+                        progressListener.onProgress(downloaded, remote.length);
+                    }
+                }
+                return null;
+            } finally {
+                RestFuUtils.closeSilently(response);
+                RestFuUtils.closeSilently(call);
+            }
+        }
+
+        /**
+         * Response must be exactly requested range, e.g. {@code bytes 0-499/1234}
+         */
+        private void checkContentRange(String contentRange) throws IOException {
+            final String expected = "bytes " + segment.position + "-" + segment.end + "/";
+            if (contentRange != null && contentRange.startsWith(expected)) {
+                final String total = contentRange.substring(expected.length()).trim();
+                if ("*".equals(total) || String.valueOf(remote.length).equals(total)) return;
+            }
+            throw new IOException("Unexpected Content-Range " + contentRange + ", requested bytes="
+                    + segment.position + "-" + segment.end + " of " + remote.length);
+        }
+
+        void cancel() {
+            canceled = true;
+            final HttpCall call = this.call;
+            if (call != null) {
+                call.cancel();
+            }
+        }
+    }
+}
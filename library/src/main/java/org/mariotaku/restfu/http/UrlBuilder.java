@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mariotaku.restfu.http;
+
+import org.mariotaku.restfu.http.mime.UrlSerialization;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds request URL from endpoint, path and queries in one pass. Buffer is kept between builds, use
+ * {@link #obtain()} to get the instance of current thread. Package private, since a nested build on
+ * the same thread would reset the buffer of outer one
+ */
+final class UrlBuilder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Don't keep buffers of unusually long URLs around
+    private static final int MAX_KEPT_CAPACITY = 8192;
+
+    private static final ThreadLocal<UrlBuilder> LOCAL = new ThreadLocal<UrlBuilder>() {
+        @Override
+        protected UrlBuilder initialValue() {
+            return new UrlBuilder();
+        }
+    };
+
+    private StringBuilder sb = new StringBuilder(256);
+
+    /**
+     * @return Reset builder of current thread
+     */
+    static UrlBuilder obtain() {
+        return LOCAL.get().reset();
+    }
+
+    UrlBuilder reset() {
+        if (sb.capacity() > MAX_KEPT_CAPACITY) {
+            sb = new StringBuilder(256);
+        } else {
+            sb.setLength(0);
+        }
+        return this;
+    }
+
+    /**
+     * Appends endpoint without trailing slash, and path with leading slash
+     */
+    UrlBuilder base(String endpoint, String path) {
+        if (endpoint == null) throw new NullPointerException("Endpoint is null");
+        int endpointLength = endpoint.length();
+        if (endpoint.charAt(endpointLength - 1) == '/') {
+            endpointLength--;
+        }
+        sb.append(endpoint, 0, endpointLength);
+        if (path != null) {
+            if (path.charAt(0) != '/') {
+                sb.append('/');
+            }
+            sb.append(path);
+        }
+        return this;
+    }
+
+    /**
+     * Appends URL which already has endpoint and path
+     */
+    UrlBuilder base(String url) {
+        sb.append(url);
+        return this;
+    }
+
+    /**
+     * Appends serialized queries, nothing is appended if there is no query
+     *
+     * @return Number of queries appended
+     */
+    int queries(MultiValueMap<String> queries) {
+        if (queries == null || queries.isEmpty()) return 0;
+        final Map<String, List<String>> map = queries.getMap();
+        int size = 0;
+        // Unescaped length plus separators, enough for most queries
+        int estimated = sb.length();
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            final List<String> values = entry.getValue();
+            final int nameLength = entry.getKey().length();
+            for (int i = 0, j = values.size(); i < j; i++) {
+                final String value = values.get(i);
+                estimated += nameLength + 2;
+                if (value != null) {
+                    estimated += value.length();
+                }
+            }
+            size += values.size();
+        }
+        if (size == 0) return 0;
+        sb.ensureCapacity(estimated);
+        char separator = '?';
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            final String name = entry.getKey();
+            final List<String> values = entry.getValue();
+            for (int i = 0, j = values.size(); i < j; i++) {
+                final String value = values.get(i);
+                sb.append(separator);
+                separator = '&';
+                UrlSerialization.QUERY.serialize(name, UTF_8, sb);
+                if (value != null) {
+                    sb.append('=');
+                    UrlSerialization.QUERY.serialize(value, UTF_8, sb);
+                }
+            }
+        }
+        return size;
+    }
+
+    String build() {
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return build();
+    }
+}
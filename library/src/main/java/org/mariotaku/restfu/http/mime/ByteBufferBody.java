@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.http.mime;
+
+import org.jetbrains.annotations.NotNull;
+import org.mariotaku.restfu.RestFuUtils;
+import org.mariotaku.restfu.http.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Body of remaining bytes of a {@link ByteBuffer}, heap or direct. Position and limit of given buffer
+ * are not changed.
+ */
+public class ByteBufferBody implements ChannelBody {
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final ByteBuffer buffer;
+    private final ContentType contentType;
+    private InputStream stream;
+
+    public ByteBufferBody(ByteBuffer buffer, ContentType contentType) {
+        this.buffer = buffer.duplicate();
+        this.contentType = contentType;
+    }
+
+    public ByteBufferBody(ByteBuffer buffer) {
+        this(buffer, null);
+    }
+
+    @Override
+    public ContentType contentType() {
+        if (contentType == null) {
+            return ContentType.OCTET_STREAM;
+        }
+        return contentType;
+    }
+
+    @Override
+    public String contentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long length() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public long writeTo(OutputStream os) throws IOException {
+        final int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            os.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            return length;
+        }
+        final ByteBuffer source = buffer.duplicate();
+        final byte[] chunk = new byte[Math.min(COPY_BUFFER_SIZE, length)];
+        while (source.hasRemaining()) {
+            final int count = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, count);
+            os.write(chunk, 0, count);
+        }
+        return length;
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        final ByteBuffer source = buffer.duplicate();
+        final int length = source.remaining();
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+        return length;
+    }
+
+    @Override
+    public InputStream stream() throws IOException {
+        if (stream != null) return stream;
+        return stream = new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    @Override
+    public void close() throws IOException {
+        RestFuUtils.closeSilently(stream);
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining()) return -1;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            RestFuUtils.checkOffsetAndCount(b.length, off, len);
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            final int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) return 0;
+            final int count = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.remaining();
+        }
+    }
+}
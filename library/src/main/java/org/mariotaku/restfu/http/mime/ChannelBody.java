@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.http.mime;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Body can be written to a {@link WritableByteChannel} directly. Backends able to expose a channel
+ * should prefer this over {@link #writeTo(java.io.OutputStream)}, so file contents can be transferred
+ * without copying into heap buffers.
+ */
+public interface ChannelBody extends Body {
+
+    long writeTo(final WritableByteChannel channel) throws IOException;
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.http.mime;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mariotaku.restfu.http.ContentType;
+
+import java.io.File;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads a file as range backed {@link FileBody} chunks, for APIs accepting INIT/APPEND/FINALIZE style
+ * uploads. Chunks are appended concurrently, failed chunks are retried.
+ * <pre>
+ * ChunkedUpload upload = new ChunkedUpload(file, 4 * 1024 * 1024);
+ * upload.setConcurrency(4);
+ * Media media = upload.upload(new ChunkedUpload.Handler&lt;String, Media, ApiException&gt;() {
+ *     public String init(long length, int chunkCount) throws ApiException {
+ *         return api.initUpload(length).getMediaId();
+ *     }
+ *
+ *     public void append(String mediaId, int index, FileBody chunk) throws ApiException {
+ *         api.appendUpload(mediaId, index, chunk);
+ *     }
+ *
+ *     public Media complete(String mediaId) throws ApiException {
+ *         return api.finalizeUpload(mediaId);
+ *     }
+ * }, ApiException.class);
+ * </pre>
+ */
+public final class ChunkedUpload {
+
+    private final File file;
+    private final long chunkSize;
+    private ContentType contentType;
+    private int concurrency = 1;
+    private int maxRetries = 0;
+    private Executor executor;
+    private ProgressListener progressListener;
+
+    public ChunkedUpload(@NotNull File file, long chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+        this.file = file;
+        this.chunkSize = chunkSize;
+    }
+
+    public void setContentType(@Nullable ContentType contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Max number of chunks being appended at the same time, defaults to 1
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency must be at least 1");
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Times a failed chunk will be appended again before upload fails, defaults to 0
+     */
+    public void setMaxRetries(int maxRetries) {
+        if (maxRetries < 0) throw new IllegalArgumentException("maxRetries must not be negative");
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Executor running appends, a pool of {@link #setConcurrency(int)} threads is created for each
+     * upload if not set
+     */
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+    public void setProgressListener(@Nullable ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public int getChunkCount() {
+        final long length = file.length();
+        if (length == 0) return 1;
+        return (int) ((length + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Chunk of file at given index, reads file directly without copying
+     */
+    @NotNull
+    public FileBody chunk(int index) {
+        final long length = file.length();
+        final long offset = index * chunkSize;
+        if (index < 0 || offset > length || (offset == length && length != 0)) {
+            throw new IndexOutOfBoundsException("Chunk " + index + " out of " + getChunkCount());
+        }
+        return new FileBody(file, offset, Math.min(chunkSize, length - offset), contentType);
+    }
+
+    /**
+     * Calls {@link Handler#init(long, int)}, appends all chunks, then calls {@link Handler#complete(Object)}.
+     * Blocks until upload finishes. Remaining chunks are abandoned once a chunk fails after all retries.
+     *
+     * @param exceptionType Type of exceptions thrown by handler, other checked exceptions are wrapped
+     *                      in {@link UndeclaredThrowableException}
+     */
+    public <S, R, E extends Exception> R upload(@NotNull final Handler<S, R, E> handler,
+                                                @NotNull Class<E> exceptionType)
+            throws E, InterruptedException {
+        final long totalLength = file.length();
+        final int chunkCount = getChunkCount();
+        final S session = handler.init(totalLength, chunkCount);
+        final ExecutorService ownExecutor = executor == null ? newExecutor(concurrency) : null;
+        final CompletionService<Void> completion = new ExecutorCompletionService<>(
+                ownExecutor != null ? ownExecutor : executor);
+        final AtomicLong uploaded = new AtomicLong();
+        final List<Future<Void>> submitted = new ArrayList<>(chunkCount);
+        try {
+            int next = 0, completed = 0;
+            for (; next < Math.min(concurrency, chunkCount); next++) {
+                submitted.add(completion.submit(new AppendTask<>(handler, session, next, uploaded, totalLength)));
+            }
+            while (completed < chunkCount) {
+                final Future<Void> future = completion.take();
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof Error) throw (Error) cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    if (cause instanceof InterruptedException) throw (InterruptedException) cause;
+                    if (exceptionType.isInstance(cause)) throw exceptionType.cast(cause);
+                    throw new UndeclaredThrowableException(cause);
+                }
+                completed++;
+                if (next < chunkCount) {
+                    submitted.add(completion.submit(new AppendTask<>(handler, session, next++, uploaded,
+                            totalLength)));
+                }
+            }
+        } finally {
+            for (Future<Void> future : submitted) {
+                future.cancel(true);
+            }
+            if (ownExecutor != null) {
+                ownExecutor.shutdownNow();
+            }
+        }
+        return handler.complete(session);
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                final Thread thread = new Thread(r, "RestFu upload #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Calls to API methods of a chunked upload. {@link #append(Object, int, FileBody)} is called from
+     * multiple threads when concurrency is greater than 1.
+     *
+     * @param <S> Upload session, e.g. media ID returned by server
+     * @param <R> Result of upload
+     */
+    public interface Handler<S, R, E extends Exception> {
+        S init(long length, int chunkCount) throws E;
+
+        void append(S session, int index, FileBody chunk) throws E;
+
+        R complete(S session) throws E;
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called after each chunk uploaded, may be called from multiple threads
+         */
+        void onProgress(long uploaded, long total);
+    }
+
+    private class AppendTask<S, R, E extends Exception> implements Callable<Void> {
+        private final Handler<S, R, E> handler;
+        private final S session;
+        private final int index;
+        private final AtomicLong uploaded;
+        private final long total;
+
+        AppendTask(Handler<S, R, E> handler, S session, int index, AtomicLong uploaded, long total) {
+            this.handler = handler;
+            this.session = session;
+            this.index = index;
+            this.uploaded = uploaded;
+            this.total = total;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            for (int attempt = 0; ; attempt++) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                // New body for every attempt, consumed stream can't be sent again
+                final FileBody chunk = chunk(index);
+                try {
+                    handler.append(session, index, chunk);
+                } catch (Exception e) {
+                    if (attempt >= maxRetries) throw e;
+                    continue;
+                } finally {
+                    chunk.close();
+                }
+                final long length = chunk.length();
+                final long current = uploaded.addAndGet(length);
+                if (progressListener != null) {
+                    progressListener.onProgress(current, total);
+                }
+                return null;
+            }
+        }
+    }
+}
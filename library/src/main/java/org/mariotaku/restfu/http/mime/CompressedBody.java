@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.http.mime;
+
+import org.jetbrains.annotations.NotNull;
+import org.mariotaku.restfu.RestFuUtils;
+import org.mariotaku.restfu.http.ContentType;
+
+import java.io.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compresses another body with gzip or deflate while it's written, length is unknown so chunked
+ * transfer will be used.
+ */
+public final class CompressedBody implements Body {
+
+    public static final String GZIP = "gzip", DEFLATE = "deflate";
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final byte[] GZIP_HEADER = {(byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED,
+            0, 0, 0, 0, 0, 0, 0};
+
+    private final Body body;
+    private final String encoding;
+    private final int level;
+    private InputStream stream;
+
+    public CompressedBody(@NotNull Body body, @NotNull String encoding, int level) {
+        if (!isSupported(encoding)) throw new IllegalArgumentException("Unsupported encoding " + encoding);
+        this.body = body;
+        this.encoding = encoding;
+        this.level = level;
+    }
+
+    public CompressedBody(@NotNull Body body, @NotNull String encoding) {
+        this(body, encoding, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public static boolean isSupported(String encoding) {
+        return GZIP.equals(encoding) || DEFLATE.equals(encoding);
+    }
+
+    @Override
+    public ContentType contentType() {
+        return body.contentType();
+    }
+
+    @Override
+    public String contentEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    @Override
+    public long writeTo(OutputStream os) throws IOException {
+        final CountingOutputStream counting = new CountingOutputStream(os);
+        final Deflater deflater = new Deflater(level, GZIP.equals(encoding));
+        try {
+            final boolean gzip = GZIP.equals(encoding);
+            if (gzip) {
+                counting.write(GZIP_HEADER);
+            }
+            final DeflaterOutputStream deflating = new DeflaterOutputStream(counting, deflater);
+            final CheckedOutputStream checked = new CheckedOutputStream(deflating, new CRC32());
+            body.writeTo(checked);
+            deflating.finish();
+            if (gzip) {
+                counting.write(gzipTrailer(checked.getChecksum().getValue(), deflater.getBytesRead()));
+            }
+            return counting.count;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Compresses while being read, nothing is buffered beyond deflater's window
+     */
+    @Override
+    public InputStream stream() throws IOException {
+        if (stream != null) return stream;
+        return stream = new CompressingInputStream(body.stream());
+    }
+
+    @Override
+    public void close() throws IOException {
+        RestFuUtils.closeSilently(stream);
+        body.close();
+    }
+
+    private static byte[] gzipTrailer(long crc, long size) {
+        final byte[] trailer = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (crc >> (i * 8));
+            trailer[i + 4] = (byte) (size >> (i * 8));
+        }
+        return trailer;
+    }
+
+    private class CompressingInputStream extends InputStream {
+        private final Deflater deflater;
+        private final CheckedInputStream source;
+        private final DeflaterInputStream deflating;
+        private byte[] pending;
+        private int pendingOffset;
+        private boolean deflated;
+
+        CompressingInputStream(InputStream in) {
+            final boolean gzip = GZIP.equals(encoding);
+            deflater = new Deflater(level, gzip);
+            source = new CheckedInputStream(in, new CRC32());
+            deflating = new DeflaterInputStream(source, deflater);
+            if (gzip) {
+                pending = GZIP_HEADER;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            final int read = read(b, 0, 1);
+            if (read == -1) return -1;
+            return b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            RestFuUtils.checkOffsetAndCount(b.length, off, len);
+            if (len == 0) return 0;
+            while (true) {
+                if (pending != null) {
+                    final int count = Math.min(len, pending.length - pendingOffset);
+                    System.arraycopy(pending, pendingOffset, b, off, count);
+                    pendingOffset += count;
+                    if (pendingOffset == pending.length) {
+                        pending = null;
+                        pendingOffset = 0;
+                    }
+                    return count;
+                }
+                if (deflated) return -1;
+                final int read = deflating.read(b, off, len);
+                if (read != -1) return read;
+                deflated = true;
+                if (GZIP.equals(encoding)) {
+                    pending = gzipTrailer(source.getChecksum().getValue(), deflater.getBytesRead());
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            source.close();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -20,23 +20,41 @@ import org.mariotaku.commons.io.StreamUtils;
 import org.mariotaku.restfu.http.ContentType;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Created by mariotaku on 15/5/6.
  */
-public class FileBody implements Body {
+public class FileBody implements ChannelBody {
 
     private long length = -1;
+    private long offset;
     private File file;
     private ContentType contentType;
     private String fileName;
     private InputStream stream;
+    private FileInputStream fileStream;
 
     public FileBody(File file, ContentType contentType) {
         this.file = file;
         this.contentType = contentType;
     }
 
+    /**
+     * Body of {@code length} bytes of file starting from {@code offset}, file contents are not copied
+     */
+    public FileBody(File file, long offset, long length, ContentType contentType) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range offset=" + offset + ", length=" + length);
+        }
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.contentType = contentType;
+    }
+
     public FileBody(InputStream stream, String fileName, long length, ContentType contentType) {
         this.stream = stream;
         this.fileName = fileName;
@@ -57,15 +75,40 @@ public class FileBody implements Body {
 
     @Override
     public long writeTo(OutputStream os) throws IOException {
-        final LengthLimitCopyListener listener = new LengthLimitCopyListener(length);
+        final LengthLimitCopyListener listener = new LengthLimitCopyListener(length());
         return StreamUtils.copy(stream(), os, listener, listener);
     }
 
+    /**
+     * Uses {@link FileChannel#transferTo(long, long, WritableByteChannel)} for file backed body
+     */
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        if (file == null) return writeTo(Channels.newOutputStream(channel));
+        stream();
+        final FileChannel fileChannel = fileStream.getChannel();
+        final long position = fileChannel.position();
+        final long count = offset + length() - position;
+        long written = 0;
+        while (written < count) {
+            final long transferred = fileChannel.transferTo(position + written, count - written, channel);
+            // File truncated
+            if (transferred <= 0) break;
+            written += transferred;
+        }
+        fileChannel.position(position + written);
+        return written;
+    }
 
     @Override
     public InputStream stream() throws IOException {
         if (stream != null) return stream;
-        return stream = new FileInputStream(file);
+        fileStream = new FileInputStream(file);
+        if (offset == 0 && length == -1) return stream = fileStream;
+        if (offset > 0) {
+            fileStream.getChannel().position(offset);
+        }
+        return stream = new RangeInputStream(fileStream, length());
     }
 
     @Override
@@ -92,4 +135,59 @@ public class FileBody implements Body {
         if (fileName != null) return fileName;
         return fileName = file.getName();
     }
+
+    public File file() {
+        return file;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            final int read = in.read();
+            if (read != -1) {
+                remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (remaining <= 0) return -1;
+            final int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 }
@@ -18,26 +18,31 @@ package org.mariotaku.restfu.http.mime;
 
 
 import org.mariotaku.commons.collection.Pair;
-import org.mariotaku.restfu.RestFuUtils;
 import org.mariotaku.restfu.http.ContentType;
 import org.mariotaku.restfu.http.MultiValueMap;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.List;
 
 /**
  * Created by mariotaku on 15/2/6.
  */
 public class FormBody implements Body {
 
-    private final MultiValueMap<String> forms;
-    private final Charset charset;
+    private static final int BUFFER_SIZE = 8192;
 
-    private byte[] bytes;
+    // Values are either String or StringBody
+    private final MultiValueMap<?> forms;
+    private final Charset charset;
 
     public FormBody(MultiValueMap<String> forms) {
+        this(forms, Charset.forName("UTF-8"));
+    }
+
+    private FormBody(MultiValueMap<?> forms, Charset charset) {
         this.forms = forms;
-        this.charset = Charset.forName("UTF-8");
+        this.charset = charset;
     }
 
     @Override
@@ -50,34 +55,22 @@ public class FormBody implements Body {
         return null;
     }
 
-    private void toRawBytes() {
-        if (bytes != null) return;
-        final StringBuilder sb = new StringBuilder();
-        RestFuUtils.append(sb, forms, charset);
-        try {
-            bytes = sb.toString().getBytes(charset.name());
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     @Override
-    public long length() {
-        toRawBytes();
-        return bytes.length;
+    public long length() throws IOException {
+        // Not cached, forms may change after body created. Counting doesn't allocate anyway
+        return encode(null);
     }
 
     @Override
     public long writeTo(OutputStream os) throws IOException {
-        toRawBytes();
-        os.write(bytes);
-        return bytes.length;
+        return encode(os);
     }
 
     @Override
-    public InputStream stream() {
-        toRawBytes();
-        return new ByteArrayInputStream(bytes);
+    public InputStream stream() throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream((int) length());
+        encode(os);
+        return new ByteArrayInputStream(os.toByteArray());
     }
 
     @Override
@@ -85,16 +78,41 @@ public class FormBody implements Body {
         // No-op
     }
 
-    public static Body wrap(MultiValueMap<Body> params) {
-        final MultiValueMap<String> forms = new MultiValueMap<>();
-        for (Pair<String, Body> pair : params.toList()) {
-            final StringBody second = (StringBody) pair.second;
-            if (second != null) {
-                forms.add(pair.first, second.value());
-            } else {
-                forms.add(pair.first, null);
+    /**
+     * Escapes forms directly into a fixed size buffer, so whole payload is never held in memory
+     *
+     * @param os Output, or null to count length only
+     * @return Encoded length
+     */
+    private long encode(OutputStream os) throws IOException {
+        final UrlSerialization.ByteTarget target = new UrlSerialization.ByteTarget(os, BUFFER_SIZE);
+        final List<? extends Pair<String, ?>> list = forms.toList();
+        for (int i = 0, j = list.size(); i < j; i++) {
+            final Pair<String, ?> form = list.get(i);
+            if (i != 0) {
+                target.write('&');
+            }
+            UrlSerialization.QUERY.serialize(form.first, charset, target);
+            final String value = valueOf(form.second);
+            if (value != null) {
+                target.write('=');
+                UrlSerialization.QUERY.serialize(value, charset, target);
             }
         }
-        return new FormBody(forms);
+        target.flush();
+        return target.count();
+    }
+
+    private static String valueOf(Object value) {
+        if (value == null) return null;
+        if (value instanceof StringBody) return ((StringBody) value).value();
+        return (String) value;
+    }
+
+    /**
+     * @param params Params with {@link StringBody} values, will be encoded as is without copying
+     */
+    public static Body wrap(MultiValueMap<Body> params) {
+        return new FormBody(params, Charset.forName("UTF-8"));
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.http.mime;
+
+import org.mariotaku.restfu.http.ContentType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Region of a file, mapped with {@link FileChannel#map(FileChannel.MapMode, long, long)} when first
+ * read. Useful for uploading slices of large files without copying them into heap.
+ */
+public class MappedFileBody implements ChannelBody {
+
+    private final File file;
+    private final long offset;
+    private final long length;
+    private final ContentType contentType;
+    private String fileName;
+    private ByteBufferBody mapped;
+
+    public MappedFileBody(File file, long offset, long length, ContentType contentType) {
+        if (offset < 0 || length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid region offset=" + offset + ", length=" + length);
+        }
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.contentType = contentType;
+    }
+
+    public MappedFileBody(File file, long offset, long length) {
+        this(file, offset, length, null);
+    }
+
+    @Override
+    public ContentType contentType() {
+        if (contentType == null) {
+            return ContentType.OCTET_STREAM;
+        }
+        return contentType;
+    }
+
+    @Override
+    public String contentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public long writeTo(OutputStream os) throws IOException {
+        return mapped().writeTo(os);
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        return mapped().writeTo(channel);
+    }
+
+    @Override
+    public InputStream stream() throws IOException {
+        return mapped().stream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mapping is released when garbage collected
+        if (mapped != null) {
+            mapped.close();
+        }
+    }
+
+    public String fileName() {
+        if (fileName != null) return fileName;
+        return fileName = file.getName();
+    }
+
+    public File file() {
+        return file;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    private ByteBufferBody mapped() throws IOException {
+        if (mapped != null) return mapped;
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // Mapping stays valid after channel closed
+            return mapped = new ByteBufferBody(raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    offset, length), contentType);
+        } finally {
+            raf.close();
+        }
+    }
+}
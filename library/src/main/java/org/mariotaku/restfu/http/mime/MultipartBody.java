@@ -17,43 +17,52 @@
 package org.mariotaku.restfu.http.mime;
 
 
+import org.jetbrains.annotations.NotNull;
 import org.mariotaku.commons.collection.Pair;
 import org.mariotaku.restfu.RestFuUtils;
 import org.mariotaku.restfu.http.ContentType;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by mariotaku on 15/5/5.
  */
-public class MultipartBody implements Body {
-
-    private static final byte[] CONTENT_DISPOSITION = {'C', 'o', 'n', 't', 'e', 'n', 't', '-', 'D',
-            'i', 's', 'p', 'o', 's', 'i', 't', 'i', 'o', 'n'};
-    private static final byte[] CONTENT_TYPE = {'C', 'o', 'n', 't', 'e', 'n', 't', '-', 'T',
-            'y', 'p', 'e'};
-    private static final byte[] CONTENT_LENGTH = {'C', 'o', 'n', 't', 'e', 'n', 't', '-', 'L',
-            'e', 'n', 'g', 't', 'h'};
-    private static final byte[] COLONSPACE = {':', ' '};
+public class MultipartBody implements ChannelBody {
+
+    private static final byte[] CONTENT_DISPOSITION_FORM_DATA = {'C', 'o', 'n', 't', 'e', 'n', 't', '-', 'D',
+            'i', 's', 'p', 'o', 's', 'i', 't', 'i', 'o', 'n', ':', ' ', 'f', 'o', 'r', 'm', '-', 'd', 'a', 't', 'a'};
     private static final byte[] CRLF = {'\r', '\n'};
     private static final byte[] DASHDASH = {'-', '-'};
+    private static final byte[] BOUNDARY_CHARS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P', 'Q', 'R', 'S',
+            'T', 'U', 'V', 'W', 'X', 'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l',
+            'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'};
+    private static final int BOUNDARY_LENGTH = 32;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     private final List<Pair<String, Body>> parts;
     private final ContentType contentType;
     private final byte[] boundaryBytes;
+    // Encoded boundary and headers of parts, same order as parts
+    private final List<byte[]> partHeaders;
 
     private boolean lengthSet;
     private long length;
 
     public MultipartBody(List<Pair<String, Body>> parts) {
         this.parts = parts;
-        this.contentType = ContentType.parse("multipart/form-data");
-        final String boundary = UUID.randomUUID().toString();
-        contentType.addParameter("boundary", boundary);
-        boundaryBytes = boundary.getBytes();
+        this.partHeaders = new ArrayList<>(parts.size());
+        this.contentType = new ContentType("multipart/form-data");
+        boundaryBytes = generateBoundary();
+        contentType.addParameter("boundary", new String(boundaryBytes, UTF_8));
     }
 
     public MultipartBody() {
@@ -62,6 +71,7 @@ public class MultipartBody implements Body {
 
     public void add(final String name, final Body data) {
         parts.add(Pair.create(name, data));
+        lengthSet = false;
     }
 
     @Override
@@ -76,25 +86,73 @@ public class MultipartBody implements Body {
 
     @Override
     public long length() throws IOException {
-        if (!lengthSet) {
-            final LengthCountOutputStream os = new LengthCountOutputStream();
-            writeBody(os);
-            length = os.length();
-            lengthSet = true;
+        if (lengthSet) return length;
+        long totalLength = 0;
+        for (int i = 0, j = parts.size(); i < j; i++) {
+            final long contentLength = parts.get(i).second.length();
+            if (contentLength == -1) {
+                totalLength = -1;
+                break;
+            }
+            totalLength += partHeader(i).length + contentLength + CRLF.length;
+        }
+        if (totalLength != -1) {
+            totalLength += closingBoundaryLength();
         }
+        length = totalLength;
+        lengthSet = true;
         return length;
     }
 
     @Override
     public long writeTo(OutputStream os) throws IOException {
-        return writeBody(os);
+        long totalLength = 0;
+        for (int i = 0, j = parts.size(); i < j; i++) {
+            final byte[] header = partHeader(i);
+            os.write(header);
+            totalLength += header.length;
+            totalLength += parts.get(i).second.writeTo(os);
+            os.write(CRLF);
+            totalLength += CRLF.length;
+        }
+        os.write(DASHDASH);
+        os.write(boundaryBytes);
+        os.write(DASHDASH);
+        os.write(CRLF);
+        return totalLength + closingBoundaryLength();
+    }
+
+    /**
+     * Parts implementing {@link ChannelBody} are written to channel directly, others through an
+     * {@link OutputStream} adapter
+     */
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        OutputStream os = null;
+        long totalLength = 0;
+        for (int i = 0, j = parts.size(); i < j; i++) {
+            totalLength += writeFully(channel, partHeader(i));
+            final Body body = parts.get(i).second;
+            if (body instanceof ChannelBody) {
+                totalLength += ((ChannelBody) body).writeTo(channel);
+            } else {
+                if (os == null) {
+                    os = Channels.newOutputStream(channel);
+                }
+                totalLength += body.writeTo(os);
+            }
+            totalLength += writeFully(channel, CRLF);
+        }
+        return totalLength + writeFully(channel, closingBoundary());
     }
 
+    /**
+     * Reads boundaries, headers and streams of parts one after another, part streams are opened
+     * only when reached
+     */
     @Override
     public InputStream stream() throws IOException {
-        final ByteArrayOutputStream os = new ByteArrayOutputStream();
-        writeTo(os);
-        return new ByteArrayInputStream(os.toByteArray());
+        return new MultipartInputStream();
     }
 
     @Override
@@ -104,60 +162,89 @@ public class MultipartBody implements Body {
         }
     }
 
-    private long writeBody(final OutputStream os) throws IOException {
-        long totalLength = 0;
-        for (Pair<String, Body> part : parts) {
-            totalLength += write(os, DASHDASH);
-            totalLength += write(os, boundaryBytes);
-            totalLength += write(os, CRLF);
-            final ContentType contentDisposition = new ContentType("form-data").parameter("name",
-                    quoteString(part.first));
-            final ContentType contentType = part.second.contentType();
-            final long contentLength = part.second.length();
-            if (part.second instanceof FileBody) {
-                contentDisposition.addParameter("filename", quoteString(((FileBody) part.second).fileName()));
-            }
-            totalLength += write(os, CONTENT_DISPOSITION);
-            totalLength += write(os, COLONSPACE);
-            totalLength += write(os, contentDisposition.toHeader().getBytes());
-            totalLength += write(os, CRLF);
-            if (contentType != null) {
-                totalLength += write(os, CONTENT_TYPE);
-                totalLength += write(os, COLONSPACE);
-                totalLength += write(os, contentType.toHeader().getBytes());
-                totalLength += write(os, CRLF);
-            }
-            if (contentLength != -1) {
-                totalLength += write(os, CONTENT_LENGTH);
-                totalLength += write(os, COLONSPACE);
-                totalLength += write(os, String.valueOf(contentLength).getBytes());
-                totalLength += write(os, CRLF);
-            }
-            totalLength += write(os, CRLF);
-            if (os instanceof LengthCountOutputStream) {
-                final LengthCountOutputStream lcos = (LengthCountOutputStream) os;
-                if (contentLength == -1) {
-                    lcos.markNoLength();
-                }
-                lcos.add(contentLength);
-                totalLength += contentLength;
-            } else {
-                totalLength += part.second.writeTo(os);
-            }
-            totalLength += write(os, CRLF);
+    /**
+     * Boundary line and headers of a part, including the empty line before content. Encoded once
+     * and shared by {@link #length()}, {@link #writeTo(OutputStream)} and {@link #stream()}
+     */
+    private byte[] partHeader(final int index) throws IOException {
+        for (int i = partHeaders.size(); i <= index; i++) {
+            partHeaders.add(encodePartHeader(parts.get(i)));
         }
-        totalLength += write(os, DASHDASH);
-        totalLength += write(os, boundaryBytes);
-        totalLength += write(os, DASHDASH);
-        totalLength += write(os, CRLF);
-        return totalLength;
+        return partHeaders.get(index);
     }
 
-    private long write(final OutputStream os, final byte[] bytes) throws IOException {
-        os.write(bytes);
+    private byte[] encodePartHeader(final Pair<String, Body> part) throws IOException {
+        final Body body = part.second;
+        final StringBuilder sb = new StringBuilder(128);
+        sb.append("; name=");
+        appendQuotedString(sb, part.first);
+        if (body instanceof FileBody) {
+            sb.append("; filename=");
+            appendQuotedString(sb, ((FileBody) body).fileName());
+        } else if (body instanceof MappedFileBody) {
+            sb.append("; filename=");
+            appendQuotedString(sb, ((MappedFileBody) body).fileName());
+        }
+        sb.append("\r\n");
+        final ContentType contentType = body.contentType();
+        if (contentType != null) {
+            sb.append("Content-Type: ").append(contentType.toHeader()).append("\r\n");
+        }
+        final long contentLength = body.length();
+        if (contentLength != -1) {
+            sb.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+        sb.append("\r\n");
+        final byte[] headers = sb.toString().getBytes(UTF_8);
+        final byte[] bytes = new byte[DASHDASH.length + boundaryBytes.length + CRLF.length
+                + CONTENT_DISPOSITION_FORM_DATA.length + headers.length];
+        int offset = 0;
+        System.arraycopy(DASHDASH, 0, bytes, offset, DASHDASH.length);
+        offset += DASHDASH.length;
+        System.arraycopy(boundaryBytes, 0, bytes, offset, boundaryBytes.length);
+        offset += boundaryBytes.length;
+        System.arraycopy(CRLF, 0, bytes, offset, CRLF.length);
+        offset += CRLF.length;
+        System.arraycopy(CONTENT_DISPOSITION_FORM_DATA, 0, bytes, offset, CONTENT_DISPOSITION_FORM_DATA.length);
+        offset += CONTENT_DISPOSITION_FORM_DATA.length;
+        System.arraycopy(headers, 0, bytes, offset, headers.length);
+        return bytes;
+    }
+
+    private byte[] closingBoundary() {
+        final byte[] bytes = new byte[closingBoundaryLength()];
+        System.arraycopy(DASHDASH, 0, bytes, 0, 2);
+        System.arraycopy(boundaryBytes, 0, bytes, 2, boundaryBytes.length);
+        System.arraycopy(DASHDASH, 0, bytes, boundaryBytes.length + 2, 2);
+        System.arraycopy(CRLF, 0, bytes, boundaryBytes.length + 4, 2);
+        return bytes;
+    }
+
+    private static int writeFully(WritableByteChannel channel, byte[] bytes) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
         return bytes.length;
     }
 
+    private int closingBoundaryLength() {
+        return DASHDASH.length + boundaryBytes.length + DASHDASH.length + CRLF.length;
+    }
+
+    /**
+     * Boundary only needs to be unlikely to appear in content, so a thread local PRNG is used rather
+     * than {@link java.util.UUID#randomUUID()}, which blocks on shared {@link java.security.SecureRandom}
+     */
+    static byte[] generateBoundary() {
+        final Random random = ThreadLocalRandom.current();
+        final byte[] bytes = new byte[BOUNDARY_LENGTH];
+        for (int i = 0; i < BOUNDARY_LENGTH; i++) {
+            bytes[i] = BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)];
+        }
+        return bytes;
+    }
+
     public static String quoteString(String string) {
         return appendQuotedString(new StringBuilder(), string).toString();
     }
@@ -200,42 +287,59 @@ public class MultipartBody implements Body {
     }
 
 
-    private static class LengthCountOutputStream extends OutputStream {
-
-        private boolean noLength;
-        private long length;
+    private class MultipartInputStream extends InputStream {
+        // Each part has 3 segments: header, content and CRLF, followed by closing boundary
+        private int segment = -1;
+        private InputStream current;
 
-        LengthCountOutputStream() {
-            reset();
+        @Override
+        public int read() throws IOException {
+            while (true) {
+                if (current == null && !nextSegment()) return -1;
+                final int read = current.read();
+                if (read != -1) return read;
+                current = null;
+            }
         }
 
         @Override
-        public void write(final byte[] buffer, final int offset, final int count) throws IOException {
+        public int read(@NotNull byte[] buffer, int offset, int count) throws IOException {
             RestFuUtils.checkOffsetAndCount(buffer.length, offset, count);
-            add(count);
+            if (count == 0) return 0;
+            while (true) {
+                if (current == null && !nextSegment()) return -1;
+                final int read = current.read(buffer, offset, count);
+                if (read != -1) return read;
+                current = null;
+            }
         }
 
         @Override
-        public void write(final int oneByte) throws IOException {
-            add(1);
-        }
-
-        public void add(long added) {
-            length += added;
-        }
-
-        public void markNoLength() {
-            noLength = true;
-        }
-
-        public void reset() {
-            length = 0;
-            noLength = false;
+        public int available() throws IOException {
+            return current != null ? current.available() : 0;
         }
 
-        public long length() {
-            if (noLength) return -1;
-            return length;
+        private boolean nextSegment() throws IOException {
+            final int partsCount = parts.size();
+            if (segment >= partsCount * 3) return false;
+            segment++;
+            if (segment == partsCount * 3) {
+                current = new ByteArrayInputStream(closingBoundary());
+                return true;
+            }
+            switch (segment % 3) {
+                case 0:
+                    current = new ByteArrayInputStream(partHeader(segment / 3));
+                    break;
+                case 1:
+                    // Part streams are closed with their bodies
+                    current = parts.get(segment / 3).second.stream();
+                    break;
+                default:
+                    current = new ByteArrayInputStream(CRLF);
+                    break;
+            }
+            return true;
         }
     }
 }
@@ -18,11 +18,12 @@ package org.mariotaku.restfu.http.mime;
 
 import org.mariotaku.commons.io.StreamUtils;
 import org.mariotaku.restfu.http.ContentType;
-import org.mariotaku.restfu.io.StreamingGZIPInputStream;
+import org.mariotaku.restfu.io.ContentDecoders;
 
 import java.io.*;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -38,10 +39,12 @@ public class SimpleBody implements Body {
     public SimpleBody(ContentType contentType, String contentEncoding, long contentLength, InputStream stream) throws IOException {
         this.contentType = contentType;
         this.contentEncoding = contentEncoding;
-        this.contentLength = contentLength;
-        if ("gzip".equals(contentEncoding)) {
-            this.stream = new StreamingGZIPInputStream(stream);
+        if (ContentDecoders.isEncoded(contentEncoding)) {
+            // Content length is of encoded data
+            this.contentLength = -1;
+            this.stream = ContentDecoders.decode(contentEncoding, stream);
         } else {
+            this.contentLength = contentLength;
             this.stream = stream;
         }
     }
@@ -73,6 +76,7 @@ public class SimpleBody implements Body {
 
     @Override
     public long writeTo(OutputStream os) throws IOException {
+        if (contentLength < 0) return StreamUtils.copy(stream(), os, null, null);
         final LengthLimitCopyListener listener = new LengthLimitCopyListener(contentLength);
         return StreamUtils.copy(stream(), os, listener, listener);
     }
@@ -94,6 +98,8 @@ public class SimpleBody implements Body {
             return (Body) value;
         } else if (value instanceof File) {
             return new FileBody((File) value);
+        } else if (value instanceof ByteBuffer) {
+            return new ByteBufferBody((ByteBuffer) value);
         } else if (value instanceof String) {
             return new StringBody((String) value, Charset.defaultCharset());
         } else if (value instanceof Number) {
@@ -123,6 +129,8 @@ public class SimpleBody implements Body {
             return true;
         } else if (value == File.class) {
             return true;
+        } else if (ByteBuffer.class.isAssignableFrom(value)) {
+            return true;
         } else if (value == String.class) {
             return true;
         } else if (Number.class.isAssignableFrom(value)) {
@@ -1,9 +1,10 @@
 package org.mariotaku.restfu.http.mime;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
-import java.util.BitSet;
 
 /**
  * Created by mariotaku on 16/7/13.
@@ -17,103 +18,264 @@ public abstract class UrlSerialization {
             'C', 'D', 'E', 'F'
     };
 
-    public static UrlSerialization PATH = new UrlSerialization() {
-        final BitSet allowedSet;
-
-        {
-            allowedSet = new BitSet(0xFF);
-
-            allowedSet.set('_', true);
-            allowedSet.set('-', true);
-            allowedSet.set('!', true);
-            allowedSet.set('.', true);
-            allowedSet.set('~', true);
-            allowedSet.set('\'', true);
-            allowedSet.set('(', true);
-            allowedSet.set(')', true);
-            allowedSet.set('*', true);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static UrlSerialization PATH = new SafeChars("_-!.~'()*", false);
+
+    /**
+     * https://url.spec.whatwg.org/#concept-urlsearchparams-list
+     */
+    public static UrlSerialization QUERY = new SafeChars("-._", true);
+
+    protected abstract void appendEscape(int codePoint, Charset charset, StringBuilder target);
+
+    protected final void percentEncode(int codePoint, Charset charset, StringBuilder target) {
+        if (UTF_8.equals(charset)) {
+            percentEncodeUtf8(codePoint, target);
+            return;
+        }
+        CharBuffer cb = CharBuffer.wrap(Character.toChars(codePoint));
+        ByteBuffer encoded = charset.encode(cb);
+        for (int i = 0, j = encoded.limit(); i < j; i++) {
+            appendByte(encoded.get(i), target);
+        }
+    }
+
+    public final String serialize(String str, Charset charset) {
+        // Most strings are mostly unreserved ASCII
+        final StringBuilder sb = new StringBuilder(str.length() + 16);
+        serialize(str, charset, sb);
+        return sb.toString();
+    }
+
+    public final void serialize(String str, Charset charset, StringBuilder target) {
+        serializeTo(str, charset, target);
+    }
+
+    /**
+     * Serializes as ASCII bytes into {@code target}
+     */
+    void serialize(String str, Charset charset, ByteTarget target) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        serializeTo(str, charset, sb);
+        for (int i = 0, j = sb.length(); i < j; i++) {
+            target.write(sb.charAt(i));
+        }
+    }
+
+    // Package private, so only serializations in this package may bypass appendEscape
+    void serializeTo(String str, Charset charset, StringBuilder target) {
+        final int length = str.length();
+        for (int offset = 0; offset < length; ) {
+            final int codePoint = str.codePointAt(offset);
+            appendEscape(codePoint, charset, target);
+            offset += Character.charCount(codePoint);
+        }
+    }
+
+    /**
+     * Same output as {@link Charset#encode(CharBuffer)} with UTF-8, including {@code '?'} for
+     * unpaired surrogates
+     */
+    private static void percentEncodeUtf8(int codePoint, StringBuilder target) {
+        if (codePoint < 0x80) {
+            appendByte(codePoint, target);
+        } else if (codePoint < 0x800) {
+            appendByte(0xC0 | (codePoint >> 6), target);
+            appendByte(0x80 | (codePoint & 0x3F), target);
+        } else if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            appendByte('?', target);
+        } else if (codePoint < 0x10000) {
+            appendByte(0xE0 | (codePoint >> 12), target);
+            appendByte(0x80 | ((codePoint >> 6) & 0x3F), target);
+            appendByte(0x80 | (codePoint & 0x3F), target);
+        } else {
+            appendByte(0xF0 | (codePoint >> 18), target);
+            appendByte(0x80 | ((codePoint >> 12) & 0x3F), target);
+            appendByte(0x80 | ((codePoint >> 6) & 0x3F), target);
+            appendByte(0x80 | (codePoint & 0x3F), target);
+        }
+    }
+
+    /**
+     * Same as {@link #percentEncodeUtf8(int, StringBuilder)}, but writes raw bytes
+     *
+     * @return Number of bytes written to {@code out}
+     */
+    private static int encodeUtf8(int codePoint, byte[] out) {
+        if (codePoint < 0x80) {
+            out[0] = (byte) codePoint;
+            return 1;
+        } else if (codePoint < 0x800) {
+            out[0] = (byte) (0xC0 | (codePoint >> 6));
+            out[1] = (byte) (0x80 | (codePoint & 0x3F));
+            return 2;
+        } else if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            out[0] = '?';
+            return 1;
+        } else if (codePoint < 0x10000) {
+            out[0] = (byte) (0xE0 | (codePoint >> 12));
+            out[1] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            out[2] = (byte) (0x80 | (codePoint & 0x3F));
+            return 3;
+        }
+        out[0] = (byte) (0xF0 | (codePoint >> 18));
+        out[1] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        out[2] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        out[3] = (byte) (0x80 | (codePoint & 0x3F));
+        return 4;
+    }
+
+    private static void appendByte(int v, StringBuilder target) {
+        target.append('%');
+        target.append(HEX_CHAR_TABLE[(v & 0xF0) >>> 4]);
+        target.append(HEX_CHAR_TABLE[v & 0xF]);
+    }
+
+    /**
+     * Serialization which keeps ASCII alphanumerics and given safe characters, and percent-encodes
+     * everything else. UTF-8 is encoded inline without going through {@link Charset}
+     */
+    public static final class SafeChars extends UrlSerialization {
+
+        // Characters below 0x80 appended as is
+        private final boolean[] safeTable;
+        private final boolean spaceAsPlus;
+
+        /**
+         * @param safeChars   ASCII characters other than alphanumerics to keep
+         * @param spaceAsPlus {@code true} to serialize space as {@code '+'}
+         */
+        public SafeChars(String safeChars, boolean spaceAsPlus) {
+            final boolean[] table = new boolean[0x80];
             for (int i = '0'; i <= '9'; i++) {
-                allowedSet.set(i, true);
+                table[i] = true;
             }
             for (int i = 'A'; i <= 'Z'; i++) {
-                allowedSet.set(i, true);
+                table[i] = true;
             }
             for (int i = 'a'; i <= 'z'; i++) {
-                allowedSet.set(i, true);
+                table[i] = true;
             }
+            for (int i = 0, j = safeChars.length(); i < j; i++) {
+                final char ch = safeChars.charAt(i);
+                if (ch >= 0x80) throw new IllegalArgumentException("Non-ASCII safe char " + ch);
+                table[ch] = true;
+            }
+            this.safeTable = table;
+            this.spaceAsPlus = spaceAsPlus;
         }
 
         @Override
         protected void appendEscape(int codePoint, Charset charset, StringBuilder target) {
-            if (codePoint <= 0xFF && allowedSet.get(codePoint)) {
-                target.appendCodePoint(codePoint);
+            if (codePoint < 0x80 && safeTable[codePoint]) {
+                target.append((char) codePoint);
+            } else if (codePoint == 0x20 && spaceAsPlus) {
+                target.append('+');
             } else {
                 percentEncode(codePoint, charset, target);
             }
         }
-    };
 
-    /**
-     * https://url.spec.whatwg.org/#concept-urlsearchparams-list
-     */
-    public static UrlSerialization QUERY = new UrlSerialization() {
-        final BitSet allowedSet;
-
-        {
-            allowedSet = new BitSet(0xFF);
-//            allowedSet.set('*', true);
-            allowedSet.set('-', true);
-            allowedSet.set('.', true);
-            allowedSet.set('_', true);
-            for (int i = '0'; i <= '9'; i++) {
-                allowedSet.set(i, true);
-            }
-            for (int i = 'A'; i <= 'Z'; i++) {
-                allowedSet.set(i, true);
+        @Override
+        void serializeTo(String str, Charset charset, StringBuilder target) {
+            if (!UTF_8.equals(charset)) {
+                super.serializeTo(str, charset, target);
+                return;
             }
-            for (int i = 'a'; i <= 'z'; i++) {
-                allowedSet.set(i, true);
+            final boolean[] safeTable = this.safeTable;
+            final int length = str.length();
+            for (int i = 0; i < length; i++) {
+                final char ch = str.charAt(i);
+                if (ch < 0x80) {
+                    if (safeTable[ch]) {
+                        target.append(ch);
+                    } else if (ch == ' ' && spaceAsPlus) {
+                        target.append('+');
+                    } else {
+                        appendByte(ch, target);
+                    }
+                } else if (Character.isHighSurrogate(ch) && i + 1 < length
+                        && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    percentEncodeUtf8(Character.toCodePoint(ch, str.charAt(++i)), target);
+                } else {
+                    percentEncodeUtf8(ch, target);
+                }
             }
         }
 
         @Override
-        protected void appendEscape(int codePoint, Charset charset, StringBuilder target) {
-            if (codePoint == 0x20) {
-                target.append('+');
-            } else if (codePoint <= 0xFF && allowedSet.get(codePoint)) {
-                target.appendCodePoint(codePoint);
-            } else {
-                percentEncode(codePoint, charset, target);
+        void serialize(String str, Charset charset, ByteTarget target) throws IOException {
+            if (!UTF_8.equals(charset)) {
+                super.serialize(str, charset, target);
+                return;
+            }
+            final boolean[] safeTable = this.safeTable;
+            final byte[] utf8 = new byte[4];
+            final int length = str.length();
+            for (int i = 0; i < length; i++) {
+                final char ch = str.charAt(i);
+                if (ch < 0x80) {
+                    if (safeTable[ch]) {
+                        target.write(ch);
+                    } else if (ch == ' ' && spaceAsPlus) {
+                        target.write('+');
+                    } else {
+                        target.writePercent(ch);
+                    }
+                    continue;
+                }
+                final int count;
+                if (Character.isHighSurrogate(ch) && i + 1 < length
+                        && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    count = encodeUtf8(Character.toCodePoint(ch, str.charAt(++i)), utf8);
+                } else {
+                    count = encodeUtf8(ch, utf8);
+                }
+                for (int k = 0; k < count; k++) {
+                    target.writePercent(utf8[k]);
+                }
             }
         }
-    };
+    }
 
+    /**
+     * Fixed size ASCII buffer flushed to stream as it fills, counts bytes only if stream is null
+     */
+    static final class ByteTarget {
+        private final OutputStream os;
+        private final byte[] buffer;
+        private int position;
+        private long count;
 
-    protected abstract void appendEscape(int codePoint, Charset charset, StringBuilder target);
+        ByteTarget(OutputStream os, int bufferSize) {
+            this.os = os;
+            this.buffer = os != null ? new byte[bufferSize] : null;
+        }
 
-    protected final void percentEncode(int codePoint, Charset charset, StringBuilder target) {
-        CharBuffer cb = CharBuffer.wrap(Character.toChars(codePoint));
-        ByteBuffer encoded = charset.encode(cb);
-        for (int i = 0, j = encoded.limit(); i < j; i++) {
-            target.append('%');
-            byte v = encoded.get(i);
-            target.append(HEX_CHAR_TABLE[(v & 0xF0) >>> 4]);
-            target.append(HEX_CHAR_TABLE[v & 0xF]);
+        void write(char ch) throws IOException {
+            count++;
+            if (os == null) return;
+            if (position == buffer.length) {
+                flush();
+            }
+            buffer[position++] = (byte) ch;
         }
-    }
 
-    public final String serialize(String str, Charset charset) {
-        final StringBuilder sb = new StringBuilder();
-        serialize(str, charset, sb);
-        return sb.toString();
-    }
+        void writePercent(int v) throws IOException {
+            write('%');
+            write(HEX_CHAR_TABLE[(v & 0xF0) >>> 4]);
+            write(HEX_CHAR_TABLE[v & 0xF]);
+        }
 
-    public final void serialize(String str, Charset charset, StringBuilder target) {
-        final int length = str.length();
-        for (int offset = 0; offset < length; ) {
-            final int codePoint = str.codePointAt(offset);
-            appendEscape(codePoint, charset, target);
-            offset += Character.charCount(codePoint);
+        void flush() throws IOException {
+            if (os == null || position == 0) return;
+            os.write(buffer, 0, position);
+            position = 0;
+        }
+
+        long count() {
+            return count;
         }
     }
 
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a {@code Content-Encoding}. Implementations listed in
+ * {@code META-INF/services/org.mariotaku.restfu.io.ContentDecoder} are registered to
+ * {@link ContentDecoders} automatically, so optional modules can add encodings like {@code br}.
+ */
+public interface ContentDecoder {
+
+    /**
+     * @return Lower case encoding token, e.g. {@code gzip}
+     */
+    @NotNull
+    String getEncoding();
+
+    @NotNull
+    InputStream decode(@NotNull InputStream in) throws IOException;
+}
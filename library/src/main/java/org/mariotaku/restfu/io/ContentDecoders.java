@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.io;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of {@link ContentDecoder}s by encoding token, used by all HTTP clients to decode responses
+ * and to build {@code Accept-Encoding} of requests.
+ */
+public final class ContentDecoders {
+
+    public static final String IDENTITY = "identity";
+
+    private static final ConcurrentMap<String, ContentDecoder> DECODERS = new ConcurrentHashMap<>();
+    private static volatile String acceptEncoding;
+
+    static {
+        register(new GzipDecoder("gzip"));
+        register(new GzipDecoder("x-gzip"));
+        register(new DeflateDecoder());
+        for (ContentDecoder decoder : ServiceLoader.load(ContentDecoder.class, ContentDecoders.class.getClassLoader())) {
+            register(decoder);
+        }
+    }
+
+    private ContentDecoders() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Adds or replaces decoder of {@link ContentDecoder#getEncoding()}
+     */
+    public static void register(@NotNull ContentDecoder decoder) {
+        DECODERS.put(decoder.getEncoding().toLowerCase(Locale.US), decoder);
+        acceptEncoding = null;
+    }
+
+    public static void unregister(@NotNull String encoding) {
+        DECODERS.remove(encoding.toLowerCase(Locale.US));
+        acceptEncoding = null;
+    }
+
+    @Nullable
+    public static ContentDecoder get(@NotNull String encoding) {
+        return DECODERS.get(encoding.toLowerCase(Locale.US));
+    }
+
+    /**
+     * @return Registered encodings for {@code Accept-Encoding} header, e.g. {@code gzip, deflate}
+     */
+    @NotNull
+    public static String getAcceptEncoding() {
+        String value = acceptEncoding;
+        if (value != null) return value;
+        final StringBuilder sb = new StringBuilder();
+        // Sorted so header is stable
+        for (String encoding : new TreeSet<>(DECODERS.keySet())) {
+            // Alias of gzip
+            if ("x-gzip".equals(encoding)) continue;
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(encoding);
+        }
+        return acceptEncoding = sb.toString();
+    }
+
+    /**
+     * @return True if {@code Content-Encoding} has any coding other than identity
+     */
+    public static boolean isEncoded(@Nullable String contentEncoding) {
+        if (contentEncoding == null) return false;
+        for (String token : tokenize(contentEncoding)) {
+            if (!IDENTITY.equals(token)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decodes stream encoded with {@code Content-Encoding}. Stacked encodings like {@code gzip, br} are
+     * decoded in reverse order of application.
+     *
+     * @throws IOException If any encoding isn't supported
+     */
+    @NotNull
+    public static InputStream decode(@Nullable String contentEncoding, @NotNull InputStream in) throws IOException {
+        if (contentEncoding == null) return in;
+        final List<String> tokens = tokenize(contentEncoding);
+        final ContentDecoder[] decoders = new ContentDecoder[tokens.size()];
+        for (int i = 0, j = tokens.size(); i < j; i++) {
+            final String token = tokens.get(i);
+            if (IDENTITY.equals(token)) continue;
+            decoders[i] = DECODERS.get(token);
+            if (decoders[i] == null) throw new IOException("Unsupported Content-Encoding: " + token);
+        }
+        InputStream result = in;
+        for (int i = decoders.length - 1; i >= 0; i--) {
+            if (decoders[i] == null) continue;
+            result = decoders[i].decode(result);
+        }
+        return result;
+    }
+
+    private static List<String> tokenize(String contentEncoding) {
+        final List<String> tokens = new ArrayList<>(1);
+        int start = 0;
+        final int length = contentEncoding.length();
+        while (start < length) {
+            int end = contentEncoding.indexOf(',', start);
+            if (end == -1) {
+                end = length;
+            }
+            final String token = contentEncoding.substring(start, end).trim();
+            if (!token.isEmpty()) {
+                tokens.add(token.toLowerCase(Locale.US));
+            }
+            start = end + 1;
+        }
+        return tokens;
+    }
+
+    private static class GzipDecoder implements ContentDecoder {
+        private final String encoding;
+
+        GzipDecoder(String encoding) {
+            this.encoding = encoding;
+        }
+
+        @NotNull
+        @Override
+        public String getEncoding() {
+            return encoding;
+        }
+
+        @NotNull
+        @Override
+        public InputStream decode(@NotNull InputStream in) throws IOException {
+            return new PooledGZIPInputStream(in);
+        }
+    }
+
+    private static class DeflateDecoder implements ContentDecoder {
+
+        @NotNull
+        @Override
+        public String getEncoding() {
+            return "deflate";
+        }
+
+        @NotNull
+        @Override
+        public InputStream decode(@NotNull InputStream in) throws IOException {
+            return new DeflateInputStream(in);
+        }
+    }
+}
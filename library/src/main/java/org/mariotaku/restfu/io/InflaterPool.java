@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Inflater;
+
+/**
+ * Reuses {@link Inflater} instances, so native zlib state isn't allocated and finalized for every
+ * compressed response. Inflaters beyond pool capacity are ended when released.
+ */
+public final class InflaterPool {
+
+    private static final int MAX_POOLED = 32;
+
+    // Inflater doesn't expose nowrap flag, so pooled separately
+    private static final BlockingQueue<Inflater> WRAPPED = new ArrayBlockingQueue<>(MAX_POOLED);
+    private static final BlockingQueue<Inflater> NOWRAP = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    private InflaterPool() {
+        throw new AssertionError();
+    }
+
+    /**
+     * @param nowrap True for raw deflate data (used by gzip), false for zlib wrapped data
+     */
+    @NotNull
+    public static Inflater acquire(boolean nowrap) {
+        final Inflater inflater = (nowrap ? NOWRAP : WRAPPED).poll();
+        if (inflater != null) return inflater;
+        return new Inflater(nowrap);
+    }
+
+    /**
+     * Returns inflater acquired with same {@code nowrap} flag, inflater must not be used afterwards
+     */
+    public static void release(@NotNull Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        if (!(nowrap ? NOWRAP : WRAPPED).offer(inflater)) {
+            inflater.end();
+        }
+    }
+}
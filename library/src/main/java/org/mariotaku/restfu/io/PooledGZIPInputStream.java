@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes gzip data (RFC 1952) with an inflater from {@link InflaterPool}, which is returned on
+ * {@link #close()}. Concatenated members are supported like {@link java.util.zip.GZIPInputStream}, and
+ * {@link #available()} relies on underlying stream like {@link StreamingGZIPInputStream}.
+ */
+public final class PooledGZIPInputStream extends InflaterInputStream {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+    // Smallest possible member: header, empty deflate block and trailer
+    private static final int MIN_MEMBER_SIZE = 26;
+
+    private final CRC32 crc = new CRC32();
+    private boolean eos;
+    private boolean closed;
+
+    public PooledGZIPInputStream(InputStream in) throws IOException {
+        super(in, InflaterPool.acquire(true), 4096);
+        try {
+            readHeader(in);
+        } catch (IOException e) {
+            // Underlying stream is left open, like GZIPInputStream
+            closed = true;
+            InflaterPool.release(inf, true);
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        while (!eos) {
+            final int read = super.read(b, off, len);
+            if (read != -1) {
+                crc.update(b, off, read);
+                return read;
+            }
+            eos = readTrailer();
+        }
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (eos) return 0;
+        return in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            super.close();
+        } finally {
+            InflaterPool.release(inf, true);
+        }
+    }
+
+    /**
+     * @return Header length
+     */
+    private int readHeader(InputStream is) throws IOException {
+        final CheckedInputStream in = new CheckedInputStream(is, crc);
+        crc.reset();
+        if (readUShort(in) != GZIP_MAGIC) throw new ZipException("Not in GZIP format");
+        if (readUByte(in) != 8) throw new ZipException("Unsupported compression method");
+        final int flags = readUByte(in);
+        // Modification time, extra flags and OS
+        skipBytes(in, 6);
+        int length = 10;
+        if ((flags & FEXTRA) == FEXTRA) {
+            final int extraLength = readUShort(in);
+            skipBytes(in, extraLength);
+            length += extraLength + 2;
+        }
+        if ((flags & FNAME) == FNAME) {
+            length += skipZeroTerminated(in);
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            length += skipZeroTerminated(in);
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            final int headerCrc = (int) crc.getValue() & 0xffff;
+            if (readUShort(in) != headerCrc) throw new ZipException("Corrupt GZIP header");
+            length += 2;
+        }
+        crc.reset();
+        return length;
+    }
+
+    /**
+     * @return True if no more members
+     */
+    private boolean readTrailer() throws IOException {
+        // Part of trailer may have been read into inflater input buffer
+        final int remaining = inf.getRemaining();
+        final InputStream trailer = remaining > 0 ? new SequenceInputStream(
+                new ByteArrayInputStream(buf, len - remaining, remaining), in) : in;
+        if (readUInt(trailer) != crc.getValue() || readUInt(trailer) != (inf.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        if (in.available() <= 0 && remaining <= MIN_MEMBER_SIZE) return true;
+        int consumed = 8;
+        try {
+            consumed += readHeader(trailer);
+        } catch (IOException e) {
+            // Trailing garbage
+            return true;
+        }
+        inf.reset();
+        if (remaining > consumed) {
+            inf.setInput(buf, len - remaining + consumed, remaining - consumed);
+        }
+        return false;
+    }
+
+    private static long readUInt(InputStream in) throws IOException {
+        final long low = readUShort(in);
+        return ((long) readUShort(in) << 16) | low;
+    }
+
+    private static int readUShort(InputStream in) throws IOException {
+        final int low = readUByte(in);
+        return (readUByte(in) << 8) | low;
+    }
+
+    private static int readUByte(InputStream in) throws IOException {
+        final int b = in.read();
+        if (b == -1) throw new EOFException();
+        return b;
+    }
+
+    private static int skipZeroTerminated(InputStream in) throws IOException {
+        int count = 1;
+        while (readUByte(in) != 0) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void skipBytes(InputStream in, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readUByte(in);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.mariotaku.restfu;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.mariotaku.restfu.annotation.method.GET;
+import org.mariotaku.restfu.annotation.method.POST;
+import org.mariotaku.restfu.annotation.param.Header;
+import org.mariotaku.restfu.annotation.param.Param;
+import org.mariotaku.restfu.annotation.param.Path;
+import org.mariotaku.restfu.annotation.param.Query;
+import org.mariotaku.restfu.http.BodyType;
+import org.mariotaku.restfu.http.HeaderMap;
+import org.mariotaku.restfu.http.HttpResponse;
+import org.mariotaku.restfu.http.MultiValueMap;
+import org.mariotaku.restfu.http.mime.Body;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Type;
+
+/**
+ * Counts bytes allocated by argument binding of a call, with per-thread allocation counter of HotSpot.
+ * Collections holding the results are measured separately and subtracted, what's left is the
+ * binding overhead.
+ */
+public class RestMethodAllocationTest {
+
+    private static final int ITERATIONS = 10000;
+    private static final long MAX_OVERHEAD = 256;
+
+    private final RestConverter.Factory<Exception> factory = RestConverter.CachingFactory.wrap(
+            new RestConverter.SimpleFactory<Exception>() {
+                @NotNull
+                @Override
+                public RestConverter<HttpResponse, ?, Exception> forResponse(@NotNull Type toType) {
+                    throw new UnsupportedOperationException();
+                }
+            });
+
+    @Test
+    public void testQueriesAndHeaders() throws Exception {
+        final RestMethodTemplate template = RestMethodTemplate.get(Api.class.getMethod("search", String.class,
+                int.class, boolean.class, String.class, String.class));
+        final Object[] args = {"restfu", 20, true, "token", "RestFu"};
+        final long bytes = measure(new Call() {
+            @Override
+            public void call() throws Exception {
+                final RestMethod<Exception> method = template.bind(args);
+                method.getHeaders(null);
+                method.getQueries(null);
+            }
+        });
+        final long floor = measure(new Call() {
+            @Override
+            public void call() {
+                final MultiValueMap<String> headers = new HeaderMap();
+                headers.add("Authorization", "token");
+                headers.add("User-Agent", "RestFu");
+                final MultiValueMap<String> queries = new MultiValueMap<>();
+                queries.add("per_page", String.valueOf(args[1]));
+                queries.add("include_entities", "true");
+            }
+        });
+        assertOverhead(bytes, floor);
+    }
+
+    @Test
+    public void testParams() throws Exception {
+        final RestMethodTemplate template = RestMethodTemplate.get(Api.class.getMethod("update", String.class,
+                String.class, String.class, long.class));
+        final Object[] args = {"RestFu", "HTTP client", "Hello", 42L};
+        final long bytes = measure(new Call() {
+            @Override
+            public void call() throws Exception {
+                final RestMethod<Exception> method = template.bind(args);
+                method.getHeaders(null);
+                method.getQueries(null);
+                method.getParams(factory, null);
+            }
+        });
+        final long floor = measure(new Call() {
+            @Override
+            public void call() throws Exception {
+                new HeaderMap();
+                new MultiValueMap<String>();
+                final MultiValueMap<Body> params = new MultiValueMap<>();
+                params.add("description", RestFuUtils.toBody(args[1], factory));
+                params.add("homepage", RestFuUtils.toBody(args[2], factory));
+                params.add("id", RestFuUtils.toBody(args[3], factory));
+            }
+        });
+        assertOverhead(bytes, floor);
+    }
+
+    private static void assertOverhead(long bytes, long floor) {
+        Assert.assertTrue("Binding allocated " + bytes + " bytes per call, " + floor + " bytes expected",
+                bytes - floor <= MAX_OVERHEAD);
+    }
+
+    private static long measure(Call call) throws Exception {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        // Skip instead of passing with nothing measured
+        Assume.assumeTrue("Allocation counter unavailable", bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue("Allocation counter unsupported", allocationBean.isThreadAllocatedMemorySupported());
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.call();
+        }
+        final long start = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.call();
+        }
+        return (allocationBean.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+    }
+
+    interface Call {
+        void call() throws Exception;
+    }
+
+    interface Api {
+        @GET("/search/{type}")
+        void search(@Path("type") String type, @Query("per_page") int perPage, @Query("include_entities") boolean entities,
+                @Header("Authorization") String token, @Header("User-Agent") String userAgent);
+
+        @POST("/repos/{name}")
+        @BodyType(BodyType.FORM)
+        void update(@Path("name") String name, @Param("description") String description,
+                @Param("homepage") String homepage, @Param("id") long id);
+    }
+}
@@ -0,0 +1,100 @@
+package org.mariotaku.restfu.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class HeaderMapTest {
+
+    @Test
+    public void testCaseInsensitive() throws Exception {
+        final HeaderMap headers = new HeaderMap();
+        headers.add("Content-Type", "application/json");
+        headers.add("X-Rate-Limit-Remaining", "42");
+        headers.add("set-cookie", "a=1");
+        headers.add("Set-Cookie", "b=2");
+        Assert.assertEquals("application/json", headers.getFirst("content-type"));
+        Assert.assertEquals("42", headers.getFirst("x-rate-limit-REMAINING"));
+        Assert.assertEquals(Arrays.asList("a=1", "b=2"), headers.get("SET-COOKIE"));
+        Assert.assertNull(headers.getFirst("X-Missing"));
+        Assert.assertEquals(Collections.emptyList(), headers.get("X-Missing"));
+        Assert.assertEquals(Arrays.asList("Content-Type", "X-Rate-Limit-Remaining", "set-cookie"),
+                Arrays.asList(headers.names().toArray()));
+        Assert.assertEquals("Set-Cookie", headers.getName(3));
+        Assert.assertEquals(4, headers.toList().size());
+    }
+
+    @Test
+    public void testGrow() throws Exception {
+        final HeaderMap headers = new HeaderMap();
+        for (int i = 0; i < 100; i++) {
+            headers.add("X-Header-" + (i % 40), String.valueOf(i));
+        }
+        Assert.assertEquals(100, headers.size());
+        Assert.assertEquals("7", headers.getFirst("x-header-7"));
+        Assert.assertEquals(Arrays.asList("7", "47", "87"), headers.get("X-HEADER-7"));
+        Assert.assertEquals(40, headers.names().size());
+    }
+
+    @Test
+    public void testModifyThroughMap() throws Exception {
+        final HeaderMap headers = new HeaderMap();
+        headers.add("Set-Cookie", "a=1");
+        headers.add("Content-Type", "text/plain");
+        headers.add("set-cookie", "b=2");
+        headers.add("X-Id", "1");
+        final Map<String, List<String>> map = headers.getMap();
+        Assert.assertEquals(Arrays.asList("a=1", "b=2"), map.remove("SET-COOKIE"));
+        Assert.assertNull(headers.getFirst("Set-Cookie"));
+        Assert.assertEquals("text/plain", headers.getFirst("content-type"));
+        Assert.assertEquals("1", headers.getFirst("x-id"));
+        Assert.assertEquals(2, headers.size());
+
+        Assert.assertEquals(2, map.size());
+        map.get("x-id").add("2");
+        map.get("X-ID").set(0, "0");
+        Assert.assertEquals(Arrays.asList("0", "2"), headers.get("X-Id"));
+        Assert.assertEquals(Arrays.asList("0", "2"), new ArrayList<>(map.get("x-id")));
+        map.get("X-Id").remove(0);
+        Assert.assertEquals(Arrays.asList("2"), headers.get("X-Id"));
+
+        map.put("Content-Type", Arrays.asList("application/json"));
+        Assert.assertEquals(Arrays.asList("application/json"), headers.get("CONTENT-TYPE"));
+        Assert.assertEquals(2, headers.size());
+
+        map.clear();
+        Assert.assertTrue(headers.isEmpty());
+        headers.add("X-Id", "3");
+        Assert.assertEquals("3", headers.getFirst("x-id"));
+    }
+
+    @Test
+    public void testModifyLazyThroughMap() throws Exception {
+        final String[] source = {"Content-Type", "text/plain", "Set-Cookie", "a=1"};
+        final HeaderMap headers = new LazyHeaderMap() {
+            @Override
+            protected int sourceSize() {
+                return source.length / 2;
+            }
+
+            @Override
+            protected String sourceName(int index) {
+                return source[index * 2];
+            }
+
+            @Override
+            protected String sourceValue(int index) {
+                return source[index * 2 + 1];
+            }
+        };
+        Assert.assertEquals(Arrays.asList("a=1"), headers.getMap().remove("set-cookie"));
+        Assert.assertNull(headers.getFirst("Set-Cookie"));
+        Assert.assertEquals("text/plain", headers.getFirst("Content-Type"));
+        Assert.assertEquals(1, headers.size());
+    }
+}
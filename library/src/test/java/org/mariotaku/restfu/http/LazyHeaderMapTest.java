@@ -0,0 +1,79 @@
+package org.mariotaku.restfu.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class LazyHeaderMapTest {
+
+    @Test
+    public void testMaterializeOnAdd() throws Exception {
+        final String[] source = {"Content-Type", "text/plain", "Set-Cookie", "a=1", "set-cookie", "b=2"};
+        final int[] reads = new int[1];
+        final LazyHeaderMap headers = new LazyHeaderMap() {
+            @Override
+            protected int sourceSize() {
+                return source.length / 2;
+            }
+
+            @Override
+            protected String sourceName(int index) {
+                reads[0]++;
+                return source[index * 2];
+            }
+
+            @Override
+            protected String sourceValue(int index) {
+                return source[index * 2 + 1];
+            }
+        };
+        Assert.assertEquals("text/plain", headers.getFirst("content-type"));
+        Assert.assertEquals(Arrays.asList("a=1", "b=2"), headers.get("SET-COOKIE"));
+        Assert.assertEquals(2, headers.names().size());
+        Assert.assertEquals(3, headers.size());
+
+        headers.add("X-Added", "1");
+        source[1] = "changed";
+        final int readsAfterAdd = reads[0];
+        Assert.assertEquals("text/plain", headers.getFirst("Content-Type"));
+        Assert.assertEquals("1", headers.getFirst("x-added"));
+        Assert.assertEquals(Arrays.asList("a=1", "b=2"), headers.get("Set-Cookie"));
+        Assert.assertEquals(4, headers.size());
+        Assert.assertEquals(readsAfterAdd, reads[0]);
+    }
+
+    @Test
+    public void testLookupWithoutCopy() throws Exception {
+        final String[] source = {"Content-Type", "text/plain", "Set-Cookie", "a=1", "set-cookie", "b=2"};
+        final LazyHeaderMap headers = new LazyHeaderMap() {
+            @Override
+            protected int sourceSize() {
+                return source.length / 2;
+            }
+
+            @Override
+            protected String sourceName(int index) {
+                return source[index * 2];
+            }
+
+            @Override
+            protected String sourceValue(int index) {
+                return source[index * 2 + 1];
+            }
+        };
+        Assert.assertEquals("text/plain", headers.getFirst("content-type"));
+        Assert.assertTrue(headers.containsKey("SET-COOKIE"));
+        Assert.assertEquals(Arrays.asList("a=1", "b=2"), new ArrayList<>(headers.getMap().get("set-cookie")));
+        Assert.assertEquals(2, headers.getMap().size());
+        // Lookups read source, nothing copied yet
+        source[1] = "changed";
+        Assert.assertEquals("changed", headers.getFirst("Content-Type"));
+
+        headers.getMap().remove("Content-Type");
+        source[3] = "changed";
+        Assert.assertNull(headers.getFirst("Content-Type"));
+        Assert.assertEquals(Arrays.asList("a=1", "b=2"), headers.get("Set-Cookie"));
+    }
+}
@@ -0,0 +1,56 @@
+package org.mariotaku.restfu.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.RestFuUtils;
+
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class QueryParserTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testParse() throws Exception {
+        final String query = "oauth_token=abc&text=%E4%B8%AD+%F0%9F%8C%B8&bad=%FF%41&flag&empty=&&gbk=%D6%D0&eq=a=b";
+        final List<String> parsed = parse(query, UTF_8);
+        Assert.assertEquals("[oauth_token, abc, text, 中 🌸, bad, " + URLDecoder.decode("%FF%41", "UTF-8")
+                + ", flag, null, empty, null, gbk, " + URLDecoder.decode("%D6%D0", "UTF-8") + ", eq, a=b]",
+                parsed.toString());
+        Assert.assertEquals("[key, 中]", parse("key=%D6%D0", Charset.forName("GBK")).toString());
+        try {
+            parse("key=%E4%B8%A", UTF_8);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testParseKeys() throws Exception {
+        final String[] values = new String[3];
+        QueryParser.parse("user_id=1&oauth%5Ftoken=a%2Bb&screen_name&other=x", UTF_8,
+                new String[]{"oauth_token", "user_id", "other"}, new QueryParser.KeyConsumer() {
+                    @Override
+                    public void consume(int keyIndex, String value) {
+                        values[keyIndex] = value;
+                    }
+                });
+        Assert.assertArrayEquals(new String[]{"a+b", "1", "x"}, values);
+    }
+
+    private static List<String> parse(String query, Charset charset) {
+        final List<String> list = new ArrayList<>();
+        QueryParser.parse(query, charset, new RestFuUtils.KeyValueConsumer() {
+            @Override
+            public void consume(String key, String value) {
+                list.add(key);
+                list.add(value);
+            }
+        });
+        return list;
+    }
+}
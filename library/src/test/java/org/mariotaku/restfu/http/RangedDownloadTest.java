@@ -0,0 +1,299 @@
+package org.mariotaku.restfu.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.http.mime.Body;
+import org.mariotaku.restfu.http.mime.SimpleBody;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class RangedDownloadTest {
+
+    @Test
+    public void testResume() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        File target = File.createTempFile("restfu", ".bin");
+        target.deleteOnExit();
+        RangeServer server = new RangeServer(data);
+        RangedDownload download = new RangedDownload(server, "http://example.com/file", target);
+        download.setConnections(4);
+        download.setMinSegmentSize(1000);
+
+        // Segment starting at 25000 breaks after some bytes
+        server.failAt = 25000;
+        try {
+            download.download();
+            Assert.fail();
+        } catch (IOException expected) {
+            // Ignore
+        }
+        Assert.assertTrue(download.getStateFile().exists());
+
+        server.failAt = -1;
+        server.ranges.clear();
+        Assert.assertEquals(data.length, download.download());
+        Assert.assertFalse(download.getStateFile().exists());
+        for (String range : server.ranges) {
+            Assert.assertFalse(range, range.startsWith("bytes=25000-"));
+        }
+        for (String ifRange : server.ifRanges) {
+            Assert.assertEquals("\"v1\"", ifRange);
+        }
+        Assert.assertTrue(Arrays.equals(data, readFile(target, data.length)));
+    }
+
+    @Test
+    public void testChangedFileRestarts() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        File target = File.createTempFile("restfu", ".bin");
+        target.deleteOnExit();
+        RangeServer server = new RangeServer(data);
+        RangedDownload download = new RangedDownload(server, "http://example.com/file", target);
+        download.setConnections(4);
+        download.setMinSegmentSize(1000);
+        server.failAt = 25000;
+        try {
+            download.download();
+            Assert.fail();
+        } catch (IOException expected) {
+            // Ignore
+        }
+
+        // Same length, different content
+        byte[] changed = new byte[data.length];
+        new Random(43).nextBytes(changed);
+        server.data = changed;
+        server.etag = "\"v2\"";
+        server.failAt = -1;
+        server.ranges.clear();
+        Assert.assertEquals(changed.length, download.download());
+        Assert.assertTrue(server.ranges.contains("bytes=0-24999"));
+        Assert.assertTrue(Arrays.equals(changed, readFile(target, changed.length)));
+    }
+
+    @Test
+    public void testChangedDuringDownload() throws Exception {
+        byte[] data = new byte[10000];
+        File target = File.createTempFile("restfu", ".bin");
+        target.deleteOnExit();
+        RangeServer server = new RangeServer(data);
+        // Probe sees old version, segment requests the new one
+        server.changeAfterProbe = true;
+        RangedDownload download = new RangedDownload(server, "http://example.com/file", target);
+        download.setMinSegmentSize(1000);
+        try {
+            download.download();
+            Assert.fail();
+        } catch (IOException expected) {
+            // If-Range mismatch, server sent whole file with 200
+        }
+    }
+
+    @Test
+    public void testNoValidatorRestarts() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        File target = File.createTempFile("restfu", ".bin");
+        target.deleteOnExit();
+        RangeServer server = new RangeServer(data);
+        server.etag = null;
+        RangedDownload download = new RangedDownload(server, "http://example.com/file", target);
+        download.setConnections(4);
+        download.setMinSegmentSize(1000);
+        server.failAt = 25000;
+        try {
+            download.download();
+            Assert.fail();
+        } catch (IOException expected) {
+            // Ignore
+        }
+        server.failAt = -1;
+        server.ranges.clear();
+        Assert.assertEquals(data.length, download.download());
+        Assert.assertTrue(server.ranges.contains("bytes=25000-49999"));
+        Assert.assertTrue(server.ifRanges.isEmpty());
+        Assert.assertTrue(Arrays.equals(data, readFile(target, data.length)));
+    }
+
+    @Test
+    public void testWrongContentRange() throws Exception {
+        byte[] data = new byte[10000];
+        File target = File.createTempFile("restfu", ".bin");
+        target.deleteOnExit();
+        RangeServer server = new RangeServer(data);
+        server.contentRangeOffset = 1;
+        RangedDownload download = new RangedDownload(server, "http://example.com/file", target);
+        download.setMinSegmentSize(1000);
+        try {
+            download.download();
+            Assert.fail();
+        } catch (IOException expected) {
+            Assert.assertTrue(expected.getMessage(), expected.getMessage().contains("Content-Range"));
+        }
+    }
+
+    private static byte[] readFile(File file, int length) throws IOException {
+        byte[] result = new byte[length];
+        try (DataInputStream is = new DataInputStream(new FileInputStream(file))) {
+            is.readFully(result);
+        }
+        return result;
+    }
+
+    @Test
+    public void testIdentityEncoding() throws Exception {
+        byte[] data = new byte[10000];
+        File target = File.createTempFile("restfu", ".bin");
+        target.deleteOnExit();
+        RangeServer server = new RangeServer(data);
+        RangedDownload download = new RangedDownload(server, "http://example.com/file", target);
+        MultiValueMap<String> headers = new MultiValueMap<>(true);
+        headers.add("Accept-Encoding", "gzip");
+        download.setHeaders(headers);
+        download.setConnections(2);
+        download.setMinSegmentSize(1000);
+        Assert.assertEquals(data.length, download.download());
+        // HEAD and every Range request
+        Assert.assertEquals(3, server.acceptEncodings.size());
+        for (List<String> acceptEncoding : server.acceptEncodings) {
+            Assert.assertEquals(Arrays.asList("identity"), acceptEncoding);
+        }
+    }
+
+    private static class RangeServer implements RestHttpClient {
+        volatile byte[] data;
+        volatile String etag = "\"v1\"";
+        volatile boolean changeAfterProbe;
+        volatile int contentRangeOffset;
+        final List<String> ranges = new CopyOnWriteArrayList<>();
+        final List<String> ifRanges = new CopyOnWriteArrayList<>();
+        final List<List<String>> acceptEncodings = new CopyOnWriteArrayList<>();
+        volatile long failAt = -1;
+
+        RangeServer(byte[] data) {
+            this.data = data;
+        }
+
+        @NotNull
+        @Override
+        public HttpCall newCall(@NotNull final HttpRequest request) {
+            return new HttpCall() {
+                @NotNull
+                @Override
+                public HttpResponse execute() throws IOException {
+                    acceptEncodings.add(request.getHeaders().get("Accept-Encoding"));
+                    final MultiValueMap<String> headers = new MultiValueMap<>(true);
+                    headers.add("Accept-Ranges", "bytes");
+                    headers.add("Content-Length", String.valueOf(data.length));
+                    if (etag != null) {
+                        headers.add("ETag", etag);
+                    }
+                    if ("HEAD".equals(request.getMethod())) {
+                        if (changeAfterProbe) {
+                            etag = "\"changed\"";
+                        }
+                        return response(200, headers, new byte[0]);
+                    }
+                    final String range = request.getHeaders().getFirst("Range");
+                    ranges.add(range);
+                    final String ifRange = request.getHeaders().getFirst("If-Range");
+                    if (ifRange != null) {
+                        ifRanges.add(ifRange);
+                        if (!ifRange.equals(etag)) return response(200, headers, data);
+                    }
+                    final String[] segments = range.substring("bytes=".length()).split("-");
+                    final int start = Integer.parseInt(segments[0]), end = Integer.parseInt(segments[1]);
+                    headers.add("Content-Range", "bytes " + (start + contentRangeOffset) + "-" + end + "/"
+                            + data.length);
+                    InputStream is = new ByteArrayInputStream(data, start, end - start + 1);
+                    if (start == failAt) {
+                        is = new BreakingInputStream(is);
+                    }
+                    return response(206, headers, is);
+                }
+
+                @Override
+                public void enqueue(@NotNull HttpCallback callback) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void cancel() {
+
+                }
+
+                @Override
+                public boolean isCanceled() {
+                    return false;
+                }
+
+                @Override
+                public void close() throws IOException {
+
+                }
+            };
+        }
+
+        @Override
+        public void enqueue(@NotNull HttpCall call, @NotNull HttpCallback callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static HttpResponse response(int status, MultiValueMap<String> headers, byte[] body)
+                throws IOException {
+            return response(status, headers, new ByteArrayInputStream(body));
+        }
+
+        private static HttpResponse response(final int status, final MultiValueMap<String> headers,
+                InputStream stream) throws IOException {
+            final Body body = new SimpleBody(null, null, -1, stream);
+            return new HttpResponse() {
+                @Override
+                public int getStatus() {
+                    return status;
+                }
+
+                @Override
+                public MultiValueMap<String> getHeaders() {
+                    return headers;
+                }
+
+                @Override
+                public Body getBody() {
+                    return body;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    body.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns small chunks, and throws after 10000 bytes
+     */
+    private static class BreakingInputStream extends FilterInputStream {
+        private int total;
+
+        BreakingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            if (total >= 10000) throw new IOException("Connection reset");
+            final int read = super.read(b, off, Math.min(len, 4096));
+            total += read;
+            return read;
+        }
+    }
+}
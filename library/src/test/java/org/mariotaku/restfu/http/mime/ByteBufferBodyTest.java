@@ -0,0 +1,60 @@
+package org.mariotaku.restfu.http.mime;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.commons.io.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+public class ByteBufferBodyTest {
+
+    @Test
+    public void testDirectBuffer() throws Exception {
+        byte[] data = newData(20000);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        buffer.position(100);
+        Body body = SimpleBody.wrap(buffer);
+        Assert.assertTrue(body instanceof ByteBufferBody);
+        Assert.assertEquals(data.length - 100, body.length());
+        byte[] expected = Arrays.copyOfRange(data, 100, data.length);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        body.writeTo(os);
+        Assert.assertArrayEquals(expected, os.toByteArray());
+        os.reset();
+        StreamUtils.copy(body.stream(), os, null, null);
+        Assert.assertArrayEquals(expected, os.toByteArray());
+        // Position of original buffer is untouched
+        Assert.assertEquals(100, buffer.position());
+    }
+
+    @Test
+    public void testMappedFileRegion() throws Exception {
+        byte[] data = newData(100000);
+        File file = File.createTempFile("restfu", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+        MappedFileBody body = new MappedFileBody(file, 30000, 40000);
+        Assert.assertEquals(40000, body.length());
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Assert.assertEquals(40000, body.writeTo(Channels.newChannel(os)));
+        body.close();
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, 30000, 70000), os.toByteArray());
+    }
+
+    private static byte[] newData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+}
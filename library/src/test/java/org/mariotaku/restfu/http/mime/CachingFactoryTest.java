@@ -0,0 +1,40 @@
+package org.mariotaku.restfu.http.mime;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.RestConverter;
+import org.mariotaku.restfu.http.HttpResponse;
+
+import java.lang.reflect.Type;
+
+public class CachingFactoryTest {
+
+    @Test
+    public void testResolveOnce() throws Exception {
+        CountingConverterFactory counting = new CountingConverterFactory();
+        RestConverter.Factory<Exception> factory = RestConverter.CachingFactory.wrap(counting);
+        RestConverter<?, Body, Exception> converter = factory.forRequest(String.class);
+        Assert.assertSame(converter, factory.forRequest(String.class));
+        factory.forRequest(Integer.class);
+        Assert.assertEquals(2, counting.requestCount);
+        Assert.assertSame(factory, RestConverter.CachingFactory.wrap(factory));
+    }
+
+    private static class CountingConverterFactory extends RestConverter.SimpleFactory<Exception> {
+        int requestCount;
+
+        @NotNull
+        @Override
+        public RestConverter<HttpResponse, ?, Exception> forResponse(@NotNull Type toType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NotNull
+        @Override
+        public RestConverter<?, Body, Exception> forRequest(@NotNull Type fromType) throws RestConverter.ConvertException {
+            requestCount++;
+            return super.forRequest(fromType);
+        }
+    }
+}
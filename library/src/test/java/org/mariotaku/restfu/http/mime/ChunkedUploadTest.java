@@ -0,0 +1,107 @@
+package org.mariotaku.restfu.http.mime;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+public class ChunkedUploadTest {
+
+    @Test
+    public void testUpload() throws Exception {
+        byte[] data = new byte[1000000];
+        new Random(42).nextBytes(data);
+        File file = File.createTempFile("restfu", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+        ChunkedUpload upload = new ChunkedUpload(file, 64 * 1024);
+        upload.setConcurrency(4);
+        upload.setMaxRetries(2);
+        final AtomicLong progress = new AtomicLong();
+        upload.setProgressListener(new ChunkedUpload.ProgressListener() {
+            @Override
+            public void onProgress(long uploaded, long total) {
+                progress.set(uploaded);
+            }
+        });
+        StandInServer server = new StandInServer();
+        Assert.assertEquals(crc32(data), (long) upload.upload(server, IOException.class));
+        Assert.assertEquals(16, upload.getChunkCount());
+        Assert.assertEquals(data.length, progress.get());
+        Assert.assertTrue(server.maxConcurrent.get() <= 4);
+        Assert.assertTrue(server.failed.get());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        File file = File.createTempFile("restfu", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(new byte[1000]);
+        }
+        ChunkedUpload upload = new ChunkedUpload(file, 100);
+        upload.setConcurrency(2);
+        try {
+            upload.upload(new StandInServer(), IOException.class);
+            Assert.fail();
+        } catch (IOException e) {
+            // Chunk 3 fails without retries, handler exception is thrown as is
+            Assert.assertEquals("Connection reset", e.getMessage());
+        }
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+
+    /**
+     * Reassembles chunks by their offsets, first attempt of chunk 3 fails after receiving
+     */
+    private static class StandInServer implements ChunkedUpload.Handler<byte[], Long, IOException> {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        @Override
+        public byte[] init(long length, int chunkCount) {
+            return new byte[(int) length];
+        }
+
+        @Override
+        public void append(byte[] session, int index, FileBody chunk) throws IOException {
+            int current = concurrent.incrementAndGet();
+            try {
+                while (true) {
+                    int max = maxConcurrent.get();
+                    if (current <= max || maxConcurrent.compareAndSet(max, current)) break;
+                }
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                chunk.writeTo(os);
+                Assert.assertEquals(chunk.length(), os.size());
+                if (index == 3 && failed.compareAndSet(false, true)) {
+                    throw new IOException("Connection reset");
+                }
+                System.arraycopy(os.toByteArray(), 0, session, (int) chunk.offset(), os.size());
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Long complete(byte[] session) {
+            return crc32(session);
+        }
+    }
+}
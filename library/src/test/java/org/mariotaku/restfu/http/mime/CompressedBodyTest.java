@@ -0,0 +1,56 @@
+package org.mariotaku.restfu.http.mime;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.commons.io.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+public class CompressedBodyTest {
+
+    @Test
+    public void testGzip() throws Exception {
+        assertRoundTrip(CompressedBody.GZIP);
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        assertRoundTrip(CompressedBody.DEFLATE);
+    }
+
+    private static void assertRoundTrip(String encoding) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("{\"id\":").append(i).append(",\"text\":\"Hello world!\"},");
+        }
+        String json = sb.toString();
+        Charset utf8 = Charset.forName("UTF-8");
+        CompressedBody body = new CompressedBody(new StringBody(json, utf8), encoding);
+        Assert.assertEquals(encoding, body.contentEncoding());
+        Assert.assertEquals(-1, body.length());
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        long length = body.writeTo(written);
+        Assert.assertEquals(written.size(), length);
+        Assert.assertTrue(written.size() < json.length() / 10);
+        Assert.assertEquals(json, decompress(encoding, written.toByteArray(), utf8));
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        StreamUtils.copy(new CompressedBody(new StringBody(json, utf8), encoding).stream(), streamed, null, null);
+        Assert.assertEquals(json, decompress(encoding, streamed.toByteArray(), utf8));
+        body.close();
+    }
+
+    private static String decompress(String encoding, byte[] data, Charset charset) throws Exception {
+        InputStream is = new ByteArrayInputStream(data);
+        is = CompressedBody.GZIP.equals(encoding) ? new GZIPInputStream(is) : new InflaterInputStream(is);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        StreamUtils.copy(is, os, null, null);
+        return new String(os.toByteArray(), charset);
+    }
+}
@@ -0,0 +1,53 @@
+package org.mariotaku.restfu.http.mime;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.http.MultiValueMap;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+public class FormBodyTest {
+
+    @Test
+    public void testEncode() throws Exception {
+        MultiValueMap<String> forms = new MultiValueMap<>();
+        forms.add("status", "Hello world!");
+        forms.add("flag", null);
+        FormBody body = new FormBody(forms);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Assert.assertEquals(body.length(), body.writeTo(os));
+        String encoded = os.toString("US-ASCII");
+        Assert.assertEquals(body.length(), encoded.length());
+        Assert.assertTrue(encoded, encoded.contains("status=Hello+world%21"));
+        Assert.assertTrue(encoded, encoded.contains("flag"));
+    }
+
+    @Test
+    public void testLargeWrappedValue() throws Exception {
+        char[] chars = new char[20000];
+        Arrays.fill(chars, '中');
+        MultiValueMap<Body> params = new MultiValueMap<>();
+        params.add("text", new StringBody(new String(chars), Charset.forName("UTF-8")));
+        Body body = FormBody.wrap(params);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        body.writeTo(os);
+        // Each character is 3 bytes in UTF-8, each byte encoded as %XX
+        Assert.assertEquals("text=".length() + 20000 * 9, os.size());
+        Assert.assertEquals(os.size(), body.length());
+        Assert.assertTrue(os.toString("US-ASCII").startsWith("text=%E4%B8%AD%E4%B8%AD"));
+    }
+
+    @Test
+    public void testWrappedParamsChanged() throws Exception {
+        MultiValueMap<Body> params = new MultiValueMap<>();
+        params.add("a", new StringBody("1", Charset.forName("UTF-8")));
+        Body body = FormBody.wrap(params);
+        Assert.assertEquals("a=1".length(), body.length());
+        params.add("b", new StringBody("2", Charset.forName("UTF-8")));
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Assert.assertEquals(body.length(), body.writeTo(os));
+        Assert.assertEquals(os.size(), body.length());
+    }
+}
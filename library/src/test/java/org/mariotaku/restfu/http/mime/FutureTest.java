@@ -0,0 +1,117 @@
+package org.mariotaku.restfu.http.mime;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.RestAPIFactory;
+import org.mariotaku.restfu.RestConverter;
+import org.mariotaku.restfu.RestFuture;
+import org.mariotaku.restfu.annotation.method.GET;
+import org.mariotaku.restfu.annotation.param.Query;
+import org.mariotaku.restfu.http.*;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public class FutureTest {
+
+    @Test
+    public void testResult() throws Exception {
+        final Thread[] converterThread = new Thread[1];
+        RestAPIFactory<HttpRequestInfoException> factory = getFactory(new EnqueueRestHttpClient());
+        factory.setRestConverterFactory(new RestConverter.SimpleFactory<HttpRequestInfoException>() {
+            @NotNull
+            @Override
+            public RestConverter<HttpResponse, ?, HttpRequestInfoException> forResponse(@NotNull Type toType) {
+                return new RestConverter<HttpResponse, String, HttpRequestInfoException>() {
+                    @NotNull
+                    @Override
+                    public String convert(@NotNull HttpResponse from) {
+                        converterThread[0] = Thread.currentThread();
+                        return "HTTP " + from.getStatus();
+                    }
+                };
+            }
+        });
+        factory.setConverterExecutor(new Executor() {
+            @Override
+            public void execute(@NotNull Runnable command) {
+                new Thread(command, "converter").start();
+            }
+        });
+        RestFuture<String> future = factory.build(FutureInterface.class).testFuture("value");
+        Assert.assertEquals("HTTP 200", future.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("converter", converterThread[0].getName());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        RestAPIFactory<HttpRequestInfoException> factory = getFactory(new DirectThrowRestHttpClient());
+        factory.setRestConverterFactory(new NullConverterFactory<HttpRequestInfoException>());
+        RestFuture<String> future = factory.build(FutureInterface.class).testFuture("value");
+        Assert.assertTrue(future.isDone());
+        try {
+            future.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            HttpRequestInfoException cause = (HttpRequestInfoException) e.getCause();
+            Assert.assertEquals("https://example.com/test/future?id=value", cause.request.getUrl());
+        }
+    }
+
+    private RestAPIFactory<HttpRequestInfoException> getFactory(RestHttpClient client) {
+        RestAPIFactory<HttpRequestInfoException> factory = new RestAPIFactory<>();
+        factory.setEndpoint(new Endpoint("https://example.com"));
+        factory.setExceptionFactory(new HttpRequestInfoExceptionFactory());
+        factory.setHttpClient(client);
+        return factory;
+    }
+
+    public interface FutureInterface {
+        @GET("/test/future")
+        RestFuture<String> testFuture(@Query("id") String id);
+    }
+
+    /**
+     * Responds on another thread, like an I/O thread of real clients
+     */
+    private static class EnqueueRestHttpClient implements RestHttpClient {
+        @NotNull
+        @Override
+        public HttpCall newCall(@NotNull HttpRequest request) {
+            return new DirectThrowCall();
+        }
+
+        @Override
+        public void enqueue(@NotNull HttpCall call, @NotNull final HttpCallback callback) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    callback.response(new HttpResponse() {
+                        @Override
+                        public int getStatus() {
+                            return 200;
+                        }
+
+                        @Override
+                        public MultiValueMap<String> getHeaders() {
+                            return new MultiValueMap<>(true);
+                        }
+
+                        @Override
+                        public Body getBody() {
+                            return null;
+                        }
+
+                        @Override
+                        public void close() throws IOException {
+                        }
+                    });
+                }
+            }, "io").start();
+        }
+    }
+}
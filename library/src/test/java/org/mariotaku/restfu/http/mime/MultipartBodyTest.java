@@ -0,0 +1,105 @@
+package org.mariotaku.restfu.http.mime;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.http.ContentType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class MultipartBodyTest {
+
+    @Test
+    public void testStream() throws Exception {
+        File file = newDataFile();
+        MultipartBody body = newBody(file);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        try (InputStream is = body.stream()) {
+            final byte[] buf = new byte[1000];
+            int read;
+            while ((read = is.read(buf)) != -1) {
+                streamed.write(buf, 0, read);
+            }
+        }
+        body.close();
+        Assert.assertEquals(expected(file, body), streamed.toString("ISO-8859-1"));
+        Assert.assertEquals(body.length(), streamed.size());
+    }
+
+    @Test
+    public void testWriteToSocketChannel() throws Exception {
+        File file = newDataFile();
+        MultipartBody body = newBody(file);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (final ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+            Future<byte[]> received = executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    ByteArrayOutputStream os = new ByteArrayOutputStream();
+                    try (SocketChannel channel = server.accept()) {
+                        ByteBuffer buffer = ByteBuffer.allocate(8192);
+                        while (channel.read(buffer) != -1) {
+                            os.write(buffer.array(), 0, buffer.position());
+                            buffer.clear();
+                        }
+                    }
+                    return os.toByteArray();
+                }
+            });
+            long written;
+            try (SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress())) {
+                written = body.writeTo(client);
+            }
+            body.close();
+            byte[] bytes = received.get();
+            Assert.assertEquals(body.length(), written);
+            Assert.assertEquals(expected(file, body), new String(bytes, "ISO-8859-1"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static File newDataFile() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        File file = File.createTempFile("restfu", ".png");
+        file.deleteOnExit();
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+        return file;
+    }
+
+    /**
+     * Output of {@link MultipartBody#writeTo(java.io.OutputStream)}, with boundary of given body
+     */
+    private static String expected(File file, MultipartBody body) throws Exception {
+        MultipartBody reference = newBody(file);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        reference.writeTo(os);
+        reference.close();
+        return os.toString("ISO-8859-1").replace(reference.contentType().parameter("boundary"),
+                body.contentType().parameter("boundary"));
+    }
+
+    private static MultipartBody newBody(File file) {
+        MultipartBody body = new MultipartBody();
+        body.add("status", new StringBody("Hello world!", Charset.forName("UTF-8")));
+        body.add("media", new FileBody(file, ContentType.parse("image/png")));
+        return body;
+    }
+}
@@ -0,0 +1,41 @@
+package org.mariotaku.restfu.http.mime;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.RestAPIFactory;
+import org.mariotaku.restfu.http.Endpoint;
+
+public class PathTest {
+
+    @Test
+    public void testPath() {
+        TestInterface ti = getTestInterface();
+        try {
+            ti.testPath(1, "a b");
+            Assert.fail();
+        } catch (HttpRequestInfoException e) {
+            Assert.assertEquals("https://example.com/test/path/1/a%20b?static=value", e.request.getUrl());
+        }
+    }
+
+    @Test
+    public void testEncodedPath() {
+        TestInterface ti = getTestInterface();
+        try {
+            ti.testEncodedPath("a%20b");
+            Assert.fail();
+        } catch (HttpRequestInfoException e) {
+            Assert.assertEquals("https://example.com/test/path/a%20b", e.request.getUrl());
+        }
+    }
+
+    private TestInterface getTestInterface() {
+        RestAPIFactory<HttpRequestInfoException> factory = new RestAPIFactory<>();
+        factory.setEndpoint(new Endpoint("https://example.com"));
+        factory.setExceptionFactory(new HttpRequestInfoExceptionFactory());
+        factory.setRestConverterFactory(new NullConverterFactory<HttpRequestInfoException>());
+        factory.setHttpClient(new DirectThrowRestHttpClient());
+        return factory.build(TestInterface.class);
+    }
+
+}
@@ -4,6 +4,8 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mariotaku.restfu.RestAPIFactory;
 import org.mariotaku.restfu.http.Endpoint;
+import org.mariotaku.restfu.http.SimpleValueMap;
+import org.mariotaku.restfu.http.ValueMap;
 
 /**
  * Created by mariotaku on 2017/3/25.
@@ -56,8 +58,29 @@ public class QueryTest {
         }
     }
 
+    @Test
+    public void testConstantQuery() throws Exception {
+        SimpleValueMap constantPool = new SimpleValueMap();
+        constantPool.put("pool_key", "pooled value");
+        TestInterface ti = getTestInterface(constantPool);
+        try {
+            ti.testConstantQuery();
+            Assert.fail();
+        } catch (HttpRequestInfoException e) {
+            String url = e.request.getUrl();
+            Assert.assertTrue(url, url.contains("literal=a+b"));
+            Assert.assertTrue(url, url.contains("pooled=pooled+value"));
+            Assert.assertFalse(url, url.contains("missing"));
+        }
+    }
+
     private TestInterface getTestInterface() {
+        return getTestInterface(null);
+    }
+
+    private TestInterface getTestInterface(ValueMap constantPool) {
         RestAPIFactory<HttpRequestInfoException> factory = new RestAPIFactory<>();
+        factory.setConstantPool(constantPool);
         factory.setEndpoint(new Endpoint("https://example.com"));
         factory.setExceptionFactory(new HttpRequestInfoExceptionFactory());
         factory.setRestConverterFactory(new NullConverterFactory<HttpRequestInfoException>());
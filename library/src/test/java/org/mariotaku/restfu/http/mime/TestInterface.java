@@ -4,7 +4,10 @@ import org.mariotaku.restfu.annotation.method.GET;
 import org.mariotaku.restfu.annotation.method.POST;
 import org.mariotaku.restfu.annotation.param.BooleanEncoding;
 import org.mariotaku.restfu.annotation.param.Header;
+import org.mariotaku.restfu.annotation.param.KeyValue;
 import org.mariotaku.restfu.annotation.param.Param;
+import org.mariotaku.restfu.annotation.param.Path;
+import org.mariotaku.restfu.annotation.param.Queries;
 import org.mariotaku.restfu.annotation.param.Query;
 import org.mariotaku.restfu.http.BodyType;
 
@@ -32,6 +35,17 @@ public interface TestInterface {
     void testBooleanKeyIfTrueQuery(@Param(value = "name", booleanEncoding = BooleanEncoding.KEY_IF_TRUE) boolean value)
             throws HttpRequestInfoException;
 
+    @GET("/test/query")
+    @Queries({@KeyValue(key = "literal", value = "a b"), @KeyValue(key = "pooled", valueKey = "pool_key"),
+            @KeyValue(key = "missing", valueKey = "missing_key")})
+    void testConstantQuery() throws HttpRequestInfoException;
+
+    @GET("/test/path/{id}/{name}?static=value")
+    void testPath(@Path("id") long id, @Path("name") String name) throws HttpRequestInfoException;
+
+    @GET("/test/path/{id}")
+    void testEncodedPath(@Path(value = "id", encoded = true) String id) throws HttpRequestInfoException;
+
     @POST("/test/param")
     @BodyType(BodyType.FORM)
     void testStringArrayParam(@Param("array") String[] array) throws HttpRequestInfoException;
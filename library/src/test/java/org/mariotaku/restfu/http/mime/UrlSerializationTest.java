@@ -1,5 +1,7 @@
 package org.mariotaku.restfu.http.mime;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 
 import static org.junit.Assert.assertEquals;
@@ -13,4 +15,50 @@ public class UrlSerializationTest {
     public void testSerialize() throws Exception {
         assertEquals("ABC+%2B", UrlSerialization.QUERY.serialize("ABC +", Charset.forName("UTF-8")));
     }
-}
\ No newline at end of file
+
+    @org.junit.Test
+    public void testSerializeUtf8() throws Exception {
+        final Charset utf8 = Charset.forName("UTF-8");
+        // Latin-1, CJK, emoji and an unpaired surrogate
+        final String str = "a~b*c é中🌸\uD800x";
+        assertEquals(charsetEncode(str, utf8, "_-!.~'()*", false), UrlSerialization.PATH.serialize(str, utf8));
+        assertEquals(charsetEncode(str, utf8, "-._", true), UrlSerialization.QUERY.serialize(str, utf8));
+        assertEquals("%E4%B8%AD+%F0%9F%8C%B8", UrlSerialization.QUERY.serialize("中 🌸", utf8));
+    }
+
+    @org.junit.Test
+    public void testSerializeOtherCharset() throws Exception {
+        final Charset gbk = Charset.forName("GBK");
+        assertEquals("a%D6%D0+b", UrlSerialization.QUERY.serialize("a中 b", gbk));
+    }
+
+    @org.junit.Test
+    public void testCustomAppendEscape() throws Exception {
+        final UrlSerialization keepAll = new UrlSerialization() {
+            @Override
+            protected void appendEscape(int codePoint, Charset charset, StringBuilder target) {
+                target.appendCodePoint(codePoint);
+            }
+        };
+        assertEquals("a b/中", keepAll.serialize("a b/中", Charset.forName("UTF-8")));
+    }
+
+    private static String charsetEncode(String str, Charset charset, String safeChars, boolean spaceAsPlus) {
+        final StringBuilder sb = new StringBuilder();
+        for (int offset = 0; offset < str.length(); ) {
+            final int codePoint = str.codePointAt(offset);
+            if (codePoint < 0x80 && (Character.isLetterOrDigit(codePoint) || safeChars.indexOf(codePoint) >= 0)) {
+                sb.appendCodePoint(codePoint);
+            } else if (codePoint == ' ' && spaceAsPlus) {
+                sb.append('+');
+            } else {
+                final ByteBuffer encoded = charset.encode(CharBuffer.wrap(Character.toChars(codePoint)));
+                while (encoded.hasRemaining()) {
+                    sb.append(String.format("%%%02X", encoded.get() & 0xFF));
+                }
+            }
+            offset += Character.charCount(codePoint);
+        }
+        return sb.toString();
+    }
+}
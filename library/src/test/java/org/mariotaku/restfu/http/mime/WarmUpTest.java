@@ -0,0 +1,40 @@
+package org.mariotaku.restfu.http.mime;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.RestAPIFactory;
+import org.mariotaku.restfu.annotation.method.GET;
+import org.mariotaku.restfu.annotation.param.Path;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+public class WarmUpTest {
+
+    @Test
+    public void testWarmUp() throws Exception {
+        Map<Method, Long> timings = getFactory().warmUp(TestInterface.class);
+        Assert.assertEquals(TestInterface.class.getMethods().length, timings.size());
+    }
+
+    @Test
+    public void testUnboundPath() throws Exception {
+        try {
+            getFactory().warmUp(UnboundPathInterface.class);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Path key {id} not bound", e.getMessage());
+        }
+    }
+
+    private RestAPIFactory<HttpRequestInfoException> getFactory() {
+        RestAPIFactory<HttpRequestInfoException> factory = new RestAPIFactory<>();
+        factory.setRestConverterFactory(new NullConverterFactory<HttpRequestInfoException>());
+        return factory;
+    }
+
+    interface UnboundPathInterface {
+        @GET("/test/path/{id}")
+        void testPath(@Path("name") String name);
+    }
+}
@@ -0,0 +1,45 @@
+package org.mariotaku.restfu.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.commons.io.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ContentDecodersTest {
+
+    @Test
+    public void testStackedEncodings() throws Exception {
+        byte[] data = "Hello world! Hello world! Hello world!".getBytes("UTF-8");
+        // Content-Encoding: gzip, deflate means gzip applied first
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream os = new GZIPOutputStream(gzip)) {
+            os.write(data);
+        }
+        ByteArrayOutputStream deflate = new ByteArrayOutputStream();
+        try (OutputStream os = new DeflaterOutputStream(deflate)) {
+            os.write(gzip.toByteArray());
+        }
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        StreamUtils.copy(ContentDecoders.decode("gzip, identity, Deflate",
+                new ByteArrayInputStream(deflate.toByteArray())), decoded, null, null);
+        Assert.assertArrayEquals(data, decoded.toByteArray());
+        Assert.assertFalse(ContentDecoders.isEncoded("identity"));
+        Assert.assertEquals("deflate, gzip", ContentDecoders.getAcceptEncoding());
+    }
+
+    @Test
+    public void testUnsupportedEncoding() throws Exception {
+        try {
+            ContentDecoders.decode("gzip, unknown", new ByteArrayInputStream(new byte[0]));
+            Assert.fail();
+        } catch (IOException expected) {
+            // Ignore
+        }
+    }
+}
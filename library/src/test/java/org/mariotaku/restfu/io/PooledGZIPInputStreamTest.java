@@ -0,0 +1,71 @@
+package org.mariotaku.restfu.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.commons.io.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+public class PooledGZIPInputStreamTest {
+
+    @Test
+    public void testConcatenatedMembers() throws Exception {
+        byte[] first = newData(100000, 1), second = newData(5000, 2);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        gzip.write(gzip(first));
+        gzip.write(gzip(second));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        // Decode twice, second time with pooled inflater
+        for (int i = 0; i < 2; i++) {
+            Assert.assertArrayEquals(expected.toByteArray(), decode(gzip.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testCorruptTrailer() throws Exception {
+        byte[] gzip = gzip(newData(1000, 3));
+        gzip[gzip.length - 5]++;
+        try {
+            decode(gzip);
+            Assert.fail();
+        } catch (ZipException expected) {
+            // Ignore
+        }
+    }
+
+    private static byte[] decode(byte[] gzip) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (InputStream is = new PooledGZIPInputStream(new ByteArrayInputStream(gzip))) {
+            StreamUtils.copy(is, os, null, null);
+        }
+        return os.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(os)) {
+            gzip.write(data);
+        }
+        return os.toByteArray();
+    }
+
+    private static byte[] newData(int length, long seed) {
+        // Compressible, but not trivially
+        byte[] words = new byte[64];
+        new Random(seed).nextBytes(words);
+        byte[] data = new byte[length];
+        Random random = new Random(seed);
+        for (int i = 0; i < length; i++) {
+            data[i] = words[random.nextInt(8)];
+        }
+        return data;
+    }
+}
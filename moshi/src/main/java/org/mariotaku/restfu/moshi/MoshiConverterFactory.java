@@ -55,10 +55,10 @@ public class MoshiConverterFactory<E extends Exception> extends RestConverter.Si
     }
 
     @NotNull
-    private Object parseOrThrow(@NotNull HttpResponse response, @NotNull Type type)
+    private Object parseOrThrow(@NotNull HttpResponse response, @NotNull JsonAdapter<?> adapter)
             throws IOException, RestConverter.ConvertException {
         try {
-            final Object parsed = adapterFor(type).fromJson(Okio.buffer(Okio.source(response.getBody().stream())));
+            final Object parsed = adapter.fromJson(Okio.buffer(Okio.source(response.getBody().stream())));
             if (parsed == null) {
                 throw new IOException("Empty data");
             }
@@ -71,6 +71,7 @@ public class MoshiConverterFactory<E extends Exception> extends RestConverter.Si
     private static class JsonResponseConverter<E extends Exception> implements RestConverter<HttpResponse, Object, E> {
         private final MoshiConverterFactory<E> factory;
         private final Type type;
+        private volatile JsonAdapter<Object> adapter;
 
         JsonResponseConverter(MoshiConverterFactory<E> factory, Type type) {
             this.factory = factory;
@@ -80,15 +81,24 @@ public class MoshiConverterFactory<E extends Exception> extends RestConverter.Si
         @NotNull
         @Override
         public Object convert(@NotNull HttpResponse httpResponse) throws IOException, ConvertException, E {
-            final Object object = factory.parseOrThrow(httpResponse, type);
+            final Object object = factory.parseOrThrow(httpResponse, adapter());
             factory.processParsedObject(object, httpResponse);
             return object;
         }
+
+        private JsonAdapter<Object> adapter() {
+            JsonAdapter<Object> adapter = this.adapter;
+            if (adapter == null) {
+                this.adapter = adapter = factory.adapterFor(type);
+            }
+            return adapter;
+        }
     }
 
     private static class JsonRequestConverter<E extends Exception> implements RestConverter<Object, Body, E> {
         private final MoshiConverterFactory<E> factory;
         private final Type type;
+        private volatile JsonAdapter<Object> adapter;
 
         JsonRequestConverter(MoshiConverterFactory<E> factory, Type type) {
             this.factory = factory;
@@ -98,8 +108,16 @@ public class MoshiConverterFactory<E extends Exception> extends RestConverter.Si
         @NotNull
         @Override
         public Body convert(@NotNull Object request) {
-            final String json = factory.adapterFor(type).toJson(request);
+            final String json = adapter().toJson(request);
             return new StringBody(json, ContentType.parse("application/json"));
         }
+
+        private JsonAdapter<Object> adapter() {
+            JsonAdapter<Object> adapter = this.adapter;
+            if (adapter == null) {
+                this.adapter = adapter = factory.adapterFor(type);
+            }
+            return adapter;
+        }
     }
 }
@@ -27,35 +27,8 @@ import java.util.*;
 @SuppressWarnings("unused")
 public class OAuthAuthorization implements Authorization {
 
-    private static final UrlSerialization OAUTH_ENCODING = new UrlSerialization() {
-        final BitSet allowedSet;
-
-        {
-            allowedSet = new BitSet(0xFF);
-            allowedSet.set('-', true);
-            allowedSet.set('.', true);
-            allowedSet.set('_', true);
-            allowedSet.set('~', true);
-            for (int i = '0'; i <= '9'; i++) {
-                allowedSet.set(i, true);
-            }
-            for (int i = 'A'; i <= 'Z'; i++) {
-                allowedSet.set(i, true);
-            }
-            for (int i = 'a'; i <= 'z'; i++) {
-                allowedSet.set(i, true);
-            }
-        }
-
-        @Override
-        protected void appendEscape(int codePoint, Charset charset, StringBuilder target) {
-            if (codePoint <= 0xFF && allowedSet.get(codePoint)) {
-                target.appendCodePoint(codePoint);
-            } else {
-                percentEncode(codePoint, charset, target);
-            }
-        }
-    };
+    // RFC 5849 section 3.6, unreserved characters are kept
+    private static final UrlSerialization OAUTH_ENCODING = new UrlSerialization.SafeChars("-._~", false);
 
     private static final String DEFAULT_ENCODING = "UTF-8";
     private static final Charset DEFAULT_CHARSET = Charset.forName(DEFAULT_ENCODING);
@@ -130,7 +103,8 @@ public class OAuthAuthorization implements Authorization {
         }
         final OAuthEndpoint oauthEndpoint = (OAuthEndpoint) endpoint;
         final String method = request.getMethod();
-        final String url = Endpoint.constructUrl(oauthEndpoint.getSignUrl(), request);
+        // Signature only uses URL without queries, queries are signed as parameters
+        final String url = Endpoint.constructBaseUrl(oauthEndpoint.getSignUrl(), request);
         final MultiValueMap<String> queries = request.getQueries();
         final MultiValueMap<Body> params = request.getParams();
         final List<Pair<String, String>> encodeParams = generateOAuthParams(oauthToken, oauthTokenSecret,
@@ -205,11 +179,10 @@ public class OAuthAuthorization implements Authorization {
             final Mac mac = Mac.getInstance("HmacSHA1");
             SecretKeySpec secret = new SecretKeySpec(signingKey.toString().getBytes(), mac.getAlgorithm());
             mac.init(secret);
-            String urlNoQuery = url.indexOf('?') != -1 ? url.substring(0, url.indexOf('?')) : url;
             final StringBuilder baseString = new StringBuilder();
             encodeOAuth(method, baseString);
             baseString.append('&');
-            encodeOAuth(urlNoQuery, baseString);
+            encodeOAuth(url, baseString);
             baseString.append('&');
             encodeOAuth(paramBuilder.toString(), baseString);
             final byte[] signature = mac.doFinal(baseString.toString().getBytes(DEFAULT_ENCODING));
@@ -2,7 +2,7 @@ package org.mariotaku.restfu.oauth;
 
 
 import org.jetbrains.annotations.NotNull;
-import org.mariotaku.restfu.RestFuUtils;
+import org.mariotaku.restfu.http.QueryParser;
 import org.mariotaku.restfu.http.ValueMap;
 
 import java.nio.charset.Charset;
@@ -13,6 +13,9 @@ import java.text.ParseException;
  */
 public class OAuthToken implements ValueMap {
 
+    // Indices are matched in constructor
+    private static final String[] TOKEN_KEYS = {"oauth_token", "oauth_token_secret", "user_id", "screen_name"};
+
     private String screenName;
     private String userId;
 
@@ -40,24 +43,24 @@ public class OAuthToken implements ValueMap {
     }
 
     public OAuthToken(String body, Charset charset) throws ParseException {
-        RestFuUtils.parseQuery(body, charset.name(), new RestFuUtils.KeyValueConsumer() {
+        QueryParser.parse(body, charset, TOKEN_KEYS, new QueryParser.KeyConsumer() {
 
             @Override
-            public void consume(String key, String value) {
-                switch (key) {
-                    case "oauth_token": {
+            public void consume(int keyIndex, String value) {
+                switch (keyIndex) {
+                    case 0: {
                         oauthToken = value;
                         break;
                     }
-                    case "oauth_token_secret": {
+                    case 1: {
                         oauthTokenSecret = value;
                         break;
                     }
-                    case "user_id": {
+                    case 2: {
                         userId = value;
                         break;
                     }
-                    case "screen_name": {
+                    case 3: {
                         screenName = value;
                         break;
                     }
@@ -21,8 +21,10 @@ import okio.BufferedSink;
 import okio.Okio;
 import org.jetbrains.annotations.NotNull;
 import org.mariotaku.commons.collection.Pair;
+import org.mariotaku.restfu.RestFuUtils;
 import org.mariotaku.restfu.http.*;
 import org.mariotaku.restfu.http.mime.Body;
+import org.mariotaku.restfu.io.ContentDecoders;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -47,14 +49,26 @@ public class OkHttpRestClient implements RestHttpClient {
     @Override
     public HttpCall newCall(@NotNull final HttpRequest httpRequest) {
         final Request.Builder builder = new Request.Builder();
-        builder.method(httpRequest.getMethod(), RestToOkBody.wrap(httpRequest.getBody()));
+        final Body body = httpRequest.getBody();
+        builder.method(httpRequest.getMethod(), RestToOkBody.wrap(body));
         builder.url(httpRequest.getUrl());
+        boolean hasContentEncoding = false, hasAcceptEncoding = false;
         final MultiValueMap<String> headers = httpRequest.getHeaders();
         if (headers != null) {
             for (Pair<String, String> header : headers.toList()) {
                 builder.addHeader(header.first, header.second);
+                hasContentEncoding |= "Content-Encoding".equalsIgnoreCase(header.first);
+                hasAcceptEncoding |= "Accept-Encoding".equalsIgnoreCase(header.first);
             }
         }
+        if (!hasAcceptEncoding) {
+            // Disables transparent gzip of OkHttp, responses are decoded with ContentDecoders instead
+            builder.addHeader("Accept-Encoding", ContentDecoders.getAcceptEncoding());
+        }
+        // Content-Type is taken from request body by OkHttp, but not Content-Encoding
+        if (body != null && body.contentEncoding() != null && !hasContentEncoding) {
+            builder.addHeader("Content-Encoding", body.contentEncoding());
+        }
         return new OkToRestCall(client.newCall(builder.build()));
     }
 
@@ -101,6 +115,7 @@ public class OkHttpRestClient implements RestHttpClient {
     private static class OkResponse extends HttpResponse {
         private final Response response;
         private Body body;
+        private OkHeaderMap headers;
 
         public OkResponse(Response response) {
             this.response = response;
@@ -113,8 +128,8 @@ public class OkHttpRestClient implements RestHttpClient {
 
         @Override
         public MultiValueMap<String> getHeaders() {
-            final Headers headers = response.headers();
-            return new MultiValueMap<>(headers.toMultimap(), true);
+            if (headers != null) return headers;
+            return headers = new OkHeaderMap(response.headers());
         }
 
         @Override
@@ -130,7 +145,7 @@ public class OkHttpRestClient implements RestHttpClient {
         @Override
         public Body getBody() {
             if (body != null) return body;
-            return body = new OkResponseBody(response.body());
+            return body = new OkResponseBody(response.body(), response.header("Content-Encoding"));
         }
 
         @Override
@@ -142,12 +157,52 @@ public class OkHttpRestClient implements RestHttpClient {
         }
     }
 
+    /**
+     * Reads {@link Headers} of response directly, copied only when modified
+     */
+    private static class OkHeaderMap extends LazyHeaderMap {
+        private final Headers headers;
+
+        OkHeaderMap(Headers headers) {
+            this.headers = headers;
+        }
+
+        @Override
+        protected int sourceSize() {
+            return headers.size();
+        }
+
+        @Override
+        protected String sourceName(int index) {
+            return headers.name(index);
+        }
+
+        @Override
+        protected String sourceValue(int index) {
+            return headers.value(index);
+        }
+
+        @Override
+        protected List<String> sourceValues(String name) {
+            return headers.values(name);
+        }
+
+        @Override
+        protected boolean sourceContains(String name) {
+            // Headers.get returns last value, so sourceFirst keeps scanning
+            return name != null && headers.get(name) != null;
+        }
+    }
+
     private static class OkResponseBody implements Body {
 
         private final ResponseBody body;
+        private final String encoding;
+        private InputStream stream;
 
-        public OkResponseBody(ResponseBody body) {
+        public OkResponseBody(ResponseBody body, String encoding) {
             this.body = body;
+            this.encoding = encoding;
         }
 
         @Override
@@ -159,29 +214,39 @@ public class OkHttpRestClient implements RestHttpClient {
 
         @Override
         public String contentEncoding() {
-            return null;
+            return encoding;
         }
 
         @Override
         public long length() throws IOException {
+            // Content length is of encoded data
+            if (ContentDecoders.isEncoded(encoding)) return -1;
             return body.contentLength();
         }
 
         @Override
         public long writeTo(OutputStream os) throws IOException {
             final BufferedSink sink = Okio.buffer(Okio.sink(os));
-            final long result = sink.writeAll(body.source());
+            final long result;
+            if (ContentDecoders.isEncoded(encoding)) {
+                result = sink.writeAll(Okio.source(stream()));
+            } else {
+                result = sink.writeAll(body.source());
+            }
             sink.flush();
             return result;
         }
 
         @Override
         public InputStream stream() throws IOException {
-            return body.byteStream();
+            if (stream != null) return stream;
+            return stream = ContentDecoders.decode(encoding, body.byteStream());
         }
 
         @Override
         public void close() throws IOException {
+            // Decoders may hold pooled resources
+            RestFuUtils.closeSilently(stream);
             body.close();
         }
     }
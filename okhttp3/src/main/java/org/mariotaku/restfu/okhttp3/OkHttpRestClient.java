@@ -21,8 +21,11 @@ import okio.BufferedSink;
 import okio.Okio;
 import org.jetbrains.annotations.NotNull;
 import org.mariotaku.commons.collection.Pair;
+import org.mariotaku.restfu.RestFuUtils;
 import org.mariotaku.restfu.http.*;
 import org.mariotaku.restfu.http.mime.Body;
+import org.mariotaku.restfu.http.mime.ChannelBody;
+import org.mariotaku.restfu.io.ContentDecoders;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -44,14 +47,26 @@ public class OkHttpRestClient implements RestHttpClient {
     @Override
     public HttpCall newCall(@NotNull final HttpRequest httpRequest) {
         final Request.Builder builder = new Request.Builder();
-        builder.method(httpRequest.getMethod(), RestToOkRequestBody.wrap(httpRequest.getBody()));
+        final Body body = httpRequest.getBody();
+        builder.method(httpRequest.getMethod(), RestToOkRequestBody.wrap(body));
         builder.url(httpRequest.getUrl());
+        boolean hasContentEncoding = false, hasAcceptEncoding = false;
         final MultiValueMap<String> headers = httpRequest.getHeaders();
         if (headers != null) {
             for (Pair<String, String> header : headers.toList()) {
                 builder.addHeader(header.first, header.second);
+                hasContentEncoding |= "Content-Encoding".equalsIgnoreCase(header.first);
+                hasAcceptEncoding |= "Accept-Encoding".equalsIgnoreCase(header.first);
             }
         }
+        if (!hasAcceptEncoding) {
+            // Disables transparent gzip of OkHttp, responses are decoded with ContentDecoders instead
+            builder.addHeader("Accept-Encoding", ContentDecoders.getAcceptEncoding());
+        }
+        // Content-Type is taken from request body by OkHttp, but not Content-Encoding
+        if (body != null && body.contentEncoding() != null && !hasContentEncoding) {
+            builder.addHeader("Content-Encoding", body.contentEncoding());
+        }
         return new OkToRestCall(client.newCall(builder.build()));
     }
 
@@ -72,6 +87,7 @@ public class OkHttpRestClient implements RestHttpClient {
     private static class OkToRestResponse extends HttpResponse {
         private final Response response;
         private final Body body;
+        private OkHeaderMap headers;
 
         public OkToRestResponse(Response response) {
             this.response = response;
@@ -85,8 +101,8 @@ public class OkHttpRestClient implements RestHttpClient {
 
         @Override
         public MultiValueMap<String> getHeaders() {
-            final Headers headers = response.headers();
-            return new MultiValueMap<>(headers.toMultimap(), true);
+            if (headers != null) return headers;
+            return headers = new OkHeaderMap(response.headers());
         }
 
         @Override
@@ -110,10 +126,48 @@ public class OkHttpRestClient implements RestHttpClient {
         }
     }
 
+    /**
+     * Reads {@link Headers} of response directly, copied only when modified
+     */
+    private static class OkHeaderMap extends LazyHeaderMap {
+        private final Headers headers;
+
+        OkHeaderMap(Headers headers) {
+            this.headers = headers;
+        }
+
+        @Override
+        protected int sourceSize() {
+            return headers.size();
+        }
+
+        @Override
+        protected String sourceName(int index) {
+            return headers.name(index);
+        }
+
+        @Override
+        protected String sourceValue(int index) {
+            return headers.value(index);
+        }
+
+        @Override
+        protected List<String> sourceValues(String name) {
+            return headers.values(name);
+        }
+
+        @Override
+        protected boolean sourceContains(String name) {
+            // Headers.get returns last value, so sourceFirst keeps scanning
+            return name != null && headers.get(name) != null;
+        }
+    }
+
     private static class OkToRestResponseBody implements Body {
 
         private final ResponseBody body;
         private final String encoding;
+        private InputStream stream;
 
         public OkToRestResponseBody(ResponseBody body, String encoding) {
             this.body = body;
@@ -129,11 +183,13 @@ public class OkHttpRestClient implements RestHttpClient {
 
         @Override
         public String contentEncoding() {
-            return null;
+            return encoding;
         }
 
         @Override
         public long length() throws IOException {
+            // Content length is of encoded data
+            if (ContentDecoders.isEncoded(encoding)) return -1;
             return body.contentLength();
         }
 
@@ -141,8 +197,8 @@ public class OkHttpRestClient implements RestHttpClient {
         public long writeTo(OutputStream os) throws IOException {
             final BufferedSink sink = Okio.buffer(Okio.sink(os));
             final long result;
-            if ("deflate".equals(encoding)) {
-                result = sink.writeAll(Okio.source(new DeflateInputStream(body.byteStream())));
+            if (ContentDecoders.isEncoded(encoding)) {
+                result = sink.writeAll(Okio.source(stream()));
             } else {
                 result = sink.writeAll(body.source());
             }
@@ -152,14 +208,14 @@ public class OkHttpRestClient implements RestHttpClient {
 
         @Override
         public InputStream stream() throws IOException {
-            if ("deflate".equals(encoding)) {
-                return new DeflateInputStream(body.byteStream());
-            }
-            return body.byteStream();
+            if (stream != null) return stream;
+            return stream = ContentDecoders.decode(encoding, body.byteStream());
         }
 
         @Override
         public void close() throws IOException {
+            // Decoders may hold pooled resources
+            RestFuUtils.closeSilently(stream);
             body.close();
         }
     }
@@ -218,7 +274,12 @@ public class OkHttpRestClient implements RestHttpClient {
 
         @Override
         public void writeTo(BufferedSink sink) throws IOException {
-            body.writeTo(sink.outputStream());
+            if (body instanceof ChannelBody) {
+                // BufferedSink is a WritableByteChannel since okio 1.14
+                ((ChannelBody) body).writeTo(sink);
+            } else {
+                body.writeTo(sink.outputStream());
+            }
         }
 
         @Override
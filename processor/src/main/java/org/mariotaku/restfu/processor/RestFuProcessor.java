@@ -0,0 +1,928 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mariotaku.restfu.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates {@code <Interface>$$RestFu} implementation for every interface with methods annotated with
+ * {@code @GET}, {@code @POST} or other annotations marked with {@code @HttpMethod}.
+ * <p>
+ * Annotations are read here, and each method gets a {@code RestMethod} subclass binding its arguments
+ * with straight-line code, so calls won't look up or parse annotations with reflection, or box
+ * arguments into an array. Interfaces that can't be generated are left to {@link java.lang.reflect.Proxy}.
+ */
+public class RestFuProcessor extends AbstractProcessor {
+
+    private static final String PACKAGE = "org.mariotaku.restfu";
+    private static final String HTTP_METHOD = PACKAGE + ".annotation.HttpMethod";
+    private static final String PATH = PACKAGE + ".annotation.param.Path";
+    private static final String QUERY = PACKAGE + ".annotation.param.Query";
+    private static final String HEADER = PACKAGE + ".annotation.param.Header";
+    private static final String PARAM = PACKAGE + ".annotation.param.Param";
+    private static final String EXTRA = PACKAGE + ".annotation.param.Extra";
+    private static final String RAW = PACKAGE + ".annotation.param.Raw";
+    private static final String HEADERS = PACKAGE + ".annotation.param.Headers";
+    private static final String QUERIES = PACKAGE + ".annotation.param.Queries";
+    private static final String PARAMS = PACKAGE + ".annotation.param.Params";
+    private static final String BODY_TYPE = PACKAGE + ".http.BodyType";
+    private static final String COMPRESS = PACKAGE + ".http.Compress";
+    private static final String CALLBACK = PACKAGE + ".callback.Callback";
+    private static final String REST_CLIENT = PACKAGE + ".RestClient";
+    private static final String REST_INVOKER = PACKAGE + ".RestInvoker";
+    private static final String REST_METHOD = PACKAGE + ".RestMethod";
+    private static final String REST_FU_UTILS = PACKAGE + ".RestFuUtils";
+    private static final String MULTI_VALUE_MAP = PACKAGE + ".http.MultiValueMap";
+    private static final String VALUE_MAP = PACKAGE + ".http.ValueMap";
+    private static final String BODY = PACKAGE + ".http.mime.Body";
+    private static final String CONVERTER_FACTORY = PACKAGE + ".RestConverter.Factory<Exception>";
+    private static final String CONVERTER_EXCEPTIONS = PACKAGE + ".RestConverter.ConvertException, "
+            + "java.io.IOException, Exception";
+    // Must be same as RestAPIFactory.GENERATED_SUFFIX
+    private static final String GENERATED_SUFFIX = "$$RestFu";
+
+    // Same as BooleanEncoding
+    private static final int ONE_ZERO = 1, KEY_IF_TRUE = 2, IGNORE_IF_FALSE = 3, IGNORE_IF_TRUE = 4;
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        // HttpMethod itself is here for custom method annotations declared in same compilation
+        return new HashSet<>(Arrays.asList(PACKAGE + ".annotation.method.GET", PACKAGE + ".annotation.method.POST",
+                PACKAGE + ".annotation.method.PUT", PACKAGE + ".annotation.method.DELETE",
+                PACKAGE + ".annotation.method.PATCH", HTTP_METHOD));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final Set<TypeElement> interfaces = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            if (HTTP_METHOD.equals(annotation.getQualifiedName().toString())) {
+                for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                    if (element.getKind() != ElementKind.ANNOTATION_TYPE) continue;
+                    collectInterfaces(roundEnv, (TypeElement) element, interfaces);
+                }
+            } else if (findAnnotation(annotation, HTTP_METHOD) != null) {
+                collectInterfaces(roundEnv, annotation, interfaces);
+            }
+        }
+        for (TypeElement type : interfaces) {
+            final String qualifiedName = type.getQualifiedName().toString();
+            if (!generated.add(qualifiedName)) continue;
+            try {
+                generate(type);
+            } catch (UnsupportedException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "RestFu: " + qualifiedName
+                        + " will use Proxy implementation, " + e.getMessage(), type);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "RestFu: Unable to generate "
+                        + "implementation for " + qualifiedName + ": " + e.getMessage(), type);
+            }
+        }
+        return false;
+    }
+
+    private static void collectInterfaces(RoundEnvironment roundEnv, TypeElement annotation,
+            Set<TypeElement> interfaces) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.METHOD) continue;
+            final Element enclosing = element.getEnclosingElement();
+            if (enclosing.getKind() != ElementKind.INTERFACE) continue;
+            interfaces.add((TypeElement) enclosing);
+        }
+    }
+
+    private void generate(TypeElement type) throws IOException, UnsupportedException {
+        if (!type.getTypeParameters().isEmpty()) throw new UnsupportedException("generic interfaces are not supported");
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new UnsupportedException("private interfaces are not supported");
+            }
+        }
+        final Elements elements = processingEnv.getElementUtils();
+        final String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        final String binaryName = elements.getBinaryName(type).toString();
+        final String simpleName = (packageName.isEmpty() ? binaryName
+                : binaryName.substring(packageName.length() + 1)) + GENERATED_SUFFIX;
+        final String interfaceName = type.getQualifiedName().toString();
+
+        final StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("/**\n * Generated by RestFu annotation processor, do not modify.\n */\n");
+        sb.append("@SuppressWarnings({\"unchecked\", \"unused\"})\n");
+        sb.append("public final class ").append(simpleName).append(" implements ").append(interfaceName)
+                .append(", ").append(REST_CLIENT).append(" {\n\n");
+        sb.append("    private static final java.nio.charset.Charset UTF_8 = java.nio.charset.Charset.forName(")
+                .append("\"UTF-8\");\n\n");
+
+        // Exception type of invoker is unknown here, declared exceptions will be rethrown in each method
+        sb.append("    private final ").append(REST_INVOKER).append("<Exception> invoker;\n\n");
+        sb.append("    public ").append(simpleName).append("(").append(REST_INVOKER)
+                .append("<?> invoker) {\n");
+        sb.append("        this.invoker = (").append(REST_INVOKER).append("<Exception>) invoker;\n");
+        sb.append("    }\n\n");
+
+        appendDelegate(sb, PACKAGE + ".http.Endpoint", "getEndpoint");
+        appendDelegate(sb, PACKAGE + ".http.RestHttpClient", "getRestClient");
+        appendDelegate(sb, PACKAGE + ".http.Authorization", "getAuthorization");
+
+        final List<ExecutableElement> methods = abstractMethods(type);
+        final StringBuilder calls = new StringBuilder();
+        for (int i = 0, j = methods.size(); i < j; i++) {
+            final ExecutableElement method = methods.get(i);
+            if (!method.getTypeParameters().isEmpty()) {
+                throw new UnsupportedException("generic methods are not supported");
+            }
+            appendMethod(sb, method, i);
+            appendCall(calls, method, i);
+        }
+        // Remove blank line before closing brace
+        sb.append(calls).setLength(sb.length() - 1);
+        sb.append("}\n");
+
+        final JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName.isEmpty()
+                ? simpleName : packageName + "." + simpleName, type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(sb.toString());
+        }
+    }
+
+    private void appendDelegate(StringBuilder sb, String returnType, String name) {
+        sb.append("    @Override\n");
+        sb.append("    public ").append(returnType).append(' ').append(name).append("() {\n");
+        sb.append("        return invoker.").append(name).append("();\n");
+        sb.append("    }\n\n");
+    }
+
+    private void appendMethod(StringBuilder sb, ExecutableElement method, int index) {
+        final Types types = processingEnv.getTypeUtils();
+        final TypeMirror returnType = method.getReturnType();
+        final List<? extends VariableElement> parameters = method.getParameters();
+
+        sb.append("    @Override\n");
+        sb.append("    public ").append(returnType).append(' ').append(method.getSimpleName()).append('(');
+        appendParameters(sb, parameters);
+        sb.append(')');
+        final List<? extends TypeMirror> thrownTypes = method.getThrownTypes();
+        for (int i = 0, j = thrownTypes.size(); i < j; i++) {
+            sb.append(i == 0 ? " throws " : ", ").append(thrownTypes.get(i));
+        }
+        sb.append(" {\n");
+
+        final List<TypeMirror> catches = exceptionsToRethrow(thrownTypes);
+        final String indent = catches != null ? "            " : "        ";
+        if (catches != null) {
+            sb.append("        try {\n");
+        }
+        sb.append(indent);
+        if (returnType.getKind() == TypeKind.VOID) {
+            // Nothing to return
+        } else if (returnType.getKind().isPrimitive()) {
+            sb.append("return (").append(types.boxedClass((PrimitiveType) returnType).getQualifiedName())
+                    .append(") ");
+        } else {
+            sb.append("return (").append(returnType).append(") ");
+        }
+        sb.append("invoker.execute(new Call").append(index).append('(');
+        appendArguments(sb, parameters.size());
+        sb.append("));\n");
+        if (catches != null) {
+            sb.append("        } catch (RuntimeException e) {\n");
+            sb.append("            throw e;\n");
+            for (TypeMirror type : catches) {
+                sb.append("        } catch (").append(rawTypeName(type)).append(" e) {\n");
+                sb.append("            throw e;\n");
+            }
+            // Same as what Proxy does for undeclared checked exceptions
+            sb.append("        } catch (Exception e) {\n");
+            sb.append("            throw new java.lang.reflect.UndeclaredThrowableException(e);\n");
+            sb.append("        }\n");
+        }
+        sb.append("    }\n\n");
+    }
+
+    /**
+     * Appends {@code RestMethod} subclass holding arguments of one call, everything annotations
+     * specify is resolved here and written as code
+     */
+    private void appendCall(StringBuilder sb, ExecutableElement method, int index) throws UnsupportedException {
+        final Types types = processingEnv.getTypeUtils();
+        final Elements elements = processingEnv.getElementUtils();
+        final List<? extends VariableElement> parameters = method.getParameters();
+        final int count = parameters.size();
+        final String callName = "Call" + index;
+
+        AnnotationMirror httpMethod = null, methodAnnotation = null;
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            httpMethod = findAnnotation(mirror.getAnnotationType().asElement(), HTTP_METHOD);
+            if (httpMethod != null) {
+                methodAnnotation = mirror;
+                break;
+            }
+        }
+        if (httpMethod == null) {
+            throw new UnsupportedException(method.getSimpleName() + " isn't annotated with HTTP method");
+        }
+        final boolean allowBody = (Boolean) value(httpMethod, "allowBody");
+        final String pathFormat = (String) value(methodAnnotation, "value");
+
+        final TypeMirror returnType = method.getReturnType();
+        final String returnClass = rawTypeName(returnType);
+        final boolean async = "java.util.concurrent.Future".equals(returnClass)
+                || (PACKAGE + ".RestFuture").equals(returnClass);
+        if (async && ((DeclaredType) returnType).getTypeArguments().isEmpty()) {
+            throw new UnsupportedException("future return type must be parameterized");
+        }
+
+        final AnnotationMirror[] paths = new AnnotationMirror[count];
+        final StringBuilder headers = new StringBuilder(), queries = new StringBuilder(),
+                paramQueries = new StringBuilder(), params = new StringBuilder(), extras = new StringBuilder(),
+                fields = new StringBuilder();
+        final TypeMirror callbackType = types.erasure(elements.getTypeElement(CALLBACK).asType());
+        int rawIndex = -1, callbackIndex = -1;
+        AnnotationMirror raw = null;
+        for (int i = 0; i < count; i++) {
+            final VariableElement parameter = parameters.get(i);
+            final TypeMirror type = parameter.asType();
+            if (callbackIndex == -1 && types.isAssignable(types.erasure(type), callbackType)) {
+                if (async) throw new UnsupportedException("method returning future can't have callback");
+                callbackIndex = i;
+            }
+            for (AnnotationMirror mirror : parameter.getAnnotationMirrors()) {
+                final String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                        .toString();
+                switch (name) {
+                    case PATH:
+                        paths[i] = mirror;
+                        break;
+                    case QUERY:
+                        appendQueryBinding(queries, fields, "QUERY_NAMES_", i, type, mirror);
+                        break;
+                    case HEADER:
+                        appendHeaderBinding(headers, fields, i, type, mirror);
+                        break;
+                    case PARAM:
+                        if (allowBody) {
+                            appendParamBinding(params, fields, i, mirror);
+                        } else {
+                            appendQueryBinding(paramQueries, fields, "PARAM_NAMES_", i, type, mirror);
+                        }
+                        break;
+                    case EXTRA:
+                        appendExtraBinding(extras, fields, i, type, mirror);
+                        break;
+                    case RAW:
+                        if (raw != null) throw new UnsupportedException("only one @Raw argument is allowed");
+                        raw = mirror;
+                        rawIndex = i;
+                        break;
+                }
+            }
+        }
+
+        final List<AnnotationMirror> headerConstants = constants(method, HEADERS);
+        final List<AnnotationMirror> queryConstants = constants(method, QUERIES);
+        final List<AnnotationMirror> paramConstants = constants(method, PARAMS);
+
+        sb.append("    private static final class ").append(callName).append(" extends ").append(REST_METHOD)
+                .append("<Exception> {\n\n");
+        sb.append("        private static final ").append(REST_METHOD).append(".Info INFO = new ").append(REST_METHOD)
+                .append(".Info(\n                ");
+        appendAnnotation(sb, httpMethod, "                ");
+        sb.append(",\n                ");
+        appendOptionalAnnotation(sb, findAnnotation(method, BODY_TYPE), "                ");
+        sb.append(",\n                ");
+        appendOptionalAnnotation(sb, findAnnotation(method, COMPRESS), "                ");
+        sb.append(",\n                ");
+        appendType(sb, returnType);
+        sb.append(");\n");
+        if (raw != null) {
+            sb.append("        private static final ").append(RAW).append(" RAW = ");
+            appendAnnotation(sb, raw, "        ");
+            sb.append(";\n");
+        }
+        sb.append(fields).append('\n');
+
+        for (int i = 0; i < count; i++) {
+            sb.append("        private final ").append(parameters.get(i).asType()).append(" arg").append(i)
+                    .append(";\n");
+        }
+        if (count > 0) {
+            sb.append('\n');
+        }
+        sb.append("        ").append(callName).append('(');
+        appendParameters(sb, parameters);
+        sb.append(") {\n");
+        sb.append("            super(INFO, ");
+        if (raw != null) {
+            sb.append("new ").append(PACKAGE).append(".http.RawValue(RAW, arg").append(rawIndex).append(')');
+        } else {
+            sb.append("null");
+        }
+        sb.append(");\n");
+        for (int i = 0; i < count; i++) {
+            sb.append("            this.arg").append(i).append(" = arg").append(i).append(";\n");
+        }
+        sb.append("        }\n\n");
+
+        appendExpandPath(sb, method, pathFormat, paths);
+
+        for (AnnotationMirror constant : headerConstants) {
+            final String key = sanitizeHeader((String) value(constant, "key"));
+            final String valueKey = (String) value(constant, "valueKey");
+            if (valueKey.isEmpty()) {
+                headers.append("            target.add(").append(literal(key)).append(", ")
+                        .append(literal(sanitizeHeader((String) value(constant, "value")))).append(");\n");
+            } else {
+                headers.append("            bindHeaderConstant(target, valuesPool, ").append(literal(key))
+                        .append(", ").append(literal(valueKey)).append(", ")
+                        .append(literal(value(constant, "arrayDelimiter"))).append(");\n");
+            }
+        }
+        final StringBuilder pathQueries = new StringBuilder();
+        final int queryIndex = pathFormat.indexOf('?');
+        if (queryIndex != -1) {
+            appendPathQueries(pathQueries, pathFormat.substring(queryIndex + 1));
+        }
+        queries.insert(0, pathQueries);
+        appendConstants(queries, queryConstants, "Query");
+        if (!allowBody) {
+            queries.append(paramQueries);
+            appendConstants(queries, paramConstants, "Query");
+        } else for (AnnotationMirror constant : paramConstants) {
+            final String valueKey = (String) value(constant, "valueKey");
+            final String key = literal(value(constant, "key"));
+            if (valueKey.isEmpty()) {
+                params.append("            target.add(").append(key).append(", ").append(REST_FU_UTILS)
+                        .append(".toBody(").append(literal(value(constant, "value"))).append(", factory));\n");
+            } else {
+                params.append("            bindParamConstant(target, valuesPool, ").append(key).append(", ")
+                        .append(literal(valueKey)).append(", ").append(literal(value(constant, "arrayDelimiter")))
+                        .append(", factory);\n");
+            }
+        }
+
+        final String valuesPool = ", " + VALUE_MAP + " valuesPool";
+        appendOverride(sb, "bindHeaders", MULTI_VALUE_MAP + "<String> target" + valuesPool, null, headers);
+        appendOverride(sb, "bindQueries", MULTI_VALUE_MAP + "<String> target" + valuesPool, null, queries);
+        appendOverride(sb, "bindParams", MULTI_VALUE_MAP + "<" + BODY + "> target, " + CONVERTER_FACTORY
+                + " factory" + valuesPool, CONVERTER_EXCEPTIONS, params);
+        appendOverride(sb, "bindExtras", "java.util.Map<String, Object> target", null, extras);
+        if (callbackIndex != -1) {
+            sb.append("        @Override\n");
+            sb.append("        protected ").append(CALLBACK).append("<?, Exception> getCallback() {\n");
+            sb.append("            return (").append(CALLBACK).append(") arg").append(callbackIndex).append(";\n");
+            sb.append("        }\n\n");
+        }
+        // Remove blank line before closing brace
+        sb.setLength(sb.length() - 1);
+        sb.append("    }\n\n");
+    }
+
+    private void appendExpandPath(StringBuilder sb, ExecutableElement method, String format,
+            AnnotationMirror[] paths) throws UnsupportedException {
+        final int queryIndex = format.indexOf('?');
+        final List<String> literals = new ArrayList<>();
+        final List<Integer> slots = new ArrayList<>();
+        int start, end, prevEnd = -1, literalsLength = 0;
+        while ((start = format.indexOf('{', prevEnd)) != -1 && (end = format.indexOf('}', start)) != -1) {
+            if (queryIndex != -1 && start >= queryIndex) break;
+            literals.add(format.substring(prevEnd + 1, start));
+            final String key = format.substring(start + 1, end);
+            int index = -1;
+            for (int i = 0; i < paths.length; i++) {
+                if (paths[i] != null && key.equals(value(paths[i], "value"))) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index == -1) {
+                throw new UnsupportedException("path key {" + key + "} of " + method.getSimpleName() + " not bound");
+            }
+            slots.add(index);
+            prevEnd = end;
+        }
+        literals.add(queryIndex != -1 ? format.substring(prevEnd + 1, queryIndex) : format.substring(prevEnd + 1));
+        for (String literal : literals) {
+            literalsLength += literal.length();
+        }
+
+        sb.append("        @Override\n");
+        sb.append("        protected String expandPath() {\n");
+        if (slots.isEmpty()) {
+            sb.append("            return ").append(literal(literals.get(0))).append(";\n");
+            sb.append("        }\n\n");
+            return;
+        }
+        sb.append("            final StringBuilder sb = new StringBuilder(").append(literalsLength + slots.size() * 16)
+                .append(");\n");
+        final List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0, j = slots.size(); i <= j; i++) {
+            final String literal = literals.get(i);
+            if (!literal.isEmpty()) {
+                sb.append("            sb.append(").append(literal(literal)).append(");\n");
+            }
+            if (i == j) break;
+            final int slot = slots.get(i);
+            // String.valueOf(char[]) is not what Proxy does
+            final String value = "String.valueOf(" + (parameters.get(slot).asType().getKind() == TypeKind.ARRAY
+                    ? "(Object) " : "") + "arg" + slot + ")";
+            if ((Boolean) value(paths[slot], "encoded")) {
+                sb.append("            sb.append(").append(value).append(");\n");
+            } else {
+                sb.append("            ").append(PACKAGE).append(".http.mime.UrlSerialization.PATH.serialize(")
+                        .append(value).append(", UTF_8, sb);\n");
+            }
+        }
+        sb.append("            return sb.toString();\n");
+        sb.append("        }\n\n");
+    }
+
+    /**
+     * Static queries after {@code ?} are added as literals, escaped ones are left to runtime as they
+     * are decoded with default charset
+     */
+    private void appendPathQueries(StringBuilder sb, String query) {
+        if (query.indexOf('%') != -1 || query.indexOf('+') != -1) {
+            sb.append("            ").append(REST_FU_UTILS).append(".parseQuery(").append(literal(query))
+                    .append(", java.nio.charset.Charset.defaultCharset().name(), target);\n");
+            return;
+        }
+        for (String part : query.split("&")) {
+            if (part.isEmpty()) continue;
+            final int separator = part.indexOf('=');
+            final String key = separator != -1 ? part.substring(0, separator) : part;
+            final String value = separator != -1 && separator + 1 < part.length()
+                    ? part.substring(separator + 1) : null;
+            sb.append("            target.add(").append(literal(key)).append(", ").append(literal(value))
+                    .append(");\n");
+        }
+    }
+
+    private void appendHeaderBinding(StringBuilder sb, StringBuilder fields, int index, TypeMirror type,
+            AnnotationMirror mirror) {
+        final List<String> names = new ArrayList<>();
+        for (String name : stringValues(mirror, "value")) {
+            names.add(sanitizeHeader(name));
+        }
+        final boolean ignoreOnNull = (Boolean) value(mirror, "ignoreOnNull");
+        final String arg = "arg" + index;
+        if (type.getKind().isPrimitive()) {
+            // Only char may be out of printable range
+            final String value = type.getKind() == TypeKind.CHAR ? REST_FU_UTILS + ".sanitizeHeader(String.valueOf("
+                    + arg + "))" : "String.valueOf(" + arg + ")";
+            for (String name : names) {
+                sb.append("            target.add(").append(literal(name)).append(", ").append(value).append(");\n");
+            }
+        } else if (isString(type)) {
+            appendStringBinding(sb, names, arg, REST_FU_UTILS + ".sanitizeHeader(" + arg + ")", ignoreOnNull);
+        } else {
+            final String field = appendNamesField(fields, "HEADER_NAMES_", index, names);
+            sb.append("            bindHeader(target, ").append(arg).append(", ").append(field).append(", ")
+                    .append(literal(value(mirror, "arrayDelimiter"))).append(", ").append(ignoreOnNull)
+                    .append(");\n");
+        }
+    }
+
+    private void appendQueryBinding(StringBuilder sb, StringBuilder fields, String fieldPrefix, int index,
+            TypeMirror type, AnnotationMirror mirror) {
+        final List<String> names = stringValues(mirror, "value");
+        final boolean ignoreOnNull = (Boolean) value(mirror, "ignoreOnNull");
+        final int booleanEncoding = (Integer) value(mirror, "booleanEncoding");
+        final String arg = "arg" + index;
+        if (type.getKind() == TypeKind.BOOLEAN) {
+            for (String name : names) {
+                final String key = literal(name);
+                switch (booleanEncoding) {
+                    case ONE_ZERO:
+                        sb.append("            target.add(").append(key).append(", ").append(arg)
+                                .append(" ? \"1\" : \"0\");\n");
+                        break;
+                    case KEY_IF_TRUE:
+                        sb.append("            if (").append(arg).append(") target.add(").append(key)
+                                .append(", null);\n");
+                        break;
+                    case IGNORE_IF_FALSE:
+                        sb.append("            if (").append(arg).append(") target.add(").append(key)
+                                .append(", \"true\");\n");
+                        break;
+                    case IGNORE_IF_TRUE:
+                        sb.append("            if (!").append(arg).append(") target.add(").append(key)
+                                .append(", \"false\");\n");
+                        break;
+                    default:
+                        sb.append("            target.add(").append(key).append(", String.valueOf(").append(arg)
+                                .append("));\n");
+                        break;
+                }
+            }
+        } else if (type.getKind().isPrimitive()) {
+            for (String name : names) {
+                sb.append("            target.add(").append(literal(name)).append(", String.valueOf(").append(arg)
+                        .append("));\n");
+            }
+        } else if (isString(type)) {
+            appendStringBinding(sb, names, arg, arg, ignoreOnNull);
+        } else {
+            final String field = appendNamesField(fields, fieldPrefix, index, names);
+            sb.append("            bindQuery(target, ").append(arg).append(", ").append(field).append(", ")
+                    .append(literal(value(mirror, "arrayDelimiter"))).append(", ").append(ignoreOnNull)
+                    .append(", ").append(booleanEncoding).append(");\n");
+        }
+    }
+
+    /**
+     * Bodies depend on converter factory, so params always go through {@code RestMethod.bindParam}
+     */
+    private void appendParamBinding(StringBuilder sb, StringBuilder fields, int index, AnnotationMirror mirror) {
+        final String field = appendNamesField(fields, "PARAM_NAMES_", index, stringValues(mirror, "value"));
+        sb.append("            bindParam(target, arg").append(index).append(", ").append(field).append(", ")
+                .append(literal(value(mirror, "arrayDelimiter"))).append(", ").append(value(mirror, "ignoreOnNull"))
+                .append(", factory);\n");
+    }
+
+    private void appendExtraBinding(StringBuilder sb, StringBuilder fields, int index, TypeMirror type,
+            AnnotationMirror mirror) {
+        final List<String> keys = stringValues(mirror, "value");
+        if (type.getKind().isPrimitive()) {
+            for (String key : keys) {
+                sb.append("            target.put(").append(literal(key)).append(", arg").append(index)
+                        .append(");\n");
+            }
+            return;
+        }
+        final String field = appendNamesField(fields, "EXTRA_KEYS_", index, keys);
+        sb.append("            bindExtra(target, arg").append(index).append(", ").append(field).append(");\n");
+    }
+
+    private void appendStringBinding(StringBuilder sb, List<String> names, String arg, String value,
+            boolean ignoreOnNull) {
+        if (names.isEmpty()) return;
+        sb.append("            if (").append(arg).append(" != null) {\n");
+        for (String name : names) {
+            sb.append("                target.add(").append(literal(name)).append(", ").append(value).append(");\n");
+        }
+        if (!ignoreOnNull) {
+            sb.append("            } else {\n");
+            for (String name : names) {
+                sb.append("                target.add(").append(literal(name)).append(", null);\n");
+            }
+        }
+        sb.append("            }\n");
+    }
+
+    private String appendNamesField(StringBuilder fields, String prefix, int index, List<String> names) {
+        final String field = prefix + index;
+        fields.append("        private static final String[] ").append(field).append(" = {");
+        for (int i = 0, j = names.size(); i < j; i++) {
+            if (i != 0) fields.append(", ");
+            fields.append(literal(names.get(i)));
+        }
+        fields.append("};\n");
+        return field;
+    }
+
+    private void appendConstants(StringBuilder sb, List<AnnotationMirror> constants, String kind) {
+        for (AnnotationMirror constant : constants) {
+            final String valueKey = (String) value(constant, "valueKey");
+            final String key = literal(value(constant, "key"));
+            if (valueKey.isEmpty()) {
+                sb.append("            target.add(").append(key).append(", ").append(literal(value(constant, "value")))
+                        .append(");\n");
+            } else {
+                sb.append("            bind").append(kind).append("Constant(target, valuesPool, ").append(key)
+                        .append(", ").append(literal(valueKey)).append(", ")
+                        .append(literal(value(constant, "arrayDelimiter"))).append(");\n");
+            }
+        }
+    }
+
+    private static void appendOverride(StringBuilder sb, String name, String parameters, String exceptions,
+            StringBuilder body) {
+        if (body.length() == 0) return;
+        sb.append("        @Override\n");
+        sb.append("        protected void ").append(name).append('(').append(parameters).append(')');
+        if (exceptions != null) {
+            sb.append("\n                throws ").append(exceptions);
+        }
+        sb.append(" {\n");
+        sb.append(body);
+        sb.append("        }\n\n");
+    }
+
+    /**
+     * @return {@code KeyValue} of {@code @Headers}, {@code @Queries} or {@code @Params} of method, or
+     * its interface if method isn't annotated, with template class resolved
+     */
+    private List<AnnotationMirror> constants(ExecutableElement method, String annotationName)
+            throws UnsupportedException {
+        AnnotationMirror annotation = findAnnotation(method, annotationName);
+        if (annotation == null) {
+            annotation = findAnnotation(method.getEnclosingElement(), annotationName);
+        }
+        if (annotation == null) return Collections.emptyList();
+        final TypeMirror template = (TypeMirror) value(annotation, "template");
+        if (template.getKind() != TypeKind.VOID) {
+            annotation = findAnnotation(processingEnv.getTypeUtils().asElement(template), annotationName);
+            if (annotation == null) throw new UnsupportedException("template class must be annotated");
+            if (((TypeMirror) value(annotation, "template")).getKind() != TypeKind.VOID) {
+                throw new UnsupportedException("template class can't use template reference");
+            }
+        }
+        final List<AnnotationMirror> result = new ArrayList<>();
+        for (Object item : (List<?>) value(annotation, "value")) {
+            result.add((AnnotationMirror) ((AnnotationValue) item).getValue());
+        }
+        return result;
+    }
+
+    private void appendOptionalAnnotation(StringBuilder sb, AnnotationMirror mirror, String indent) {
+        if (mirror == null) {
+            sb.append("null");
+        } else {
+            appendAnnotation(sb, mirror, indent);
+        }
+    }
+
+    /**
+     * Writes annotation as anonymous class implementing it, so runtime won't read it with reflection
+     */
+    private void appendAnnotation(StringBuilder sb, AnnotationMirror mirror, String indent) {
+        final String annotationType = rawTypeName(mirror.getAnnotationType());
+        sb.append("new ").append(annotationType).append("() {\n");
+        final Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            final ExecutableElement element = entry.getKey();
+            sb.append(indent).append("    @Override\n");
+            sb.append(indent).append("    public ").append(element.getReturnType()).append(' ')
+                    .append(element.getSimpleName()).append("() {\n");
+            sb.append(indent).append("        return ");
+            appendAnnotationValue(sb, element.getReturnType(), entry.getValue().getValue(), indent + "        ");
+            sb.append(";\n");
+            sb.append(indent).append("    }\n\n");
+        }
+        sb.append(indent).append("    @Override\n");
+        sb.append(indent).append("    public Class<? extends java.lang.annotation.Annotation> annotationType() {\n");
+        sb.append(indent).append("        return ").append(annotationType).append(".class;\n");
+        sb.append(indent).append("    }\n");
+        sb.append(indent).append('}');
+    }
+
+    private void appendAnnotationValue(StringBuilder sb, TypeMirror type, Object value, String indent) {
+        if (value instanceof TypeMirror) {
+            sb.append(rawTypeName((TypeMirror) value)).append(".class");
+        } else if (value instanceof VariableElement) {
+            final VariableElement constant = (VariableElement) value;
+            sb.append(rawTypeName(constant.asType())).append('.').append(constant.getSimpleName());
+        } else if (value instanceof AnnotationMirror) {
+            appendAnnotation(sb, (AnnotationMirror) value, indent);
+        } else if (value instanceof List) {
+            final TypeMirror componentType = ((ArrayType) type).getComponentType();
+            sb.append("new ").append(rawTypeName(componentType)).append("[]{");
+            final List<?> items = (List<?>) value;
+            for (int i = 0, j = items.size(); i < j; i++) {
+                if (i != 0) sb.append(", ");
+                appendAnnotationValue(sb, componentType, ((AnnotationValue) items.get(i)).getValue(), indent);
+            }
+            sb.append('}');
+        } else {
+            sb.append(processingEnv.getElementUtils().getConstantExpression(value));
+        }
+    }
+
+    /**
+     * Writes expression of {@link java.lang.reflect.Type} equal to what reflection returns
+     */
+    private void appendType(StringBuilder sb, TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY: {
+                final TypeMirror componentType = ((ArrayType) type).getComponentType();
+                if (isReifiable(componentType)) {
+                    sb.append(rawTypeName(type)).append(".class");
+                } else {
+                    sb.append(REST_FU_UTILS).append(".genericArrayType(");
+                    appendType(sb, componentType);
+                    sb.append(')');
+                }
+                break;
+            }
+            case DECLARED: {
+                final DeclaredType declaredType = (DeclaredType) type;
+                final List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
+                if (typeArguments.isEmpty()) {
+                    sb.append(rawTypeName(type)).append(".class");
+                    break;
+                }
+                sb.append(REST_FU_UTILS).append(".parameterizedType(");
+                final TypeMirror enclosingType = declaredType.getEnclosingType();
+                final Element enclosingElement = declaredType.asElement().getEnclosingElement();
+                if (enclosingType.getKind() == TypeKind.DECLARED) {
+                    appendType(sb, enclosingType);
+                } else if (enclosingElement instanceof TypeElement) {
+                    sb.append(rawTypeName(enclosingElement.asType())).append(".class");
+                } else {
+                    sb.append("null");
+                }
+                sb.append(", ").append(rawTypeName(type)).append(".class");
+                for (TypeMirror typeArgument : typeArguments) {
+                    sb.append(", ");
+                    appendType(sb, typeArgument);
+                }
+                sb.append(')');
+                break;
+            }
+            case WILDCARD: {
+                final WildcardType wildcardType = (WildcardType) type;
+                sb.append(REST_FU_UTILS).append(".wildcardType(");
+                if (wildcardType.getExtendsBound() != null) {
+                    appendType(sb, wildcardType.getExtendsBound());
+                } else {
+                    sb.append("Object.class");
+                }
+                sb.append(", ");
+                if (wildcardType.getSuperBound() != null) {
+                    appendType(sb, wildcardType.getSuperBound());
+                } else {
+                    sb.append("null");
+                }
+                sb.append(')');
+                break;
+            }
+            default:
+                sb.append(rawTypeName(type)).append(".class");
+                break;
+        }
+    }
+
+    private static boolean isReifiable(TypeMirror type) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return isReifiable(((ArrayType) type).getComponentType());
+            case DECLARED:
+                return ((DeclaredType) type).getTypeArguments().isEmpty();
+            default:
+                return type.getKind().isPrimitive();
+        }
+    }
+
+    private static void appendParameters(StringBuilder sb, List<? extends VariableElement> parameters) {
+        for (int i = 0, j = parameters.size(); i < j; i++) {
+            if (i != 0) sb.append(", ");
+            sb.append("final ").append(parameters.get(i).asType()).append(" arg").append(i);
+        }
+    }
+
+    private static void appendArguments(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i != 0) sb.append(", ");
+            sb.append("arg").append(i);
+        }
+    }
+
+    /**
+     * @return Checked exceptions need to be caught and rethrown, or null if method throws
+     * {@link Exception} so no try-catch block needed
+     */
+    private List<TypeMirror> exceptionsToRethrow(List<? extends TypeMirror> thrownTypes) {
+        final Types types = processingEnv.getTypeUtils();
+        final Elements elements = processingEnv.getElementUtils();
+        final TypeMirror exception = elements.getTypeElement(Exception.class.getName()).asType();
+        final TypeMirror runtimeException = elements.getTypeElement(RuntimeException.class.getName()).asType();
+        final List<TypeMirror> result = new ArrayList<>();
+        for (TypeMirror thrown : thrownTypes) {
+            if (types.isSubtype(exception, thrown)) return null;
+            if (!types.isSubtype(thrown, exception) || types.isSubtype(thrown, runtimeException)) continue;
+            boolean caught = false;
+            for (TypeMirror previous : result) {
+                if (types.isSubtype(thrown, previous)) {
+                    caught = true;
+                    break;
+                }
+            }
+            if (!caught) {
+                result.add(thrown);
+            }
+        }
+        return result;
+    }
+
+    private List<ExecutableElement> abstractMethods(TypeElement type) {
+        final List<ExecutableElement> result = new ArrayList<>();
+        final Elements elements = processingEnv.getElementUtils();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) continue;
+            final Element enclosing = method.getEnclosingElement();
+            if (enclosing.getKind() != ElementKind.INTERFACE) continue;
+            if (REST_CLIENT.equals(((TypeElement) enclosing).getQualifiedName().toString())) continue;
+            result.add(method);
+        }
+        return result;
+    }
+
+    private String rawTypeName(TypeMirror type) {
+        final Types types = processingEnv.getTypeUtils();
+        final TypeMirror erased = types.erasure(type);
+        switch (erased.getKind()) {
+            case ARRAY:
+                return rawTypeName(((ArrayType) erased).getComponentType()) + "[]";
+            case DECLARED:
+                return ((TypeElement) ((DeclaredType) erased).asElement()).getQualifiedName().toString();
+            default:
+                return erased.getKind().name().toLowerCase(Locale.US);
+        }
+    }
+
+    private boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && String.class.getName().equals(rawTypeName(type));
+    }
+
+    private Object value(AnnotationMirror mirror, String name) {
+        final Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (name.contentEquals(entry.getKey().getSimpleName())) return entry.getValue().getValue();
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private List<String> stringValues(AnnotationMirror mirror, String name) {
+        final List<String> result = new ArrayList<>();
+        for (Object item : (List<?>) value(mirror, name)) {
+            result.add((String) ((AnnotationValue) item).getValue());
+        }
+        return result;
+    }
+
+    private String literal(Object value) {
+        if (value == null) return "null";
+        return processingEnv.getElementUtils().getConstantExpression(value);
+    }
+
+    /**
+     * Same as {@code RestFuUtils.sanitizeHeader}
+     */
+    private static String sanitizeHeader(String header) {
+        final char[] chars = header.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] < 0x20 || chars[i] >= 0x7f) {
+                chars[i] = '.';
+            }
+        }
+        return new String(chars);
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            final Element annotationType = mirror.getAnnotationType().asElement();
+            if (annotationName.equals(((TypeElement) annotationType).getQualifiedName().toString())) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Thrown if an interface can't have generated implementation
+     */
+    private static final class UnsupportedException extends Exception {
+        UnsupportedException(String reason) {
+            super(reason);
+        }
+    }
+}
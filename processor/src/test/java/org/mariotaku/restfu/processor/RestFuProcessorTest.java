@@ -0,0 +1,286 @@
+package org.mariotaku.restfu.processor;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.ExceptionFactory;
+import org.mariotaku.restfu.RestAPIFactory;
+import org.mariotaku.restfu.RestConverter;
+import org.mariotaku.restfu.RestMethod;
+import org.mariotaku.restfu.RestRequest;
+import org.mariotaku.restfu.http.*;
+import org.mariotaku.restfu.http.mime.Body;
+import org.mariotaku.restfu.http.mime.StringBody;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles {@code sample/SampleApi.java} with and without the processor, and checks generated
+ * implementation sends same requests as {@link Proxy} based one.
+ */
+public class RestFuProcessorTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testGeneratedMatchesProxy() throws Exception {
+        final ClassLoader generatedLoader = compile(readSample(), true);
+        final ClassLoader proxyLoader = compile(readSample(), false);
+        final Recorder generated = new Recorder(), proxy = new Recorder();
+        final Object generatedApi = build(generatedLoader, generated);
+        final Object proxyApi = build(proxyLoader, proxy);
+        Assert.assertEquals("sample.SampleApi$$RestFu", generatedApi.getClass().getName());
+        Assert.assertTrue(Proxy.isProxyClass(proxyApi.getClass()));
+
+        final SimpleValueMap query = new SimpleValueMap();
+        query.put("page", 2);
+        query.put("draft", true);
+        final Object[][] calls = {
+                {"issues", "mariotaku", "Rest%20Fu", 100, true, null, new long[]{1, 2}, "töken"},
+                {"search", query, 3, null, "tag"},
+                {"update", "a/b c", "你好 & more", 42L, new String[]{"http", "java"}},
+                {"upload", "content", 7},
+                {"events", "2017-01-01"},
+        };
+        for (Object[] call : calls) {
+            final Object[] args = Arrays.copyOfRange(call, 1, call.length);
+            final Object result = invoke(generatedApi, (String) call[0], args);
+            invoke(proxyApi, (String) call[0], args);
+            if (result instanceof Future) {
+                ((Future<?>) result).get();
+            }
+        }
+        Assert.assertEquals(proxy.requests, generated.requests);
+        Assert.assertEquals(proxy.extras, generated.extras);
+        Assert.assertEquals(proxy.types, generated.types);
+        Assert.assertEquals(proxy.types.toString(), generated.types.toString());
+        for (int i = 0; i < proxy.types.size(); i++) {
+            Assert.assertEquals(proxy.types.get(i).hashCode(), generated.types.get(i).hashCode());
+        }
+        final String issues = generated.requests.get(0);
+        Assert.assertTrue(issues, issues.startsWith("GET https://api.example.com/repos/mariotaku/Rest%20Fu/issues?"));
+        for (String part : new String[]{"state=open", "&sort", "per_page=100", "pulls=1", "ids=1%2C2",
+                "X-Token: t.ken", "User-Agent: RestFu"}) {
+            Assert.assertTrue(issues, issues.contains(part));
+        }
+    }
+
+    @Test
+    public void testUnboundPathUsesProxy() throws Exception {
+        final String source = "package sample;\n"
+                + "public interface SampleApi {\n"
+                + "    @org.mariotaku.restfu.annotation.method.GET(\"/users/{id}\")\n"
+                + "    String user(@org.mariotaku.restfu.annotation.param.Query(\"id\") String id);\n"
+                + "}\n";
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final ClassLoader loader = compile(source, true, diagnostics);
+        try {
+            loader.loadClass("sample.SampleApi$$RestFu");
+            Assert.fail();
+        } catch (ClassNotFoundException expected) {
+            // Expected
+        }
+        boolean noted = false;
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.NOTE
+                    && diagnostic.getMessage(null).contains("{id} of user not bound")) {
+                noted = true;
+            }
+        }
+        Assert.assertTrue(noted);
+    }
+
+    private static Object invoke(Object api, String name, Object[] args) throws Exception {
+        for (Method method : api.getClass().getMethods()) {
+            if (method.getName().equals(name)) return method.invoke(api, args);
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private static Object build(ClassLoader loader, final Recorder recorder) throws Exception {
+        final RestAPIFactory<Exception> factory = new RestAPIFactory<>();
+        factory.setEndpoint(new Endpoint("https://api.example.com"));
+        final SimpleValueMap constants = new SimpleValueMap();
+        constants.put("user_agent", "RestFu");
+        constants.put("region", "jp");
+        factory.setConstantPool(constants);
+        factory.setHttpClient(recorder);
+        factory.setRestRequestFactory(recorder);
+        factory.setRestConverterFactory(recorder);
+        factory.setExceptionFactory(new ExceptionFactory<Exception>() {
+            @NotNull
+            @Override
+            public Exception newException(@Nullable Throwable cause, @Nullable HttpRequest request,
+                    @Nullable HttpResponse response) {
+                return new Exception(cause);
+            }
+        });
+        factory.setConverterExecutor(new Executor() {
+            @Override
+            public void execute(@NotNull Runnable command) {
+                command.run();
+            }
+        });
+        return factory.build(loader.loadClass("sample.SampleApi"));
+    }
+
+    private static String readSample() throws IOException {
+        try (InputStream is = RestFuProcessorTest.class.getResourceAsStream("/sample/SampleApi.java")) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            for (int read; (read = is.read(buffer)) != -1; ) {
+                os.write(buffer, 0, read);
+            }
+            return os.toString("UTF-8");
+        }
+    }
+
+    private static ClassLoader compile(String source, boolean process) throws IOException {
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        return compile(source, process, diagnostics);
+    }
+
+    private static ClassLoader compile(final String source, boolean process,
+            DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final File output = Files.createTempDirectory("restfu").toFile();
+        final List<String> options = new ArrayList<>(Arrays.asList("-d", output.getPath(), "-classpath",
+                System.getProperty("java.class.path"), "-s", output.getPath()));
+        if (!process) {
+            options.add("-proc:none");
+        }
+        final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///sample/SampleApi.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null,
+                Collections.singletonList(file));
+        if (process) {
+            task.setProcessors(Collections.singletonList(new RestFuProcessor()));
+        }
+        Assert.assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+        return new URLClassLoader(new URL[]{output.toURI().toURL()}, RestFuProcessorTest.class.getClassLoader());
+    }
+
+    /**
+     * Records requests, extras and response types, and responds empty body to every request
+     */
+    private static class Recorder extends RestConverter.SimpleFactory<Exception> implements RestHttpClient,
+            RestRequest.Factory<Exception> {
+        final List<String> requests = new ArrayList<>();
+        final List<Object> extras = new ArrayList<>();
+        final List<Type> types = new ArrayList<>();
+
+        @NotNull
+        @Override
+        public RestConverter<HttpResponse, ?, Exception> forResponse(@NotNull Type toType) {
+            types.add(toType);
+            return new RestConverter<HttpResponse, Object, Exception>() {
+                @Override
+                public Object convert(@NotNull HttpResponse from) {
+                    return null;
+                }
+            };
+        }
+
+        @NotNull
+        @Override
+        public RestRequest create(@NotNull RestMethod<Exception> restMethod,
+                @NotNull RestConverter.Factory<Exception> factory, @Nullable ValueMap valuePool)
+                throws RestConverter.ConvertException, IOException, Exception {
+            extras.add(restMethod.getExtras());
+            return restMethod.toRestRequest(factory, valuePool);
+        }
+
+        @NotNull
+        @Override
+        public HttpCall newCall(@NotNull final HttpRequest request) {
+            final StringBuilder sb = new StringBuilder(request.getMethod()).append(' ').append(request.getUrl())
+                    .append(' ').append(request.getHeaders());
+            final Body body = request.getBody();
+            if (body != null) {
+                final ByteArrayOutputStream os = new ByteArrayOutputStream();
+                try {
+                    body.writeTo(os);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+                sb.append(' ').append(body.contentType()).append(' ').append(new String(os.toByteArray(), UTF_8));
+            }
+            requests.add(sb.toString());
+            return new HttpCall() {
+                @NotNull
+                @Override
+                public HttpResponse execute() {
+                    return new EmptyResponse();
+                }
+
+                @Override
+                public void enqueue(@NotNull HttpCallback callback) {
+                    callback.response(execute());
+                }
+
+                @Override
+                public void cancel() {
+                }
+
+                @Override
+                public boolean isCanceled() {
+                    return false;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void enqueue(@NotNull HttpCall call, @NotNull HttpCallback callback) {
+            call.enqueue(callback);
+        }
+    }
+
+    private static class EmptyResponse extends HttpResponse {
+        @Override
+        public int getStatus() {
+            return 200;
+        }
+
+        @Override
+        public MultiValueMap<String> getHeaders() {
+            return new HeaderMap();
+        }
+
+        @Override
+        public Body getBody() {
+            return new StringBody("", UTF_8);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
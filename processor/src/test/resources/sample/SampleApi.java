@@ -0,0 +1,39 @@
+package sample;
+
+import org.mariotaku.restfu.annotation.method.GET;
+import org.mariotaku.restfu.annotation.method.POST;
+import org.mariotaku.restfu.annotation.param.*;
+import org.mariotaku.restfu.http.BodyType;
+import org.mariotaku.restfu.http.ValueMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+@Headers(@KeyValue(key = "User-Agent", valueKey = "user_agent"))
+public interface SampleApi {
+
+    @GET("/repos/{owner}/{repo}/issues?state=open&sort")
+    List<String> issues(@Path("owner") String owner, @Path(value = "repo", encoded = true) String repo,
+            @Query("per_page") int perPage, @Query(value = "pulls", booleanEncoding = BooleanEncoding.ONE_ZERO)
+            boolean pulls, @Query("labels") String labels, @Query(value = "ids", arrayDelimiter = ',') long[] ids,
+            @Header("X-Token") String token) throws Exception;
+
+    @GET("/search?q=%E4%BD%A0+%E5%A5%BD")
+    @Queries({@KeyValue(key = "lang", value = "en"), @KeyValue(key = "region", valueKey = "region")})
+    Map<String, List<? extends Number>> search(@Query ValueMap query, @Param("page") Integer page,
+            @Query(value = "sort", ignoreOnNull = false) String sort, @Extra("tag") Object tag) throws Exception;
+
+    @POST("/repos/{name}")
+    @BodyType(BodyType.FORM)
+    @Params(@KeyValue(key = "source", value = "restfu"))
+    void update(@Path("name") String name, @Param("description") String description, @Param("id") long id,
+            @Param(value = "topics", arrayDelimiter = ' ') String[] topics) throws Exception;
+
+    @POST("/upload")
+    @BodyType(BodyType.RAW)
+    String upload(@Raw(contentType = "text/plain") String content, @Extra({"a", "b"}) int extra) throws Exception;
+
+    @GET("/events")
+    Future<List<String>[]> events(@Query("since") String since);
+}
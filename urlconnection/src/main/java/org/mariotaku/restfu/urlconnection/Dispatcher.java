@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2015 mariotaku
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mariotaku.restfu.urlconnection;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs enqueued calls of {@link URLConnectionRestClient}. At most {@link #getMaxRequests()} calls
+ * run at the same time, and at most {@link #getMaxRequestsPerHost()} of them to the same host,
+ * others wait in queue.
+ */
+public class Dispatcher {
+
+    private final ExecutorService executorService;
+    private final Deque<AsyncCall> readyCalls = new ArrayDeque<>();
+    private final Deque<AsyncCall> runningCalls = new ArrayDeque<>();
+
+    private int maxRequests = 64;
+    private int maxRequestsPerHost = 5;
+
+    /**
+     * Creates dispatcher with an unbounded pool of daemon threads, number of threads is limited by
+     * {@link #getMaxRequests()}
+     */
+    public Dispatcher() {
+        this(new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(@NotNull Runnable r) {
+                        final Thread thread = new Thread(r, "RestFu URLConnection #" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }));
+    }
+
+    /**
+     * @param executorService Executor running calls, must be able to run {@link #getMaxRequests()}
+     *                        calls concurrently
+     */
+    public Dispatcher(@NotNull ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    @NotNull
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    public synchronized int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public void setMaxRequests(int maxRequests) {
+        if (maxRequests < 1) throw new IllegalArgumentException("max < 1: " + maxRequests);
+        synchronized (this) {
+            this.maxRequests = maxRequests;
+        }
+        promoteCalls();
+    }
+
+    public synchronized int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if (maxRequestsPerHost < 1) throw new IllegalArgumentException("max < 1: " + maxRequestsPerHost);
+        synchronized (this) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+        }
+        promoteCalls();
+    }
+
+    public synchronized int getRunningCallsCount() {
+        return runningCalls.size();
+    }
+
+    public synchronized int getQueuedCallsCount() {
+        return readyCalls.size();
+    }
+
+    /**
+     * Cancels all queued and running calls
+     */
+    public void cancelAll() {
+        final AsyncCall[] calls;
+        synchronized (this) {
+            calls = new AsyncCall[readyCalls.size() + runningCalls.size()];
+            int i = 0;
+            for (AsyncCall call : readyCalls) {
+                calls[i++] = call;
+            }
+            for (AsyncCall call : runningCalls) {
+                calls[i++] = call;
+            }
+        }
+        for (AsyncCall call : calls) {
+            call.cancel();
+        }
+    }
+
+    void enqueue(@NotNull AsyncCall call) {
+        synchronized (this) {
+            readyCalls.add(call);
+        }
+        promoteCalls();
+    }
+
+    void finished(@NotNull AsyncCall call) {
+        synchronized (this) {
+            runningCalls.remove(call);
+        }
+        promoteCalls();
+    }
+
+    private void promoteCalls() {
+        final Deque<AsyncCall> promoted = new ArrayDeque<>();
+        synchronized (this) {
+            for (Iterator<AsyncCall> it = readyCalls.iterator(); it.hasNext(); ) {
+                if (runningCalls.size() >= maxRequests) break;
+                final AsyncCall call = it.next();
+                if (runningCallsForHost(call.host()) >= maxRequestsPerHost) continue;
+                it.remove();
+                runningCalls.add(call);
+                promoted.add(call);
+            }
+        }
+        // Submit outside lock, as executor may run calls in calling thread
+        for (AsyncCall call : promoted) {
+            try {
+                executorService.execute(call);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    runningCalls.remove(call);
+                }
+                call.rejected(e);
+            }
+        }
+    }
+
+    private int runningCallsForHost(String host) {
+        int count = 0;
+        for (AsyncCall call : runningCalls) {
+            if (call.host().equals(host)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    interface AsyncCall extends Runnable {
+
+        @NotNull
+        String host();
+
+        void cancel();
+
+        /**
+         * Called if executor refused to run this call, it's no longer tracked by dispatcher
+         */
+        void rejected(@NotNull RejectedExecutionException e);
+    }
+}
@@ -5,23 +5,63 @@ import org.mariotaku.commons.collection.Pair;
 import org.mariotaku.commons.io.StreamUtils;
 import org.mariotaku.restfu.http.*;
 import org.mariotaku.restfu.http.mime.Body;
+import org.mariotaku.restfu.io.ContentDecoders;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by mariotaku on 16/2/12.
  */
 public class URLConnectionRestClient implements RestHttpClient {
+
+    private Dispatcher dispatcher;
+    private int chunkSize;
+
+    public URLConnectionRestClient() {
+        this(new Dispatcher());
+    }
+
+    public URLConnectionRestClient(@NotNull Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    @NotNull
+    public Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Dispatcher used by calls created after this
+     */
+    public void setDispatcher(@NotNull Dispatcher dispatcher) {
+        if (dispatcher == null) throw new NullPointerException();
+        this.dispatcher = dispatcher;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Chunk size used to upload bodies with unknown length, 0 to use system default
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 0) throw new IllegalArgumentException("chunkSize < 0: " + chunkSize);
+        this.chunkSize = chunkSize;
+    }
+
     @NotNull
     @Override
     public HttpCall newCall(@NotNull HttpRequest request) {
-        return new URLConnectionCall(request);
+        return new URLConnectionCall(request, dispatcher, chunkSize);
     }
 
     @Override
@@ -32,26 +72,71 @@ public class URLConnectionRestClient implements RestHttpClient {
     static class URLConnectionCall implements HttpCall {
 
         private final HttpRequest request;
-        private URLConnectionResponse resp;
+        private final Dispatcher dispatcher;
+        private final int chunkSize;
+        private final AtomicBoolean executed = new AtomicBoolean();
+        private volatile boolean canceled;
+        private volatile HttpURLConnection conn;
+        private volatile URLConnectionResponse resp;
 
-        public URLConnectionCall(HttpRequest request) {
+        public URLConnectionCall(HttpRequest request, Dispatcher dispatcher, int chunkSize) {
             this.request = request;
+            this.dispatcher = dispatcher;
+            this.chunkSize = chunkSize;
         }
 
         @NotNull
         @Override
         public HttpResponse execute() throws IOException {
-            if (resp != null) throw new IllegalStateException("A call can be executed only once");
-            final URL url = new URL(request.getUrl());
+            if (!executed.compareAndSet(false, true)) {
+                throw new IllegalStateException("A call can be executed only once");
+            }
+            return executeConnection(new URL(request.getUrl()));
+        }
+
+        @NotNull
+        private HttpResponse executeConnection(@NotNull URL url) throws IOException {
+            if (canceled) throw new IOException("Canceled");
             final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            this.conn = conn;
+            // cancel() may have been called before connection is visible to it
+            if (canceled) {
+                conn.disconnect();
+                throw new IOException("Canceled");
+            }
             conn.setRequestMethod(request.getMethod());
             for (Pair<String, String> pair : request.getHeaders().toList()) {
                 conn.addRequestProperty(pair.first, pair.second);
             }
+            if (conn.getRequestProperty("Accept-Encoding") == null) {
+                // HttpURLConnection doesn't decompress responses, they're decoded by URLConnectionBody
+                conn.setRequestProperty("Accept-Encoding", ContentDecoders.getAcceptEncoding());
+            }
             final Body body = request.getBody();
             if (body != null) {
+                // Entity headers from body, unless set explicitly
+                final ContentType contentType = body.contentType();
+                if (contentType != null && conn.getRequestProperty("Content-Type") == null) {
+                    conn.setRequestProperty("Content-Type", contentType.toHeader());
+                }
+                final String contentEncoding = body.contentEncoding();
+                if (contentEncoding != null && conn.getRequestProperty("Content-Encoding") == null) {
+                    conn.setRequestProperty("Content-Encoding", contentEncoding);
+                }
                 conn.setDoOutput(true);
-                body.writeTo(conn.getOutputStream());
+                // Without streaming mode, HttpURLConnection buffers whole body before sending
+                final long length = body.length();
+                if (length >= 0) {
+                    conn.setFixedLengthStreamingMode(length);
+                } else {
+                    conn.setChunkedStreamingMode(chunkSize);
+                }
+                final OutputStream os = conn.getOutputStream();
+                try {
+                    body.writeTo(os);
+                } finally {
+                    os.close();
+                }
             }
             conn.getResponseCode();
             return resp = new URLConnectionResponse(conn);
@@ -59,16 +144,34 @@ public class URLConnectionRestClient implements RestHttpClient {
 
         @Override
         public void enqueue(@NotNull HttpCallback callback) {
-            throw new UnsupportedOperationException();
+            if (!executed.compareAndSet(false, true)) {
+                throw new IllegalStateException("A call can be executed only once");
+            }
+            final URL url;
+            try {
+                url = new URL(request.getUrl());
+            } catch (MalformedURLException e) {
+                callback.failure(e);
+                return;
+            }
+            dispatcher.enqueue(new AsyncCall(url, callback));
         }
 
+        /**
+         * Disconnects running connection, blocked reads and writes will throw {@link IOException}
+         */
         @Override
         public void cancel() {
+            canceled = true;
+            final HttpURLConnection conn = this.conn;
+            if (conn != null) {
+                conn.disconnect();
+            }
         }
 
         @Override
         public boolean isCanceled() {
-            return false;
+            return canceled;
         }
 
         @Override
@@ -78,9 +181,64 @@ public class URLConnectionRestClient implements RestHttpClient {
             }
         }
 
+        private class AsyncCall implements Dispatcher.AsyncCall {
+            private final URL url;
+            private final HttpCallback callback;
+
+            AsyncCall(URL url, HttpCallback callback) {
+                this.url = url;
+                this.callback = callback;
+            }
+
+            @NotNull
+            @Override
+            public String host() {
+                return url.getHost();
+            }
+
+            @Override
+            public void cancel() {
+                URLConnectionCall.this.cancel();
+            }
+
+            @Override
+            public void rejected(@NotNull RejectedExecutionException e) {
+                callback.failure(new InterruptedIOException("Executor rejected call"));
+            }
+
+            @Override
+            public void run() {
+                try {
+                    if (canceled) {
+                        callback.cancelled();
+                        return;
+                    }
+                    final HttpResponse response;
+                    try {
+                        response = executeConnection(url);
+                    } catch (IOException e) {
+                        if (canceled) {
+                            callback.cancelled();
+                        } else {
+                            callback.failure(e);
+                        }
+                        return;
+                    } catch (RuntimeException e) {
+                        // e.g. illegal header values, future must be completed anyway
+                        callback.failure(new IOException(e));
+                        return;
+                    }
+                    callback.response(response);
+                } finally {
+                    dispatcher.finished(this);
+                }
+            }
+        }
+
         static class URLConnectionResponse extends HttpResponse {
             private final HttpURLConnection conn;
             private URLConnectionBody body;
+            private URLConnectionHeaderMap headers;
 
             public URLConnectionResponse(HttpURLConnection conn) {
                 this.conn = conn;
@@ -97,14 +255,8 @@ public class URLConnectionRestClient implements RestHttpClient {
 
             @Override
             public MultiValueMap<String> getHeaders() {
-                MultiValueMap<String> headers = new MultiValueMap<>(true);
-                for (Map.Entry<String, List<String>> entry : conn.getHeaderFields().entrySet()) {
-                    final String key = entry.getKey();
-                    for (String value : entry.getValue()) {
-                        headers.add(key, value);
-                    }
-                }
-                return headers;
+                if (headers != null) return headers;
+                return headers = new URLConnectionHeaderMap(conn);
             }
 
             @Override
@@ -120,6 +272,53 @@ public class URLConnectionRestClient implements RestHttpClient {
                 }
             }
 
+            /**
+             * Reads header fields of connection by index, copied only when modified. Status line is
+             * included with {@code null} name, like {@link HttpURLConnection#getHeaderFields()}
+             */
+            static class URLConnectionHeaderMap extends LazyHeaderMap {
+                private final HttpURLConnection conn;
+                private int size = -1;
+
+                URLConnectionHeaderMap(HttpURLConnection conn) {
+                    this.conn = conn;
+                }
+
+                @Override
+                protected int sourceSize() {
+                    // Connection has no field count, probed once since response keeps this instance
+                    if (size != -1) return size;
+                    int count = 0;
+                    while (conn.getHeaderField(count) != null) {
+                        count++;
+                    }
+                    return size = count;
+                }
+
+                @Override
+                protected String sourceName(int index) {
+                    return conn.getHeaderFieldKey(index);
+                }
+
+                @Override
+                protected String sourceValue(int index) {
+                    return conn.getHeaderField(index);
+                }
+
+                @Override
+                protected String sourceFirst(String name) {
+                    // getHeaderField(String) returns last value of repeated fields, only use it for misses
+                    if (name != null && conn.getHeaderField(name) == null) return null;
+                    return super.sourceFirst(name);
+                }
+
+                @Override
+                protected boolean sourceContains(String name) {
+                    if (name == null) return super.sourceContains(null);
+                    return conn.getHeaderField(name) != null;
+                }
+            }
+
             static class URLConnectionBody implements Body {
                 private final HttpURLConnection conn;
                 private InputStream stream;
@@ -140,6 +339,8 @@ public class URLConnectionRestClient implements RestHttpClient {
 
                 @Override
                 public long length() throws IOException {
+                    // Content length is of encoded data
+                    if (ContentDecoders.isEncoded(contentEncoding())) return -1;
                     return conn.getContentLengthLong();
                 }
 
@@ -151,16 +352,18 @@ public class URLConnectionRestClient implements RestHttpClient {
                 @Override
                 public InputStream stream() throws IOException {
                     if (stream != null) return stream;
-                    stream = conn.getErrorStream();
-                    if (stream == null) {
-                        stream = conn.getInputStream();
+                    InputStream raw = conn.getErrorStream();
+                    if (raw == null) {
+                        raw = conn.getInputStream();
                     }
-                    return stream;
+                    return stream = ContentDecoders.decode(contentEncoding(), raw);
                 }
 
                 @Override
                 public void close() throws IOException {
-                    stream.close();
+                    if (stream != null) {
+                        stream.close();
+                    }
                 }
             }
         }
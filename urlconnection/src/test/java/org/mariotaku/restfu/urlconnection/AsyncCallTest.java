@@ -0,0 +1,155 @@
+package org.mariotaku.restfu.urlconnection;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mariotaku.restfu.http.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.*;
+
+/**
+ * Calls enqueued with {@link URLConnectionRestClient}, always complete with exactly one callback
+ */
+public class AsyncCallTest {
+
+    private HttpServer server;
+    private String url;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Semaphore received = new Semaphore(0);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/hello", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        server.createContext("/blocked", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                received.release();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                respond(exchange);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testEnqueue() throws Exception {
+        final RecordingCallback callback = enqueue(new URLConnectionRestClient(), "/hello", new HeaderMap());
+        final Object result = callback.await();
+        Assert.assertTrue(String.valueOf(result), result instanceof HttpResponse);
+        final HttpResponse response = (HttpResponse) result;
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("5", response.getHeaders().getFirst("content-length"));
+        Assert.assertNull(response.getHeaders().getFirst("X-Missing"));
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        response.getBody().writeTo(os);
+        Assert.assertEquals("hello", os.toString("UTF-8"));
+        response.close();
+    }
+
+    @Test
+    public void testRuntimeExceptionFailsCall() throws Exception {
+        final HeaderMap headers = new HeaderMap();
+        // HttpURLConnection throws IllegalArgumentException for line breaks in header values
+        headers.add("X-Broken", "a\r\nb");
+        final Object result = enqueue(new URLConnectionRestClient(), "/hello", headers).await();
+        Assert.assertTrue(String.valueOf(result), result instanceof IOException);
+        Assert.assertTrue(((IOException) result).getCause() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testCancelBlockedRead() throws Exception {
+        final URLConnectionRestClient client = new URLConnectionRestClient();
+        final HttpCall call = client.newCall(new HttpRequest("GET", url + "/blocked", new HeaderMap(), null, null));
+        final RecordingCallback callback = new RecordingCallback();
+        client.enqueue(call, callback);
+        Assert.assertTrue(received.tryAcquire(10, TimeUnit.SECONDS));
+        // Call is now waiting for response
+        call.cancel();
+        Assert.assertEquals("cancelled", callback.await());
+    }
+
+    @Test
+    public void testMaxRequestsPerHost() throws Exception {
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(1);
+        final URLConnectionRestClient client = new URLConnectionRestClient(dispatcher);
+        final RecordingCallback first = enqueue(client, "/blocked", new HeaderMap());
+        final RecordingCallback second = enqueue(client, "/blocked", new HeaderMap());
+        Assert.assertTrue(received.tryAcquire(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, dispatcher.getRunningCallsCount());
+        Assert.assertEquals(1, dispatcher.getQueuedCallsCount());
+        // Second call isn't sent until first one finished
+        Assert.assertFalse(received.tryAcquire(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        Assert.assertTrue(first.await() instanceof HttpResponse);
+        Assert.assertTrue(second.await() instanceof HttpResponse);
+        ((HttpResponse) first.await()).close();
+        ((HttpResponse) second.await()).close();
+    }
+
+    private RecordingCallback enqueue(URLConnectionRestClient client, String path, HeaderMap headers) {
+        final RecordingCallback callback = new RecordingCallback();
+        client.enqueue(client.newCall(new HttpRequest("GET", url + path, headers, null, null)), callback);
+        return callback;
+    }
+
+    private static void respond(HttpExchange exchange) throws IOException {
+        final byte[] bytes = "hello".getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static class RecordingCallback implements HttpCallback {
+        private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        private Object result;
+
+        @Override
+        public void response(@NotNull HttpResponse response) {
+            results.add(response);
+        }
+
+        @Override
+        public void failure(@NotNull IOException ioe) {
+            results.add(ioe);
+        }
+
+        @Override
+        public void cancelled() {
+            results.add("cancelled");
+        }
+
+        Object await() throws InterruptedException {
+            if (result != null) return result;
+            result = results.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull("Callback not called", result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.mariotaku.restfu.urlconnection;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.http.HttpCall;
+import org.mariotaku.restfu.http.HttpRequest;
+import org.mariotaku.restfu.http.HttpResponse;
+import org.mariotaku.restfu.http.MultiValueMap;
+import org.mariotaku.restfu.http.mime.Body;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Responses are decoded with encodings advertised in Accept-Encoding
+ */
+public class ContentEncodingTest {
+
+    @Test
+    public void testGzipResponse() throws Exception {
+        final String[] acceptEncoding = new String[1];
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                acceptEncoding[0] = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                final ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+                try (OutputStream os = new GZIPOutputStream(gzip)) {
+                    os.write("{\"hello\":\"world\"}".getBytes("UTF-8"));
+                }
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, gzip.size());
+                exchange.getResponseBody().write(gzip.toByteArray());
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/json";
+            final HttpCall call = new URLConnectionRestClient().newCall(new HttpRequest("GET", url,
+                    new MultiValueMap<String>(true), null, null));
+            final HttpResponse response = call.execute();
+            final Body body = response.getBody();
+            Assert.assertEquals("gzip", body.contentEncoding());
+            Assert.assertEquals(-1, body.length());
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            body.writeTo(os);
+            Assert.assertEquals("{\"hello\":\"world\"}", os.toString("UTF-8"));
+            response.close();
+            call.close();
+        } finally {
+            server.stop(0);
+        }
+        Assert.assertTrue(acceptEncoding[0], acceptEncoding[0].contains("gzip"));
+    }
+}
@@ -0,0 +1,144 @@
+package org.mariotaku.restfu.urlconnection;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mariotaku.restfu.http.ContentType;
+import org.mariotaku.restfu.http.HttpCall;
+import org.mariotaku.restfu.http.HttpRequest;
+import org.mariotaku.restfu.http.HttpResponse;
+import org.mariotaku.restfu.http.MultiValueMap;
+import org.mariotaku.restfu.http.mime.Body;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads a body to a local server, server must receive data before body finished writing
+ */
+public class StreamingUploadTest {
+
+    private static final int BODY_SIZE = 256 * 1024;
+
+    @Test
+    public void testFixedLength() throws Exception {
+        final HttpExchange exchange = testUpload(BODY_SIZE, new URLConnectionRestClient());
+        Assert.assertEquals(String.valueOf(BODY_SIZE), exchange.getRequestHeaders().getFirst("Content-Length"));
+    }
+
+    @Test
+    public void testChunked() throws Exception {
+        final URLConnectionRestClient client = new URLConnectionRestClient();
+        client.setChunkSize(4096);
+        final HttpExchange exchange = testUpload(-1, client);
+        Assert.assertEquals("chunked", exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+    }
+
+    private HttpExchange testUpload(long declaredLength, URLConnectionRestClient client) throws Exception {
+        final long[] received = new long[1];
+        final HttpExchange[] exchanges = new HttpExchange[1];
+        final CountDownLatch firstRead = new CountDownLatch(1);
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/upload", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchanges[0] = exchange;
+                final InputStream is = exchange.getRequestBody();
+                final byte[] buffer = new byte[8192];
+                long total = 0;
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    total += read;
+                    firstRead.countDown();
+                }
+                received[0] = total;
+                exchange.sendResponseHeaders(204, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        final GeneratedBody body = new GeneratedBody(BODY_SIZE, declaredLength, firstRead);
+        try {
+            final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/upload";
+            final HttpCall call = client.newCall(new HttpRequest("POST", url, new MultiValueMap<String>(true),
+                    body, null));
+            final HttpResponse response = call.execute();
+            Assert.assertEquals(204, response.getStatus());
+            call.close();
+        } finally {
+            server.stop(0);
+        }
+        Assert.assertTrue("Server received nothing before body was completely written", body.receivedWhileWriting);
+        Assert.assertEquals(BODY_SIZE, received[0]);
+        return exchanges[0];
+    }
+
+    /**
+     * Writes half of {@code size} bytes, then waits for server to read before writing the rest
+     */
+    private static class GeneratedBody implements Body {
+        private final long size;
+        private final long declaredLength;
+        private final CountDownLatch firstRead;
+        boolean receivedWhileWriting;
+
+        GeneratedBody(long size, long declaredLength, CountDownLatch firstRead) {
+            this.size = size;
+            this.declaredLength = declaredLength;
+            this.firstRead = firstRead;
+        }
+
+        @Override
+        public ContentType contentType() {
+            return ContentType.OCTET_STREAM;
+        }
+
+        @Override
+        public String contentEncoding() {
+            return null;
+        }
+
+        @Override
+        public long length() {
+            return declaredLength;
+        }
+
+        @Override
+        public long writeTo(OutputStream os) throws IOException {
+            final byte[] buffer = new byte[8192];
+            Arrays.fill(buffer, (byte) 'a');
+            long written = 0;
+            while (written < size) {
+                final int count = (int) Math.min(buffer.length, size - written);
+                os.write(buffer, 0, count);
+                written += count;
+                if (written == size / 2) {
+                    os.flush();
+                    try {
+                        // A buffering connection sends nothing until body is complete
+                        receivedWhileWriting = firstRead.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            }
+            return written;
+        }
+
+        @Override
+        public InputStream stream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}